@@ -0,0 +1,81 @@
+package dev.relism.mobleaderboard.benchmarks;
+
+import dev.relism.mobleaderboard.leaderboard.LeaderboardIndex;
+import dev.relism.mobleaderboard.leaderboard.MobLeaderboards;
+import dev.relism.mobleaderboard.leaderboard.WindowedLeaderboards;
+import dev.relism.mobleaderboard.profile.PlayerProfileCache;
+import dev.relism.mobleaderboard.storage.LocalStorage;
+import org.bukkit.entity.EntityType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.time.ZoneOffset;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the work MobKillListener#onEntityDeath does for a special kill once the mob has been recognised:
+ * the in-memory counter increments, per mob type too, and the leaderboard index updates, plus the periodic write-behind flush.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KillPathBenchmark {
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int players;
+
+    private PlayerFixture fixture;
+    private PlayerProfileCache profileCache;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        fixture = new PlayerFixture(players);
+        LeaderboardIndex index = fixture.buildIndex();
+        profileCache = new PlayerProfileCache(playerUUID -> new LocalStorage(fixture.store, playerUUID), index, new WindowedLeaderboards(ZoneOffset.UTC), new MobLeaderboards(), null);
+        for (int i = 0; i < players; i++) {
+            profileCache.load(fixture.playerUUIDs[i], fixture.playerNames[i]);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void compact() throws IOException {
+        fixture.store.compactIfNeeded();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        fixture.close();
+    }
+
+    @Benchmark
+    public int specialKill() {
+        int player = ThreadLocalRandom.current().nextInt(players);
+        return profileCache.increment(fixture.playerUUIDs[player], fixture.playerNames[player], EntityType.ZOMBIE);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Measurement(iterations = 20)
+    public void flushAfterOneKillEach() {
+        for (int i = 0; i < players; i++) {
+            profileCache.increment(fixture.playerUUIDs[i], fixture.playerNames[i], EntityType.ZOMBIE);
+        }
+        profileCache.flushAll().join();
+    }
+}
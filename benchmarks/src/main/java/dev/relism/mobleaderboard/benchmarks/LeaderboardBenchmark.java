@@ -0,0 +1,104 @@
+package dev.relism.mobleaderboard.benchmarks;
+
+import dev.relism.mobleaderboard.leaderboard.LeaderboardEntry;
+import dev.relism.mobleaderboard.leaderboard.LeaderboardIndex;
+import dev.relism.mobleaderboard.leaderboard.TopKills;
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the full scan and sort MongoWrapper#fetchSortedTopPlayersAsync used to perform in the legacy layout,
+ * the bounded selection of {@link TopKills} it performs now,
+ * and the reads and updates of the in-memory {@link LeaderboardIndex} that serves the /test GUI.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LeaderboardBenchmark {
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int players;
+
+    private PlayerFixture fixture;
+    private LeaderboardIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        fixture = new PlayerFixture(players);
+        index = fixture.buildIndex();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        fixture.close();
+    }
+
+    /**
+     * The stand-in for the former algorithm of fetchSortedTopPlayersAsync, kept as the baseline:
+     * read every player document, sort them all, keep the first 10.
+     */
+    @Benchmark
+    public List<Document> scanAndSortTop10() {
+        List<Document> topPlayers = fixture.store.findAll(document -> "playerdata".equals(document.getString("type")));
+        topPlayers.sort(Comparator.comparingInt(doc -> -doc.getInteger("kills")));
+        return topPlayers.size() > 10 ? topPlayers.subList(0, 10) : topPlayers;
+    }
+
+    /**
+     * The selection fetchSortedTopPlayersAsync performs in the legacy layout: every player document streamed through {@link TopKills}.
+     */
+    @Benchmark
+    public List<Document> scanAndHeapTop10() {
+        TopKills topPlayers = new TopKills(10);
+        // The predicate feeds the selection and keeps nothing, so the store never builds the full list
+        fixture.store.findAll(document -> {
+            if ("playerdata".equals(document.getString("type"))) {
+                topPlayers.offer(document);
+            }
+            return false;
+        });
+        return topPlayers.sorted();
+    }
+
+    @Benchmark
+    public List<LeaderboardEntry> indexTop10() {
+        return index.top(10);
+    }
+
+    @Benchmark
+    public int indexRankOf() {
+        return index.rankOf(randomPlayer());
+    }
+
+    @Benchmark
+    public void indexUpdate() {
+        int player = ThreadLocalRandom.current().nextInt(players);
+        index.update(fixture.playerUUIDs[player], fixture.playerNames[player], ThreadLocalRandom.current().nextInt(10_000));
+    }
+
+    private UUID randomPlayer() {
+        return fixture.playerUUIDs[ThreadLocalRandom.current().nextInt(players)];
+    }
+}
@@ -0,0 +1,64 @@
+package dev.relism.mobleaderboard.benchmarks;
+
+import dev.relism.mobleaderboard.leaderboard.LeaderboardIndex;
+import dev.relism.mobleaderboard.storage.LocalRecordStore;
+import dev.relism.mobleaderboard.storage.LocalStorage;
+import org.bson.Document;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * A deterministic population of players stored in an in-process {@link LocalRecordStore},
+ * which stands in for MongoDB so that the benchmarks run without a database or a server.
+ */
+final class PlayerFixture {
+
+    final UUID[] playerUUIDs;
+    final String[] playerNames;
+    final LocalRecordStore store;
+    private final File file;
+
+    /**
+     * Creates a record file holding the given number of players with random kill counts.
+     *
+     * @param players the number of players
+     */
+    PlayerFixture(int players) throws IOException {
+        file = Files.createTempFile("mobleaderboard-bench", ".dat").toFile();
+        file.delete();
+        store = new LocalRecordStore(file);
+        playerUUIDs = new UUID[players];
+        playerNames = new String[players];
+
+        Random random = new Random(42);
+        for (int i = 0; i < players; i++) {
+            playerUUIDs[i] = new UUID(random.nextLong(), random.nextLong());
+            playerNames[i] = "player" + i;
+            new LocalStorage(store, playerUUIDs[i]).insertDocument(new Document("type", "playerdata")
+                    .append("name", playerNames[i])
+                    .append("uuid", playerUUIDs[i].toString())
+                    .append("kills", random.nextInt(10_000)));
+        }
+    }
+
+    /**
+     * @return a leaderboard index built from the stored players, as done on startup
+     */
+    LeaderboardIndex buildIndex() {
+        LeaderboardIndex index = new LeaderboardIndex();
+        index.load(store.findAll(document -> "playerdata".equals(document.getString("type"))));
+        return index;
+    }
+
+    /**
+     * Closes and deletes the record file.
+     */
+    void close() throws IOException {
+        store.close();
+        file.delete();
+    }
+}
@@ -0,0 +1,79 @@
+package dev.relism.mobleaderboard.benchmarks;
+
+import dev.relism.mobleaderboard.storage.LocalStorage;
+import dev.relism.mobleaderboard.storage.Storage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-player field reads and writes performed through the {@link Storage} interface,
+ * the same calls that end up in MongoWrapper#getFieldValue and MongoWrapper#setFieldValue on the mongo backend.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StorageBenchmark {
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int players;
+
+    private PlayerFixture fixture;
+    private Storage[] storages;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        fixture = new PlayerFixture(players);
+        storages = new Storage[players];
+        for (int i = 0; i < players; i++) {
+            storages[i] = new LocalStorage(fixture.store, fixture.playerUUIDs[i]);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void compact() throws IOException {
+        // Writes append to the record file, so reclaim the superseded versions between iterations
+        fixture.store.compactIfNeeded();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        fixture.close();
+    }
+
+    @Benchmark
+    public Object getFieldValue() {
+        return randomStorage().getFieldValue("playerdata", "kills").join();
+    }
+
+    @Benchmark
+    public Object setFieldValue() {
+        return randomStorage().setFieldValue("playerdata", "kills", ThreadLocalRandom.current().nextInt(10_000)).join();
+    }
+
+    @Benchmark
+    public Object incrementFieldValue() {
+        return randomStorage().incrementFieldValue("playerdata", "kills", 1).join();
+    }
+
+    private Storage randomStorage() {
+        return storages[ThreadLocalRandom.current().nextInt(players)];
+    }
+}
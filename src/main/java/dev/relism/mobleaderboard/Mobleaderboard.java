@@ -1,14 +1,65 @@
 package dev.relism.mobleaderboard;
 
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
 import dev.relism.mobleaderboard.commands.AdminTestGUICommand;
 import dev.relism.mobleaderboard.commands.TestGUICommand;
+import dev.relism.mobleaderboard.gui.GuiSessions;
+import dev.relism.mobleaderboard.leaderboard.LeaderboardIndex;
+import dev.relism.mobleaderboard.leaderboard.LeaderboardView;
+import dev.relism.mobleaderboard.leaderboard.LeaderboardWindow;
+import dev.relism.mobleaderboard.leaderboard.MobLeaderboards;
+import dev.relism.mobleaderboard.leaderboard.WindowedLeaderboards;
+import dev.relism.mobleaderboard.leaderboard.SeasonRollover;
 import dev.relism.mobleaderboard.listeners.MobKillListener;
 import dev.relism.mobleaderboard.listeners.PlayerJoinListener;
+import dev.relism.mobleaderboard.listeners.PlayerQuitListener;
 import dev.relism.mobleaderboard.listeners.InventoryGUIListener;
+import dev.relism.mobleaderboard.mobs.SpecialMobRegistry;
+import dev.relism.mobleaderboard.profile.PlayerProfileCache;
+import dev.relism.mobleaderboard.profile.RewardQueue;
+import dev.relism.mobleaderboard.storage.BatchStorage;
+import dev.relism.mobleaderboard.storage.CircuitBreaker;
+import dev.relism.mobleaderboard.storage.KillJournal;
+import dev.relism.mobleaderboard.storage.LegacyMigrator;
+import dev.relism.mobleaderboard.storage.LocalBatchStorage;
+import dev.relism.mobleaderboard.storage.LocalRecordStore;
+import dev.relism.mobleaderboard.storage.LocalStorage;
 import dev.relism.mobleaderboard.storage.MongoWrapper;
+import dev.relism.mobleaderboard.storage.PlayerBatchStorage;
+import dev.relism.mobleaderboard.storage.PlayerStorage;
+import dev.relism.mobleaderboard.storage.Storage;
+import dev.relism.mobleaderboard.storage.StorageBackend;
+import dev.relism.mobleaderboard.storage.StorageExecutor;
+import dev.relism.mobleaderboard.storage.StorageGuard;
+import dev.relism.mobleaderboard.storage.StorageLanes;
+import dev.relism.mobleaderboard.storage.StorageLayout;
+import dev.relism.mobleaderboard.sync.LeaderboardBus;
+import dev.relism.mobleaderboard.sync.LeaderboardSync;
+import dev.relism.mobleaderboard.sync.LoopbackBus;
+import dev.relism.mobleaderboard.sync.MongoBus;
+import dev.relism.mobleaderboard.utils.MainThreadDispatcher;
 import dev.relism.mobleaderboard.utils.msg;
+import org.bson.Document;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.Player;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.File;
+import java.io.IOException;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 /**
  * This plugin manages mob kills leaderboards within the game environment.
  * Author: Relism
@@ -16,19 +67,79 @@ import org.bukkit.plugin.java.JavaPlugin;
  * GitHub Repository: <a href="https://github.com/Relism/MobleaderboardPlugin">Relism/MobleaderboardPlugin</a>
  */
 public final class Mobleaderboard extends JavaPlugin {
+    private static final int INDEX_BUILD_CHUNK_SIZE = 1000;
+
     private static Mobleaderboard plugin;
     private static MongoWrapper mongoWrapperInstance;
+    private MainThreadDispatcher mainThreadDispatcher;
+    private GuiSessions guiSessions;
+    private SpecialMobRegistry specialMobRegistry;
+    private StorageBackend storageBackend;
+    private LocalRecordStore localRecordStore;
+    private BatchStorage batchStorage;
+    private StorageLanes storageLanes;
+    private StorageLayout storageLayout;
+    private LegacyMigrator legacyMigrator;
+    private LeaderboardIndex leaderboardIndex;
+    private LeaderboardView leaderboardView;
+    private WindowedLeaderboards windowedLeaderboards;
+    private final Map<LeaderboardWindow, LeaderboardView> windowViews = new EnumMap<>(LeaderboardWindow.class);
+    private MobLeaderboards mobLeaderboards;
+    private final Map<EntityType, LeaderboardView> mobViews = new EnumMap<>(EntityType.class);
+    private KillJournal killJournal;
+    private PlayerProfileCache profileCache;
+    private RewardQueue rewardQueue;
+    private LeaderboardSync leaderboardSync;
+    private SeasonRollover seasonRollover;
 
     @Override
     public void onEnable() {
         msg.log("&aPlugin has been enabled!");
         plugin = this;
         saveDefaultConfig();
+        mainThreadDispatcher = new MainThreadDispatcher(getConfig().getLong("dispatcher.tick-budget-micros", 2000));
+        mainThreadDispatcher.start(this);
+        guiSessions = new GuiSessions();
+        openSpecialMobRegistry();
         connectDatabase();
 
+        // Loading the session profiles and the leaderboard index
+        leaderboardIndex = new LeaderboardIndex();
+        mobLeaderboards = new MobLeaderboards();
+        leaderboardView = new LeaderboardView(leaderboardIndex, "Kills leaderboard", mobLeaderboards);
+        String timezone = getConfig().getString("leaderboard.timezone", "");
+        windowedLeaderboards = new WindowedLeaderboards(timezone == null || timezone.isEmpty() ? ZoneId.systemDefault() : ZoneId.of(timezone));
+        for (LeaderboardWindow window : LeaderboardWindow.values()) {
+            windowViews.put(window, new LeaderboardView(windowedLeaderboards.getIndex(window), window.getTitle()));
+        }
+        // Empty the leaderboards of finished days and weeks even if nobody kills anything
+        getServer().getScheduler().runTaskTimerAsynchronously(this, windowedLeaderboards::rollAll, 1200, 1200);
+        killJournal = openKillJournal();
+        profileCache = new PlayerProfileCache(this::getPlayerStorage, leaderboardIndex, windowedLeaderboards, mobLeaderboards, killJournal);
+        if (killJournal != null) {
+            int replayed = profileCache.replayJournal(batchStorage);
+            if (replayed > 0) {
+                msg.log("&eReplayed &b" + replayed + "&e journaled kills that weren't stored yet.");
+            }
+        }
+        profileCache.start(this, getConfig().getLong("killcounter.flush-interval", 100));
+        // Players still online after a reload are loaded together
+        Map<UUID, String> onlinePlayers = new HashMap<>();
+        for (Player onlinePlayer : getServer().getOnlinePlayers()) {
+            onlinePlayers.put(onlinePlayer.getUniqueId(), onlinePlayer.getName());
+        }
+        profileCache.loadAll(batchStorage, onlinePlayers);
+        buildLeaderboardIndex();
+        String nodeId = getConfig().getString("sync.node-id", "");
+        leaderboardSync = new LeaderboardSync(nodeId == null || nodeId.isEmpty() ? UUID.randomUUID().toString() : nodeId,
+                createLeaderboardBus(), profileCache, leaderboardIndex, windowedLeaderboards, mobLeaderboards);
+        rewardQueue = new RewardQueue(this);
+        seasonRollover = new SeasonRollover(this, getConfig().getInt("season.snapshot-size", 100));
+
         // Registering listeners
         msg.log("&eRegistering listeners...");
         getServer().getPluginManager().registerEvents(new PlayerJoinListener(), this);
+        getServer().getPluginManager().registerEvents(new PlayerQuitListener(), this);
         getServer().getPluginManager().registerEvents(new MobKillListener(), this);
         getServer().getPluginManager().registerEvents(new InventoryGUIListener(), this);
 
@@ -43,14 +154,30 @@ public final class Mobleaderboard extends JavaPlugin {
 
     @Override
     public void onDisable() {
+        // Writing back the buffered kills before the connection goes away
+        profileCache.stop();
+        profileCache.flushAll().exceptionally(ex -> null).join();
+        if (killJournal != null) {
+            killJournal.close();
+        }
+        leaderboardSync.close();
+        mainThreadDispatcher.stop();
+        checkpointSpecialMobs();
         disconnectDatabase();
         msg.log("&cPlugin has been disabled!");
     }
 
     /**
-     * Connects to the database using the MongoDB URI provided in the config.yml.
+     * Connects to the database using the MongoDB URI provided in the config.yml,
+     * or opens the embedded record file if the local storage backend is selected.
      */
     public void connectDatabase() {
+        storageBackend = StorageBackend.fromConfig(getConfig().getString("storage.backend"));
+        if (storageBackend == StorageBackend.LOCAL) {
+            openLocalStore();
+            return;
+        }
+
         String mongoUri = getConfig().getString("mongouri");
 
         if (mongoUri == null || !(mongoUri instanceof String)) {
@@ -59,20 +186,283 @@ public final class Mobleaderboard extends JavaPlugin {
         }
 
         msg.log("&aEstablishing database connection...");
-        this.mongoWrapperInstance = new MongoWrapper(mongoUri);
+        storageLanes = new StorageLanes(getConfig().getInt("storage.executor.lanes", 256));
+        this.mongoWrapperInstance = new MongoWrapper(mongoUri, createStorageExecutor(), createStorageGuard(),
+                getConfig().getInt("storage.resilience.socket-timeout-ms", 10000),
+                getConfig().getLong("storage.group-commit.window-ms", 2),
+                getConfig().getInt("storage.group-commit.max-batch-size", 500));
+        mongoWrapperInstance.getMetrics().registerMBean();
+
+        storageLayout = StorageLayout.fromConfig(getConfig().getString("storage.layout"));
+        msg.log("&eUsing the &b" + storageLayout.name().toLowerCase() + "&e storage layout.");
+        batchStorage = new PlayerBatchStorage(mongoWrapperInstance, storageLayout, getConfig().getInt("storage.batch-read-size", 500),
+                getConfig().getInt("storage.batch-read-parallelism", 4));
+        if (storageLayout == StorageLayout.SINGLE_COLLECTION) {
+            mongoWrapperInstance.createIndex(StorageLayout.DATABASE_NAME, StorageLayout.PLAYERS_COLLECTION, Indexes.descending("kills"));
+        }
+        legacyMigrator = new LegacyMigrator(this, getConfig().getInt("storage.migration.batch-size", 500), getConfig().getLong("storage.migration.batch-delay", 20));
+    }
+
+
+    /**
+     * Creates the executor running the blocking database operations, as configured in the config.yml.
+     * Falls back to a thread pool if virtual threads are requested on a Java version older than 21.
+     *
+     * @return the storage executor
+     */
+    private ExecutorService createStorageExecutor() {
+        int poolSize = Math.max(1, getConfig().getInt("storage.executor.pool-size", 4));
+        int queueSize = getConfig().getInt("storage.executor.queue-size", 1000);
+        StorageExecutor.RejectionPolicy policy = StorageExecutor.RejectionPolicy.fromConfig(getConfig().getString("storage.executor.rejection-policy"));
+        if (getConfig().getBoolean("storage.executor.virtual-threads", false)) {
+            ExecutorService executor = StorageExecutor.createVirtual(poolSize + queueSize, policy);
+            if (executor != null) {
+                msg.log("&eRunning database operations on virtual threads.");
+                return executor;
+            }
+            msg.log("&cVirtual threads require Java 21 or later, falling back to a pool of &b" + poolSize + "&c threads.");
+        }
+        return StorageExecutor.createPool(poolSize, queueSize, policy);
+    }
+
+    /**
+     * Creates the deadlines, bulkheads and circuit breaker the database operations go through, as configured in the config.yml.
+     *
+     * @return the storage guard
+     */
+    private StorageGuard createStorageGuard() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(
+                getConfig().getInt("storage.resilience.circuit-breaker.failure-threshold", 5),
+                getConfig().getLong("storage.resilience.circuit-breaker.open-ms", 10000));
+        return new StorageGuard(circuitBreaker,
+                getConfig().getInt("storage.resilience.read-concurrency", 8),
+                getConfig().getInt("storage.resilience.write-concurrency", 8),
+                getConfig().getInt("storage.group-commit.max-batches-in-flight", 4),
+                getConfig().getInt("storage.resilience.read-queue-size", 500),
+                getConfig().getInt("storage.resilience.write-queue-size", 500),
+                getConfig().getLong("storage.resilience.queue-timeout-ms", 5000),
+                getConfig().getLong("storage.resilience.read-deadline-ms", 2000),
+                getConfig().getLong("storage.resilience.write-deadline-ms", 5000),
+                getConfig().getLong("storage.resilience.scan-deadline-ms", 60000),
+                getConfig().getInt("storage.resilience.cache-size", 1000));
+    }
+
+    /**
+     * Creates the bus keeping the leaderboards in sync with the other servers, as configured in the config.yml.
+     * Falls back to the loopback bus if the mongo bus is requested without the mongo backend.
+     *
+     * @return the leaderboard sync bus
+     */
+    private LeaderboardBus createLeaderboardBus() {
+        if ("mongo".equalsIgnoreCase(getConfig().getString("sync.bus", "loopback"))) {
+            if (storageBackend == StorageBackend.MONGO) {
+                msg.log("&eSyncing the leaderboards with the other servers through MongoDB.");
+                return new MongoBus(mongoWrapperInstance, getConfig().getLong("sync.mongo.size", 16777216));
+            }
+            msg.log("&cThe mongo sync bus requires the mongo storage backend, the leaderboards won't be synced.");
+        }
+        return new LoopbackBus();
+    }
+
+    /**
+     * Opens the kill journal, as configured in the config.yml, and schedules its periodic sync.
+     *
+     * @return the kill journal, or null if it's disabled or can't be opened
+     */
+    private KillJournal openKillJournal() {
+        if (!getConfig().getBoolean("journal.enabled", true)) {
+            return null;
+        }
+        KillJournal journal;
+        try {
+            journal = new KillJournal(new File(getDataFolder(), getConfig().getString("journal.directory", "journal")));
+        } catch (IOException e) {
+            msg.log("&cCould not open the kill journal, buffered kills won't survive a crash: " + e.getMessage());
+            return null;
+        }
+        long syncInterval = getConfig().getLong("journal.sync-interval", 20);
+        getServer().getScheduler().runTaskTimerAsynchronously(this, journal::sync, syncInterval, syncInterval);
+        return journal;
+    }
+
+    /**
+     * Loads the special mobs that were alive at the last checkpoint and schedules the following checkpoints.
+     */
+    private void openSpecialMobRegistry() {
+        getDataFolder().mkdirs();
+        specialMobRegistry = new SpecialMobRegistry(new File(getDataFolder(), getConfig().getString("special-mobs.file", "special-mobs.dat")));
+        try {
+            specialMobRegistry.load();
+            msg.log("&eTracking &b" + specialMobRegistry.size() + "&e special mobs.");
+        } catch (IOException e) {
+            msg.log("&cCould not load the special mobs checkpoint: " + e.getMessage());
+        }
+
+        long checkpointInterval = getConfig().getLong("special-mobs.checkpoint-interval", 1200);
+        getServer().getScheduler().runTaskTimerAsynchronously(this, this::checkpointSpecialMobs, checkpointInterval, checkpointInterval);
+    }
+
+    /**
+     * Writes the special mobs to their checkpoint file, if they changed since the last checkpoint.
+     */
+    public void checkpointSpecialMobs() {
+        try {
+            specialMobRegistry.checkpoint();
+        } catch (IOException e) {
+            msg.log("&cCould not checkpoint the special mobs: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Opens the embedded record file and schedules its periodic compaction.
+     */
+    private void openLocalStore() {
+        File storeFile = new File(getDataFolder(), getConfig().getString("storage.local.file", "players.dat"));
+        msg.log("&aOpening local storage file &b" + storeFile.getName() + "&a...");
+        try {
+            getDataFolder().mkdirs();
+            localRecordStore = new LocalRecordStore(storeFile);
+            batchStorage = new LocalBatchStorage(localRecordStore);
+        } catch (IOException e) {
+            msg.log("&cCould not open the local storage file: " + e.getMessage());
+            return;
+        }
+
+        long compactionInterval = getConfig().getLong("storage.local.compaction-interval", 6000);
+        getServer().getScheduler().runTaskTimerAsynchronously(this, () -> {
+            try {
+                localRecordStore.compactIfNeeded();
+                localRecordStore.force();
+            } catch (IOException e) {
+                msg.log("&cCould not compact the local storage file: " + e.getMessage());
+            }
+        }, compactionInterval, compactionInterval);
+    }
+
+    /**
+     * Builds the leaderboard index from the stored standings of every player.
+     * This is the only full scan of the player data, every later change is applied incrementally.
+     */
+    public void buildLeaderboardIndex() {
+        msg.log("&eBuilding leaderboard index...");
+        if (storageBackend == StorageBackend.LOCAL) {
+            getServer().getScheduler().runTaskAsynchronously(this, () -> {
+                loadLeaderboards(localRecordStore.findAll(document -> "playerdata".equals(document.getString("type"))));
+                msg.log("&aLeaderboard index built with &b" + leaderboardIndex.size() + "&a players.");
+            });
+            return;
+        }
+        // Only the fields the leaderboards read are fetched, and they are loaded in chunks as the cursors bring them in
+        List<String> fields = new ArrayList<>(Arrays.asList("uuid", "name", "kills", MobLeaderboards.FIELD));
+        for (LeaderboardWindow window : LeaderboardWindow.values()) {
+            fields.add(window.getField());
+        }
+        List<Document> chunk = new ArrayList<>(INDEX_BUILD_CHUNK_SIZE);
+        mongoWrapperInstance.streamPlayerDataAsync(Projections.include(fields), playerData -> {
+            chunk.add(playerData);
+            if (chunk.size() >= INDEX_BUILD_CHUNK_SIZE) {
+                loadLeaderboards(chunk);
+            }
+        }).thenAccept(count -> {
+            loadLeaderboards(chunk);
+            msg.log("&aLeaderboard index built with &b" + leaderboardIndex.size() + "&a players.");
+        }).exceptionally(ex -> { msg.log("&cCould not build the leaderboard index: " + ex.getMessage()); return null; });
     }
 
+    private void loadLeaderboards(List<Document> playerDataDocuments) {
+        leaderboardIndex.load(playerDataDocuments);
+        windowedLeaderboards.load(playerDataDocuments);
+        mobLeaderboards.load(playerDataDocuments);
+        playerDataDocuments.clear();
+    }
 
     /**
      * Disconnects from the database.
      */
     public void disconnectDatabase(){
+        if (storageBackend == StorageBackend.LOCAL) {
+            msg.log("&eClosing local storage file...");
+            try {
+                localRecordStore.close();
+            } catch (IOException e) {
+                msg.log("&cCould not close the local storage file: " + e.getMessage());
+            }
+            return;
+        }
         msg.log("&eClosing database connection...");
-        mongoWrapperInstance.close().thenRun(() -> msg.log("&aClosed database connection."));
+        mongoWrapperInstance.getMetrics().unregisterMBean();
+        // The plugin classes must stay usable until the pending writes are sent, so the shutdown is waited for
+        try {
+            mongoWrapperInstance.close().get(30, TimeUnit.SECONDS);
+            msg.log("&aClosed database connection.");
+        } catch (TimeoutException e) {
+            msg.log("&cThe database connection took too long to close, some writes may be lost.");
+        } catch (ExecutionException e) {
+            msg.log("&cCould not close the database connection: " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     public MongoWrapper getMongoWrapperInstance() { return mongoWrapperInstance; }
 
+    public MainThreadDispatcher getMainThreadDispatcher() { return mainThreadDispatcher; }
+
+    public GuiSessions getGuiSessions() { return guiSessions; }
+
+    public SpecialMobRegistry getSpecialMobRegistry() { return specialMobRegistry; }
+
+    public StorageBackend getStorageBackend() { return storageBackend; }
+
+    public LocalRecordStore getLocalRecordStore() { return localRecordStore; }
+
+    public BatchStorage getBatchStorage() { return batchStorage; }
+
+    public StorageLanes getStorageLanes() { return storageLanes; }
+
+    /**
+     * Retrieves the storage of a player's data on the configured backend.
+     *
+     * @param playerUUID The UUID of the player.
+     * @return the storage of the player's data
+     */
+    public Storage getPlayerStorage(UUID playerUUID) {
+        return storageBackend == StorageBackend.LOCAL ? new LocalStorage(localRecordStore, playerUUID) : new PlayerStorage(this, playerUUID);
+    }
+
+    public StorageLayout getStorageLayout() { return storageLayout; }
+
+    public LegacyMigrator getLegacyMigrator() { return legacyMigrator; }
+
+    public LeaderboardIndex getLeaderboardIndex() { return leaderboardIndex; }
+
+    public LeaderboardView getLeaderboardView() { return leaderboardView; }
+
+    public LeaderboardView getLeaderboardView(LeaderboardWindow window) { return windowViews.get(window); }
+
+    public WindowedLeaderboards getWindowedLeaderboards() { return windowedLeaderboards; }
+
+    public MobLeaderboards getMobLeaderboards() { return mobLeaderboards; }
+
+    /**
+     * Retrieves the GUI of the leaderboard of a mob type, creating it the first time it's asked for.
+     * Must only be called from the server thread.
+     *
+     * @param type The mob type.
+     * @return the view of the top slayers of the mob type
+     */
+    public LeaderboardView getLeaderboardView(EntityType type) {
+        return mobViews.computeIfAbsent(type, t -> new LeaderboardView(mobLeaderboards.getIndex(t), "Top " + MobLeaderboards.displayName(t).toLowerCase() + " slayers"));
+    }
+
+    public PlayerProfileCache getProfileCache() { return profileCache; }
+
+    public RewardQueue getRewardQueue() { return rewardQueue; }
+
+    public LeaderboardSync getLeaderboardSync() { return leaderboardSync; }
+
+    public SeasonRollover getSeasonRollover() { return seasonRollover; }
+
     /**
      * Retrieves the plugin instance.
      *
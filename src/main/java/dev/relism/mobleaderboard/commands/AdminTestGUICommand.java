@@ -1,30 +1,30 @@
 package dev.relism.mobleaderboard.commands;
 
 import dev.relism.mobleaderboard.Mobleaderboard;
+import dev.relism.mobleaderboard.gui.AdminGui;
+import dev.relism.mobleaderboard.metrics.StorageMetrics;
+import dev.relism.mobleaderboard.storage.CircuitBreaker;
 import dev.relism.mobleaderboard.storage.MongoWrapper;
 import dev.relism.mobleaderboard.utils.msg;
-import net.md_5.bungee.api.ChatColor;
-import org.bukkit.Bukkit;
-import org.bukkit.Material;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
-import org.bukkit.inventory.Inventory;
-import org.bukkit.inventory.ItemStack;
-import org.bukkit.inventory.meta.ItemMeta;
-import org.bukkit.metadata.FixedMetadataValue;
+
+import java.util.Map;
 
 /**
  * Executor class that handles an admin-specific GUI.
  * It allows operators to open an inventory with various options such as resetting all players' kills,
- * rewarding the top players, and spawning a mob with metadata.
+ * rewarding the top players, and spawning special mobs.
+ * With the "migrate" argument, it starts or resumes the migration of the player data to the single collection layout.
+ * With the "metrics" argument, it prints the call counts and latencies of the database operations.
  */
 public class AdminTestGUICommand implements CommandExecutor {
 
     private final Mobleaderboard plugin;
     private MongoWrapper mwi;
-    private final int rows = 1;
+    private final AdminGui adminGui;
 
     /**
      * Constructs a new instance of AdminTestGUICommand.
@@ -34,6 +34,7 @@ public class AdminTestGUICommand implements CommandExecutor {
     public AdminTestGUICommand(Mobleaderboard plugin) {
         this.plugin = plugin;
         this.mwi = plugin.getMongoWrapperInstance();
+        this.adminGui = new AdminGui(plugin);
     }
 
     /**
@@ -57,74 +58,64 @@ public class AdminTestGUICommand implements CommandExecutor {
             return true;
         }
 
-        Inventory inventory = createAdminGUI();
-        player.openInventory(inventory);
-        player.setMetadata("OpenedAdminTestGUI", new FixedMetadataValue(plugin, inventory));
-
-        return true;
-    }
-
-    /**
-     * Creates the admin GUI with different options.
-     *
-     * @return The created admin GUI inventory.
-     */
-    private Inventory createAdminGUI() {
-        Inventory inventory = Bukkit.createInventory(null, 9 * rows, "Admin Test GUI");
-
-        // Slot 2: Reset all players' kills
-        inventory.setItem(2, createResetKillsItem());
-
-        // Slot 4: Reward 1st, 2nd, and 3rd place
-        inventory.setItem(4, createRewardTopPlayersItem());
-
-        // Slot 6: Spawn a mob with metadata "testPlugin" at all players
-        inventory.setItem(6, createSpawnMobItem());
+        if (args.length > 0 && args[0].equalsIgnoreCase("migrate")) {
+            if (plugin.getLegacyMigrator() == null) {
+                msg.send(player, "&cMigrations are only available with the mongo storage backend.");
+                return true;
+            }
+            boolean fromScratch = args.length > 1 && args[1].equalsIgnoreCase("restart");
+            if (plugin.getLegacyMigrator().start(player, fromScratch)) {
+                msg.send(player, "&eMigrating player data to the single collection layout in the background...");
+            } else {
+                msg.send(player, "&cA migration is already running.");
+            }
+            return true;
+        }
 
-        return inventory;
-    }
+        if (args.length > 0 && args[0].equalsIgnoreCase("metrics")) {
+            if (mwi == null) {
+                msg.send(player, "&cMetrics are only available with the mongo storage backend.");
+                return true;
+            }
+            if (args.length > 1 && args[1].equalsIgnoreCase("reset")) {
+                mwi.getMetrics().reset();
+                msg.send(player, "&aDatabase metrics reset.");
+                return true;
+            }
+            sendMetrics(player, mwi.getMetrics(), mwi.getGuard().getCircuitBreaker().getState());
+            return true;
+        }
 
-    /**
-     * Creates an item to reset all players' kills.
-     *
-     * @return The item to reset kills.
-     */
-    private ItemStack createResetKillsItem() {
-        ItemStack item = new ItemStack(Material.REDSTONE_BLOCK);
-        ItemMeta meta = item.getItemMeta();
-        meta.setDisplayName(ChatColor.RED + "Reset Kills");
-        item.setItemMeta(meta);
+        plugin.getGuiSessions().open(player, adminGui);
 
-        return item;
+        return true;
     }
 
     /**
-     * Creates an item to reward top players.
+     * Sends the call counts and latencies of every database operation to a player.
      *
-     * @return The item to reward top players.
+     * @param player  The player receiving the metrics.
+     * @param metrics The metrics to send.
+     * @param circuit The state of the database circuit.
      */
-    private ItemStack createRewardTopPlayersItem() {
-        ItemStack item = new ItemStack(Material.GOLD_BLOCK);
-        ItemMeta meta = item.getItemMeta();
-        meta.setDisplayName(ChatColor.GOLD + "Reward Top Players");
-        item.setItemMeta(meta);
-
-        return item;
+    private void sendMetrics(Player player, StorageMetrics metrics, CircuitBreaker.State circuit) {
+        Map<String, StorageMetrics.OperationSnapshot> operations = metrics.getOperations();
+        msg.send(player, "&eDatabase operations, &b" + metrics.getInFlight() + "&e in flight, &b"
+                + plugin.getMainThreadDispatcher().getBacklog() + "&e callbacks waiting for the server thread, circuit &b"
+                + circuit.name().toLowerCase() + "&e:");
+        if (operations.isEmpty()) {
+            msg.send(player, "&7No operations recorded yet.");
+        }
+        for (Map.Entry<String, StorageMetrics.OperationSnapshot> entry : operations.entrySet()) {
+            StorageMetrics.OperationSnapshot operation = entry.getValue();
+            msg.send(player, "&b" + entry.getKey() + "&7: &f" + operation.getCalls() + "&7 calls, &c" + operation.getFailures()
+                    + "&7 failed, p50 &f" + formatMicros(operation.getP50Micros()) + "&7, p99 &f" + formatMicros(operation.getP99Micros())
+                    + "&7, max &f" + formatMicros(operation.getMaxMicros()));
+        }
     }
 
-    /**
-     * Creates an item to spawn a mob with metadata.
-     *
-     * @return The item to spawn a mob with metadata.
-     */
-    private ItemStack createSpawnMobItem() {
-        ItemStack item = new ItemStack(Material.MOB_SPAWNER);
-        ItemMeta meta = item.getItemMeta();
-        meta.setDisplayName(ChatColor.GREEN + "Spawn Mob with Metadata");
-        item.setItemMeta(meta);
-
-        return item;
+    private static String formatMicros(long micros) {
+        return micros < 1000 ? micros + "µs" : String.format("%.1fms", micros / 1000.0);
     }
-
 }
 
@@ -1,33 +1,31 @@
 package dev.relism.mobleaderboard.commands;
 
 import dev.relism.mobleaderboard.Mobleaderboard;
+import dev.relism.mobleaderboard.leaderboard.LeaderboardEntry;
+import dev.relism.mobleaderboard.leaderboard.LeaderboardView;
+import dev.relism.mobleaderboard.leaderboard.LeaderboardWindow;
+import dev.relism.mobleaderboard.leaderboard.MobLeaderboards;
 import dev.relism.mobleaderboard.storage.MongoWrapper;
 import dev.relism.mobleaderboard.utils.msg;
-import org.bson.Document;
-import org.bukkit.Bukkit;
-import org.bukkit.Material;
-import org.bukkit.SkullType;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
+import org.bukkit.entity.EntityType;
 import org.bukkit.entity.Player;
-import org.bukkit.inventory.Inventory;
-import org.bukkit.inventory.ItemStack;
-import org.bukkit.inventory.meta.SkullMeta;
-import org.bukkit.metadata.FixedMetadataValue;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.CompletableFuture;
 
 /**
  * Executor class that handles displaying a leaderboard GUI
  * containing information about the top players and their kills.
+ * With a page number, it opens that page of the leaderboard, with the "rank" argument, it tells the player their rank.
+ * Both can be preceded by "daily" or "weekly" to use the leaderboard of the current day or week instead of the season,
+ * by "season" to name the season leaderboard explicitly, or by "mob" and a mob type to use the leaderboard of that mob type, such as the top zombie slayers.
  */
 public class TestGUICommand implements CommandExecutor {
     private final Mobleaderboard plugin;
     private MongoWrapper mwi;
-    private final int rows = 3;
 
     /**
      * Constructs a new instance of TestGUICommand.
@@ -56,95 +54,62 @@ public class TestGUICommand implements CommandExecutor {
 
         Player player = (Player) sender;
 
-        CompletableFuture<List<Document>> topPlayersFuture = mwi.fetchSortedTopPlayersAsync(10);
-
-        // Execute the GUI creation after fetching top players
-        topPlayersFuture.thenAcceptAsync(topPlayers -> {
-            if (topPlayers.isEmpty()) {
-                msg.send(player, "&cNo data available.");
-                return;
-            }
-
-            // Basically checks if the #1 player has 0 or less kills (so everybody else is also on 0 kills)
-            if(topPlayers.get(0).getInteger("kills") <= 0){
-                msg.send(player, "&cEveryone is still on 0 kills, no leaderboard to be shown!");
-                return;
+        // An optional first argument selects a time window instead of the whole season
+        LeaderboardView view = plugin.getLeaderboardView();
+        LeaderboardWindow window = args.length > 0 ? LeaderboardWindow.fromName(args[0]) : null;
+        if (window != null) {
+            view = plugin.getLeaderboardView(window);
+            args = Arrays.copyOfRange(args, 1, args.length);
+        } else if (args.length > 0 && args[0].equalsIgnoreCase("season")) {
+            // The season leaderboard is the default one, the kills field being reset by every season rollover
+            args = Arrays.copyOfRange(args, 1, args.length);
+        } else if (args.length > 0 && args[0].equalsIgnoreCase("mob")) {
+            EntityType type = args.length > 1 ? MobLeaderboards.typeOf(args[1]) : null;
+            if (type == null) {
+                msg.send(player, "&cUsage: /" + label + " mob <type> [page|rank]");
+                return true;
             }
-
-            Inventory inventory = createTopPlayersInventory(topPlayers);
-            player.openInventory(inventory);
-            player.setMetadata("OpenedTestGUI", new FixedMetadataValue(plugin, inventory));
-        });
-
-        return true;
-    }
-
-    /**
-     * Creates the GUI inventory displaying the top players and their kills.
-     *
-     * @param topPlayers The list of top players' data.
-     * @return The created GUI inventory.
-     */
-    private Inventory createTopPlayersInventory(List<Document> topPlayers) {
-        Inventory inventory = Bukkit.createInventory(null, 9 * rows, "Kills leaderboard");
-
-        // Populate the inventory with player data
-        for (int i = 0; i < Math.min(topPlayers.size(), 10); i++) {
-            Document playerData = topPlayers.get(i);
-            String playerName = playerData.getString("name");
-            int playerKills = playerData.getInteger("kills");
-            ItemStack playerItem = createPlayerItem(playerName, playerKills, i + 1);
-            inventory.setItem(getInventorySlot(i), playerItem);
+            view = plugin.getLeaderboardView(type);
+            args = Arrays.copyOfRange(args, 2, args.length);
         }
 
-        return inventory;
-    }
+        if (args.length > 0 && args[0].equalsIgnoreCase("rank")) {
+            view.sendRank(player);
+            return true;
+        }
 
-    /**
-     * Creates an ItemStack representing a player with their kills and position on the leaderboard.
-     *
-     * @param playerName The name of the player.
-     * @param playerKills The number of kills the player has.
-     * @param position    The position of the player on the leaderboard.
-     * @return The created player ItemStack.
-     */
-    private ItemStack createPlayerItem(String playerName, int playerKills, int position) {
-        // Create a player head ItemStack
-        ItemStack playerHead = new ItemStack(Material.SKULL_ITEM, 1, (short) SkullType.PLAYER.ordinal());
+        // The index is kept up to date in memory, so no database query is needed here
+        List<LeaderboardEntry> topPlayers = view.getIndex().top(1);
 
-        //Get meta and start setting name and owner
-        SkullMeta skullMeta = (SkullMeta) playerHead.getItemMeta();
-        skullMeta.setOwner(playerName);
-        skullMeta.setDisplayName("#" + position + " " + playerName);
+        if (topPlayers.isEmpty()) {
+            msg.send(player, "&cNo data available.");
+            return true;
+        }
 
-        // Setting lore
-        List<String> lore = new ArrayList<>();
-        lore.add("Special Kills: " + playerKills);
-        skullMeta.setLore(lore);
+        // Basically checks if the #1 player has 0 or less kills (so everybody else is also on 0 kills)
+        if(topPlayers.get(0).getKills() <= 0){
+            msg.send(player, "&cEveryone is still on 0 kills, no leaderboard to be shown!");
+            return true;
+        }
 
-        // Apply the meta to the ItemStack
-        playerHead.setItemMeta(skullMeta);
+        int page = 0;
+        if (args.length > 0) {
+            try {
+                page = Integer.parseInt(args[0]) - 1;
+            } catch (NumberFormatException e) {
+                msg.send(player, "&cUsage: /" + label + " [season|daily|weekly|mob <type>] [page|rank]");
+                return true;
+            }
+        }
+        int pageCount = view.getPageCount();
+        if (page < 0 || page >= pageCount) {
+            msg.send(player, "&cThe leaderboard only has &b" + pageCount + "&c pages.");
+            return true;
+        }
 
-        return playerHead;
-    }
+        // The shared pages are only re-rendered when the standings changed
+        view.open(player, page);
 
-    /**
-     * Returns the inventory slot based on the position of a player on the leaderboard.
-     *
-     * @param position The position of the player on the leaderboard.
-     * @return The corresponding inventory slot.
-     */
-    private int getInventorySlot(int position) {
-        if (position == 0) {
-            return 4;  // First place
-        } else if (position == 1) {
-            return 12; // Second place
-        } else if (position == 2) {
-            return 14; // Third place
-        } else if (position >= 3 && position <= 9) {
-            return 19 + (position - 3); // Fourth to Tenth place
-        } else {
-            return -1; // Invalid position
-        }
+        return true;
     }
 }
@@ -0,0 +1,218 @@
+package dev.relism.mobleaderboard.gui;
+
+import dev.relism.mobleaderboard.Mobleaderboard;
+import dev.relism.mobleaderboard.leaderboard.LeaderboardEntry;
+import dev.relism.mobleaderboard.profile.PendingReward;
+import dev.relism.mobleaderboard.profile.RewardQueue;
+import dev.relism.mobleaderboard.utils.msg;
+import net.md_5.bungee.api.ChatColor;
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.LivingEntity;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * The admin menu, with options such as resetting all players' kills, rewarding the top players,
+ * and spawning test plugin mobs. Its content never changes, so a single instance is shared by every operator.
+ */
+public class AdminGui extends Gui {
+
+    private final Mobleaderboard plugin;
+
+    /**
+     * Constructs a new AdminGui.
+     *
+     * @param plugin The main plugin instance.
+     */
+    public AdminGui(Mobleaderboard plugin) {
+        super(9, "Admin Test GUI");
+        this.plugin = plugin;
+
+        // Slot 2: Reset all players' kills
+        setButton(2, createItem(Material.REDSTONE_BLOCK, ChatColor.RED + "Reset Kills"), (player, event) -> resetAllPlayerKills(player));
+
+        // Slot 4: Reward 1st, 2nd, and 3rd place
+        setButton(4, createItem(Material.GOLD_BLOCK, ChatColor.GOLD + "Reward Top Players"), (player, event) -> rewardTopPlayers(player));
+
+        // Slot 6: Spawn a special mob at all players
+        setButton(6, createItem(Material.MOB_SPAWNER, ChatColor.GREEN + "Spawn Special Mob"), (player, event) -> spawnTestPluginZombie(player));
+    }
+
+    /**
+     * Creates the item of a button.
+     *
+     * @param material    The material of the item.
+     * @param displayName The name of the button.
+     * @return The item of the button.
+     */
+    private static ItemStack createItem(Material material, String displayName) {
+        ItemStack item = new ItemStack(material);
+        ItemMeta meta = item.getItemMeta();
+        meta.setDisplayName(displayName);
+        item.setItemMeta(meta);
+
+        return item;
+    }
+
+    /**
+     * Resets all player kills in the database, closing the current season.
+     *
+     * @param executor The player executing the action
+     */
+    private void resetAllPlayerKills(Player executor) {
+        plugin.getSeasonRollover().rollover(Collections.<UUID>emptySet(), executor);
+    }
+
+    /**
+     * Rewards top players and resets kills for others.
+     *
+     * @param executor The player executing the action
+     */
+    private void rewardTopPlayers(Player executor) {
+        List<LeaderboardEntry> topPlayers = plugin.getLeaderboardIndex().top(10);
+
+        if (topPlayers.isEmpty()) {
+            msg.send(executor, "&cNo data found.");
+            return;
+        }
+
+        // Reward top players, the rewards that can't be handed out now are queued together
+        String batchId = RewardQueue.newBatchId();
+        Map<UUID, List<PendingReward>> pendingRewards = new HashMap<>();
+        for (int i = 0; i < Math.min(topPlayers.size(), 10); i++) {
+            LeaderboardEntry playerData = topPlayers.get(i);
+            Player player = Bukkit.getPlayer(playerData.getPlayerUUID());
+            int position = i + 1;
+            PendingReward reward = new PendingReward(batchId + ":" + position, getRewardMaterial(position).name(), 1);
+
+            // Give rewards to top players
+            if (!giveReward(player, reward)) {
+                pendingRewards.put(playerData.getPlayerUUID(), Collections.singletonList(reward));
+            }
+        }
+        plugin.getRewardQueue().grant(pendingRewards).whenCompleteAsync((v, ex) -> {
+            if (ex != null) {
+                msg.send(executor, "&cCould not queue the pending rewards: " + ex.getMessage());
+            }
+        }, plugin.getMainThreadDispatcher());
+
+        msg.send(executor, "Top players rewarded, &b" + pendingRewards.size() + "&f rewards queued for later.");
+
+        // Reset kills for others
+        resetKillsForOthers(topPlayers, executor);
+    }
+
+    /**
+     * Gives a reward to a player right away, if possible.
+     *
+     * If the player is offline, or online but with a full inventory, the reward has to be queued by the caller.
+     * If the player is online and has a free slot, the reward will be given immediately.
+     *
+     * @param targetPlayer The player to receive the reward, null if they're offline
+     * @param reward       The reward
+     * @return true if the reward was given, false if it must be queued
+     */
+    private boolean giveReward(Player targetPlayer, PendingReward reward) {
+        if (targetPlayer == null) {
+            return false;
+        }
+        if (!hasAvaliableSlot(targetPlayer)) {
+            msg.send(targetPlayer, "&eYour inventory is full. Free up atleast one slot of space and rejoin the server.");
+            return false;
+        }
+        // Inventory has space, reward given successfully
+        targetPlayer.getInventory().addItem(reward.toItemStack());
+        msg.send(targetPlayer, "&aYou received a reward: " + reward.getMaterial());
+        return true;
+    }
+
+    /**
+     * Resets kills to 0 for non-top players in the database, closing the current season.
+     *
+     * @param topPlayers The list of top players
+     * @param executor    The player executing the action
+     */
+    private void resetKillsForOthers(List<LeaderboardEntry> topPlayers, Player executor) {
+        Set<UUID> topPlayerUUIDs = new HashSet<>();
+        for (LeaderboardEntry topPlayer : topPlayers) {
+            topPlayerUUIDs.add(topPlayer.getPlayerUUID());
+        }
+        plugin.getSeasonRollover().rollover(topPlayerUUIDs, executor);
+    }
+
+    /**
+     * Spawns a test plugin zombie for each online player.
+     *
+     * @param executor The player executing the action
+     */
+    private void spawnTestPluginZombie(Player executor) {
+        // Iterate through all online players and summon a test plugin zombie for each
+        for (Player onlinePlayer : Bukkit.getOnlinePlayers()) {
+            summonTestPluginZombie(onlinePlayer);
+            msg.send(onlinePlayer, "Summoned a test zombie on you!");
+        }
+        // Make sure the new mobs survive a crash
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, plugin::checkpointSpecialMobs);
+        msg.send(executor, "Succesfully summoned test zombies on all " + Bukkit.getOnlinePlayers().size() + " online players");
+    }
+
+    /**
+     * Retrieves the reward material based on the position on the leaderboard.
+     *
+     * @param position The position of the player
+     * @return The reward material
+     */
+    private Material getRewardMaterial(int position) {
+        switch (position) {
+            case 1:
+                return Material.DIAMOND;
+            case 2:
+                return Material.GOLD_INGOT;
+            case 3:
+                return Material.IRON_INGOT;
+            default:
+                return Material.COAL;
+        }
+    }
+
+    /**
+     * Summons a test plugin zombie at the player's location, tracked by the special mob registry.
+     * It won't despawn when players walk away, so it stays in the registry until it dies.
+     *
+     * @param player The player for whom the zombie is summoned
+     */
+    private void summonTestPluginZombie(Player player) {
+        LivingEntity zombie = (LivingEntity) player.getWorld().spawnEntity(player.getLocation(), EntityType.ZOMBIE);
+        zombie.setRemoveWhenFarAway(false);
+        plugin.getSpecialMobRegistry().add(zombie.getUniqueId());
+        msg.debug("Summoned a testPlugin zombie at location: " + player.getLocation());
+    }
+
+    /**
+     * Checks if the player's inventory has an available slot.
+     *
+     * @param player The player
+     * @return True if there's an available slot, false otherwise
+     */
+    public boolean hasAvaliableSlot(Player player){
+        Inventory inv = player.getInventory();
+        for (ItemStack item: inv.getContents()) {
+            if(item == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
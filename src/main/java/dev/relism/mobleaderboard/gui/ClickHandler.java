@@ -0,0 +1,19 @@
+package dev.relism.mobleaderboard.gui;
+
+import org.bukkit.entity.Player;
+import org.bukkit.event.inventory.InventoryClickEvent;
+
+/**
+ * The action of a button of a {@link Gui}.
+ */
+@FunctionalInterface
+public interface ClickHandler {
+
+    /**
+     * Called on the server thread when a player clicks the button. The click is already cancelled.
+     *
+     * @param player The player who clicked.
+     * @param event  The click event.
+     */
+    void onClick(Player player, InventoryClickEvent event);
+}
@@ -0,0 +1,82 @@
+package dev.relism.mobleaderboard.gui;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryHolder;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * A menu of the plugin, owning its inventory. Every slot of the inventory can hold a button,
+ * whose {@link ClickHandler} is looked up by slot number in a table, so a click costs the same whatever the menu.
+ * Players can't take or move any item of a menu. A menu may be shown to several players at once, see {@link GuiSessions}.
+ */
+public abstract class Gui implements InventoryHolder {
+
+    private final Inventory inventory;
+    private final ClickHandler[] handlers;
+
+    /**
+     * Constructs a new Gui with an empty inventory.
+     *
+     * @param size  The number of slots of the inventory, a multiple of 9.
+     * @param title The title of the inventory.
+     */
+    protected Gui(int size, String title) {
+        this.inventory = Bukkit.createInventory(this, size, title);
+        this.handlers = new ClickHandler[size];
+    }
+
+    /**
+     * @return the inventory of the menu
+     */
+    @Override
+    public Inventory getInventory() {
+        return inventory;
+    }
+
+    /**
+     * Places a button in a slot, replacing what was there.
+     *
+     * @param slot    The slot of the button.
+     * @param item    The item showing the button.
+     * @param handler The action of the button, or null for an item that does nothing.
+     */
+    protected void setButton(int slot, ItemStack item, ClickHandler handler) {
+        inventory.setItem(slot, item);
+        handlers[slot] = handler;
+    }
+
+    /**
+     * Empties a slot.
+     *
+     * @param slot The slot to empty.
+     */
+    protected void clearButton(int slot) {
+        inventory.setItem(slot, null);
+        handlers[slot] = null;
+    }
+
+    /**
+     * Called when a player viewing the menu closes it.
+     *
+     * @param player The player who closed the menu.
+     */
+    protected void onClose(Player player) {
+    }
+
+    /**
+     * Cancels a click in the view of the menu, and runs the handler of the clicked button, if any.
+     * Clicks in the player's own inventory are cancelled as well but don't trigger anything.
+     *
+     * @param event The click event.
+     */
+    void click(InventoryClickEvent event) {
+        event.setCancelled(true);
+        int slot = event.getRawSlot();
+        if (slot >= 0 && slot < handlers.length && handlers[slot] != null) {
+            handlers[slot].onClick((Player) event.getWhoClicked(), event);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package dev.relism.mobleaderboard.gui;
+
+import org.bukkit.entity.HumanEntity;
+import org.bukkit.entity.Player;
+import org.bukkit.event.inventory.InventoryClickEvent;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The menus currently open, by viewer. The map is keyed by identity, since a player object stays the same for the
+ * whole session, so telling whether a click belongs to a menu costs a single lookup, without touching Bukkit's
+ * metadata store. Must only be used from the server thread.
+ */
+public class GuiSessions {
+
+    private final Map<HumanEntity, Gui> sessions = new IdentityHashMap<>();
+
+    /**
+     * Opens a menu for a player, replacing the one they were looking at.
+     *
+     * @param player The player.
+     * @param gui    The menu to open.
+     */
+    public void open(Player player, Gui gui) {
+        // Opening an inventory closes the previous one first, which ends its session
+        player.openInventory(gui.getInventory());
+        sessions.put(player, gui);
+    }
+
+    /**
+     * Retrieves the menu a player is looking at.
+     *
+     * @param player The player.
+     * @return the open menu, or null if the player isn't looking at any
+     */
+    public Gui get(HumanEntity player) {
+        return sessions.get(player);
+    }
+
+    /**
+     * Dispatches a click to the menu the player is looking at.
+     *
+     * @param event The click event.
+     * @return false if the click isn't in a menu, true otherwise
+     */
+    public boolean click(InventoryClickEvent event) {
+        Gui gui = sessions.get(event.getWhoClicked());
+        // The holder check covers a menu whose opening was cancelled by another plugin
+        if (gui == null || event.getInventory().getHolder() != gui) {
+            return false;
+        }
+        gui.click(event);
+        return true;
+    }
+
+    /**
+     * Ends the session of a player who closed their menu or left the server.
+     *
+     * @param player The player.
+     */
+    public void close(HumanEntity player) {
+        Gui gui = sessions.remove(player);
+        if (gui != null && player instanceof Player) {
+            gui.onClose((Player) player);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package dev.relism.mobleaderboard.leaderboard;
+
+import java.util.UUID;
+
+/**
+ * An immutable snapshot of a player's standing on the leaderboard.
+ */
+public final class LeaderboardEntry {
+    private final UUID playerUUID;
+    private final String playerName;
+    private final int kills;
+
+    /**
+     * Constructs a new LeaderboardEntry.
+     *
+     * @param playerUUID The UUID of the player.
+     * @param playerName The name of the player.
+     * @param kills      The number of special kills of the player.
+     */
+    public LeaderboardEntry(UUID playerUUID, String playerName, int kills) {
+        this.playerUUID = playerUUID;
+        this.playerName = playerName;
+        this.kills = kills;
+    }
+
+    public UUID getPlayerUUID() { return playerUUID; }
+
+    public String getPlayerName() { return playerName; }
+
+    public int getKills() { return kills; }
+
+    /**
+     * Orders entries by kills, highest first, and by UUID to break ties.
+     *
+     * @param other the entry to compare with
+     * @return a negative number if this entry ranks above the other one, a positive number if it ranks below
+     */
+    int compareRank(LeaderboardEntry other) {
+        int byKills = Integer.compare(other.kills, kills);
+        return byKills != 0 ? byKills : playerUUID.compareTo(other.playerUUID);
+    }
+}
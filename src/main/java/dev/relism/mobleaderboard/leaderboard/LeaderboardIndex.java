@@ -0,0 +1,360 @@
+package dev.relism.mobleaderboard.leaderboard;
+
+import org.bson.Document;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * An in-memory order-statistic index of every player's kills.
+ * Entries are kept in a treap ordered by (kills descending, UUID) where every node knows the size of its subtree,
+ * so top-K and page reads cost O(log N + K) and rank lookups cost O(log N), without touching the database.
+ */
+public class LeaderboardIndex {
+
+    private final Map<UUID, Node> nodes = new HashMap<>();
+    private Node root;
+    private int seed = 0x2545F491;
+    private long version;
+
+    /**
+     * Fills the index with the stored standings of every player.
+     * Players that are already indexed are skipped, since their entries are newer than the stored data.
+     *
+     * @param playerDataDocuments the "playerdata" documents of all players
+     */
+    public synchronized void load(Collection<Document> playerDataDocuments) {
+        for (Document playerData : playerDataDocuments) {
+            UUID playerUUID = UUID.fromString(playerData.getString("uuid"));
+            if (!nodes.containsKey(playerUUID)) {
+                // Documents written by other tools may hold the kills as an Int64 or a Double
+                Object kills = playerData.get("kills");
+                insert(new LeaderboardEntry(playerUUID, playerData.getString("name"), kills instanceof Number ? ((Number) kills).intValue() : 0));
+            }
+        }
+    }
+
+    /**
+     * Inserts a player into the index, or moves them to their new position.
+     *
+     * @param playerUUID The UUID of the player.
+     * @param playerName The name of the player, or null to keep the indexed one.
+     * @param kills      The new kill count of the player.
+     */
+    public synchronized void update(UUID playerUUID, String playerName, int kills) {
+        Node node = nodes.get(playerUUID);
+        if (node != null) {
+            if (playerName == null) {
+                playerName = node.entry.getPlayerName();
+            }
+            if (node.entry.getKills() == kills && Objects.equals(node.entry.getPlayerName(), playerName)) {
+                return;
+            }
+            root = remove(root, node.entry);
+            nodes.remove(playerUUID);
+        }
+        insert(new LeaderboardEntry(playerUUID, playerName, kills));
+    }
+
+    /**
+     * Inserts a player into the index, or moves them up if they have more kills than indexed.
+     * Applying the same or an older standing again has no effect, which makes it safe for updates that may arrive
+     * out of order or more than once.
+     *
+     * @param playerUUID The UUID of the player.
+     * @param playerName The name of the player, or null to keep the indexed one.
+     * @param kills      The kill count of the player.
+     */
+    public synchronized void raise(UUID playerUUID, String playerName, int kills) {
+        Node node = nodes.get(playerUUID);
+        if (node == null || node.entry.getKills() < kills) {
+            update(playerUUID, playerName, kills);
+        }
+    }
+
+    /**
+     * Removes a player from the index.
+     *
+     * @param playerUUID The UUID of the player.
+     */
+    public synchronized void remove(UUID playerUUID) {
+        Node node = nodes.remove(playerUUID);
+        if (node != null) {
+            root = remove(root, node.entry);
+            version++;
+        }
+    }
+
+    /**
+     * Sets the kills of every indexed player except the given ones to 0.
+     *
+     * @param keep the UUIDs of the players whose kills must be preserved
+     */
+    public synchronized void resetAllExcept(Set<UUID> keep) {
+        List<LeaderboardEntry> entries = new ArrayList<>(nodes.size());
+        collect(root, entries);
+        root = null;
+        nodes.clear();
+        version++;
+        for (LeaderboardEntry entry : entries) {
+            insert(keep.contains(entry.getPlayerUUID()) ? entry : new LeaderboardEntry(entry.getPlayerUUID(), entry.getPlayerName(), 0));
+        }
+    }
+
+    /**
+     * Removes every indexed player except the given ones.
+     *
+     * @param keep the UUIDs of the players to keep
+     */
+    public synchronized void retainAll(Set<UUID> keep) {
+        List<LeaderboardEntry> entries = new ArrayList<>(nodes.size());
+        collect(root, entries);
+        root = null;
+        nodes.clear();
+        version++;
+        for (LeaderboardEntry entry : entries) {
+            if (keep.contains(entry.getPlayerUUID())) {
+                insert(entry);
+            }
+        }
+    }
+
+    /**
+     * Removes every player from the index.
+     */
+    public synchronized void clear() {
+        root = null;
+        nodes.clear();
+        version++;
+    }
+
+    /**
+     * Retrieves the best ranked players, in O(log N + K).
+     *
+     * @param size The maximum number of players to retrieve.
+     * @return the entries of the top players, best first
+     */
+    public synchronized List<LeaderboardEntry> top(int size) {
+        return range(0, size);
+    }
+
+    /**
+     * Retrieves the players ranked from a given position on, in O(log N + K) whatever the position.
+     * The starting node is found through the subtree sizes, then the following ones are read in order.
+     *
+     * @param offset The number of better ranked players to skip, so the 0-based rank of the first returned player.
+     * @param size   The maximum number of players to retrieve.
+     * @return the entries of the players, best first, empty if the offset is past the last player
+     */
+    public synchronized List<LeaderboardEntry> range(int offset, int size) {
+        List<LeaderboardEntry> result = new ArrayList<>(Math.max(0, Math.min(size, nodes.size() - offset)));
+        if (offset < 0 || offset >= nodes.size()) {
+            return result;
+        }
+        // Descend to the node at the offset, remembering the ancestors that come after it
+        Deque<Node> path = new ArrayDeque<>();
+        Node node = root;
+        int remaining = offset;
+        while (node != null) {
+            int leftSize = size(node.left);
+            if (remaining < leftSize) {
+                path.push(node);
+                node = node.left;
+            } else if (remaining == leftSize) {
+                path.push(node);
+                break;
+            } else {
+                remaining -= leftSize + 1;
+                node = node.right;
+            }
+        }
+        node = null;
+        while ((node != null || !path.isEmpty()) && result.size() < size) {
+            while (node != null) {
+                path.push(node);
+                node = node.left;
+            }
+            node = path.pop();
+            result.add(node.entry);
+            node = node.right;
+        }
+        return result;
+    }
+
+    /**
+     * Retrieves the position of a player on the leaderboard, in O(log N).
+     *
+     * @param playerUUID The UUID of the player.
+     * @return the 1-based rank of the player, or -1 if they aren't indexed
+     */
+    public synchronized int rankOf(UUID playerUUID) {
+        Node target = nodes.get(playerUUID);
+        if (target == null) {
+            return -1;
+        }
+        int rank = 0;
+        Node node = root;
+        while (node != null) {
+            int cmp = target.entry.compareRank(node.entry);
+            if (cmp < 0) {
+                node = node.left;
+            } else {
+                rank += size(node.left) + 1;
+                if (cmp == 0) {
+                    return rank;
+                }
+                node = node.right;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Retrieves the current entry of a player.
+     *
+     * @param playerUUID The UUID of the player.
+     * @return the entry of the player, or null if they aren't indexed
+     */
+    public synchronized LeaderboardEntry get(UUID playerUUID) {
+        Node node = nodes.get(playerUUID);
+        return node == null ? null : node.entry;
+    }
+
+    /**
+     * @return the number of indexed players
+     */
+    public synchronized int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Retrieves the version of the standings, which changes whenever an entry is added, changed or removed.
+     * Entries that didn't change keep their instance across versions.
+     *
+     * @return the current version
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    private void insert(LeaderboardEntry entry) {
+        Node node = new Node(entry, nextPriority());
+        nodes.put(entry.getPlayerUUID(), node);
+        root = insert(root, node);
+        version++;
+    }
+
+    private Node insert(Node node, Node inserted) {
+        if (node == null) {
+            return inserted;
+        }
+        if (inserted.priority > node.priority) {
+            Node[] halves = split(node, inserted.entry);
+            inserted.left = halves[0];
+            inserted.right = halves[1];
+            return inserted.update();
+        }
+        if (inserted.entry.compareRank(node.entry) < 0) {
+            node.left = insert(node.left, inserted);
+        } else {
+            node.right = insert(node.right, inserted);
+        }
+        return node.update();
+    }
+
+    private Node remove(Node node, LeaderboardEntry entry) {
+        if (node == null) {
+            return null;
+        }
+        int cmp = entry.compareRank(node.entry);
+        if (cmp == 0) {
+            return merge(node.left, node.right);
+        }
+        if (cmp < 0) {
+            node.left = remove(node.left, entry);
+        } else {
+            node.right = remove(node.right, entry);
+        }
+        return node.update();
+    }
+
+    /**
+     * Splits a subtree into the nodes ranking above the given entry and the remaining ones.
+     */
+    private Node[] split(Node node, LeaderboardEntry entry) {
+        if (node == null) {
+            return new Node[2];
+        }
+        if (node.entry.compareRank(entry) < 0) {
+            Node[] halves = split(node.right, entry);
+            node.right = halves[0];
+            halves[0] = node.update();
+            return halves;
+        }
+        Node[] halves = split(node.left, entry);
+        node.left = halves[1];
+        halves[1] = node.update();
+        return halves;
+    }
+
+    private Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            return left.update();
+        }
+        right.left = merge(left, right.left);
+        return right.update();
+    }
+
+    private void collect(Node node, List<LeaderboardEntry> entries) {
+        if (node != null) {
+            collect(node.left, entries);
+            entries.add(node.entry);
+            collect(node.right, entries);
+        }
+    }
+
+    private int nextPriority() {
+        // xorshift, good enough to keep the treap balanced in expectation
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return seed;
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static final class Node {
+        private final LeaderboardEntry entry;
+        private final int priority;
+        private int size = 1;
+        private Node left;
+        private Node right;
+
+        private Node(LeaderboardEntry entry, int priority) {
+            this.entry = entry;
+            this.priority = priority;
+        }
+
+        private Node update() {
+            size = 1 + LeaderboardIndex.size(left) + LeaderboardIndex.size(right);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package dev.relism.mobleaderboard.leaderboard;
+
+import dev.relism.mobleaderboard.Mobleaderboard;
+import dev.relism.mobleaderboard.gui.Gui;
+import dev.relism.mobleaderboard.utils.msg;
+import net.md_5.bungee.api.ChatColor;
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.SkullType;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.bukkit.inventory.meta.SkullMeta;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The pre-rendered, paginated leaderboard GUI, shared by every player viewing it.
+ * The first page shows the top 10 on a podium, the following ones list the next players 27 at a time.
+ * Every page reads its players from the {@link LeaderboardIndex} by rank, so any page costs the same as the first.
+ *
+ * <p>A page is only touched when the version of the index changed since its last render,
+ * and then only the slots whose entry changed are rebuilt. Player heads are reused when a player only moved
+ * or gained kills, so the skull owner is only set for players entering the page.
+ * The most recently opened pages are kept rendered. Must only be used from the server thread.</p>
+ *
+ * <p>Every page is a {@link Gui} of its own, so its buttons know which page they belong to.</p>
+ *
+ * <p>When given the {@link MobLeaderboards}, every head also lists the kills of the player per mob type.</p>
+ */
+public class LeaderboardView {
+
+    private static final int PREVIOUS_SLOT = 27;
+    private static final int MY_RANK_SLOT = 31;
+    private static final int NEXT_SLOT = 35;
+    private static final int ROWS = 4;
+    private static final int PODIUM_SIZE = 10;
+    private static final int PAGE_SIZE = 27;
+    private static final int MAX_RENDERED_PAGES = 16;
+    private static final int BREAKDOWN_LINES = 5;
+
+    private final LeaderboardIndex leaderboardIndex;
+    private final String title;
+    private final MobLeaderboards breakdown;
+    private final Map<Integer, Page> pages = new LinkedHashMap<Integer, Page>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Page> eldest) {
+            return size() > MAX_RENDERED_PAGES;
+        }
+    };
+
+    /**
+     * Constructs a new LeaderboardView.
+     *
+     * @param leaderboardIndex The index holding the standings to show.
+     * @param title            The title of the GUI.
+     */
+    public LeaderboardView(LeaderboardIndex leaderboardIndex, String title) {
+        this(leaderboardIndex, title, null);
+    }
+
+    /**
+     * Constructs a new LeaderboardView showing the per-type kills of every player.
+     *
+     * @param leaderboardIndex The index holding the standings to show.
+     * @param title            The title of the GUI.
+     * @param breakdown        The leaderboards of the mob types the breakdown is read from, or null for none.
+     */
+    public LeaderboardView(LeaderboardIndex leaderboardIndex, String title, MobLeaderboards breakdown) {
+        this.leaderboardIndex = leaderboardIndex;
+        this.title = title;
+        this.breakdown = breakdown;
+    }
+
+    /**
+     * Opens a page of the leaderboard for a player, bringing it up to date first.
+     *
+     * @param viewer The player opening the leaderboard.
+     * @param page   The 0-based page to open.
+     */
+    public void open(Player viewer, int page) {
+        Mobleaderboard.getPlugin().getGuiSessions().open(viewer, render(page));
+    }
+
+    /**
+     * Brings a shared page up to date with the standings, if they changed since its last render.
+     * Players currently viewing the page see the changes right away.
+     *
+     * @param page The 0-based page.
+     * @return the shared inventory of the page
+     */
+    public Inventory refresh(int page) {
+        return render(page).getInventory();
+    }
+
+    /**
+     * Sends a player their position on the leaderboard, looked up in O(log N).
+     *
+     * @param player The player asking for their rank.
+     */
+    public void sendRank(Player player) {
+        int rank = leaderboardIndex.rankOf(player.getUniqueId());
+        if (rank < 0) {
+            msg.send(player, "&cYou're not on the leaderboard yet.");
+            return;
+        }
+        LeaderboardEntry entry = leaderboardIndex.get(player.getUniqueId());
+        msg.send(player, "&aYou're &b#" + rank + "&a out of &b" + leaderboardIndex.size() + "&a players, with &b"
+                + (entry == null ? 0 : entry.getKills()) + "&a special kills (page &b" + (pageOfRank(rank) + 1) + "&a).");
+    }
+
+    /**
+     * @return the index holding the standings shown by this view
+     */
+    public LeaderboardIndex getIndex() {
+        return leaderboardIndex;
+    }
+
+    /**
+     * @return the number of pages needed to show every indexed player, at least 1
+     */
+    public int getPageCount() {
+        int players = leaderboardIndex.size();
+        return players <= PODIUM_SIZE ? 1 : 1 + (players - PODIUM_SIZE + PAGE_SIZE - 1) / PAGE_SIZE;
+    }
+
+    /**
+     * Finds the page showing a rank.
+     *
+     * @param rank The 1-based rank.
+     * @return the 0-based page showing the rank
+     */
+    public static int pageOfRank(int rank) {
+        return rank <= PODIUM_SIZE ? 0 : 1 + (rank - PODIUM_SIZE - 1) / PAGE_SIZE;
+    }
+
+    private Page render(int page) {
+        Page rendered = pages.get(page);
+        if (rendered == null) {
+            rendered = new Page(page);
+            pages.put(page, rendered);
+        }
+        rendered.refresh();
+        return rendered;
+    }
+
+    /**
+     * Opens another page for a player on the next tick, since an inventory can't be opened from within a click on another one.
+     */
+    private void openLater(Player viewer, int page) {
+        if (page >= 0 && page < getPageCount()) {
+            Bukkit.getScheduler().runTask(Mobleaderboard.getPlugin(), () -> open(viewer, page));
+        }
+    }
+
+    /**
+     * A rendered page of the leaderboard.
+     */
+    private final class Page extends Gui {
+        private final int number;
+        private final int offset;
+        private final int size;
+        private final Inventory inventory;
+        private final LeaderboardEntry[] renderedEntries;
+        private final Map<UUID, ItemStack> renderedHeads = new HashMap<>();
+        private long renderedVersion = -1;
+
+        private Page(int number) {
+            super(9 * ROWS, number == 0 ? title : title + " - page " + (number + 1));
+            this.number = number;
+            this.offset = number == 0 ? 0 : PODIUM_SIZE + (number - 1) * PAGE_SIZE;
+            this.size = number == 0 ? PODIUM_SIZE : PAGE_SIZE;
+            this.renderedEntries = new LeaderboardEntry[size];
+            this.inventory = getInventory();
+            setButton(MY_RANK_SLOT, createButton(Material.COMPASS, ChatColor.AQUA + "Your rank"), (player, event) -> {
+                sendRank(player);
+                int rank = leaderboardIndex.rankOf(player.getUniqueId());
+                if (rank > 0 && pageOfRank(rank) != this.number) {
+                    openLater(player, pageOfRank(rank));
+                }
+            });
+        }
+
+        private void refresh() {
+            long version = leaderboardIndex.getVersion();
+            if (version == renderedVersion) {
+                return;
+            }
+            List<LeaderboardEntry> players = leaderboardIndex.range(offset, size);
+            renderedVersion = version;
+
+            Map<UUID, ItemStack> heads = new HashMap<>();
+            for (int position = 0; position < size; position++) {
+                LeaderboardEntry entry = position < players.size() ? players.get(position) : null;
+                if (entry == null) {
+                    if (renderedEntries[position] != null) {
+                        inventory.setItem(getInventorySlot(position), null);
+                        renderedEntries[position] = null;
+                    }
+                    continue;
+                }
+                ItemStack head = renderedHeads.get(entry.getPlayerUUID());
+                // The index keeps the same entry instance as long as the player's standing doesn't change
+                if (renderedEntries[position] != entry) {
+                    int rank = offset + position + 1;
+                    head = head != null && sameName(head, entry) ? relabel(head, entry, rank) : createPlayerItem(entry, rank);
+                    inventory.setItem(getInventorySlot(position), head);
+                    renderedEntries[position] = entry;
+                }
+                heads.put(entry.getPlayerUUID(), head);
+            }
+            renderedHeads.clear();
+            renderedHeads.putAll(heads);
+
+            if (number > 0) {
+                setButton(PREVIOUS_SLOT, createButton(Material.ARROW, ChatColor.YELLOW + "Previous page"), (player, event) -> openLater(player, number - 1));
+            } else {
+                clearButton(PREVIOUS_SLOT);
+            }
+            if (number + 1 < getPageCount()) {
+                setButton(NEXT_SLOT, createButton(Material.ARROW, ChatColor.YELLOW + "Next page"), (player, event) -> openLater(player, number + 1));
+            } else {
+                clearButton(NEXT_SLOT);
+            }
+        }
+
+        /**
+         * Returns the inventory slot based on the position of a player on the page.
+         *
+         * @param position The position of the player on the page.
+         * @return The corresponding inventory slot.
+         */
+        private int getInventorySlot(int position) {
+            if (number > 0) {
+                return position;
+            }
+            if (position == 0) {
+                return 4;  // First place
+            } else if (position == 1) {
+                return 12; // Second place
+            } else if (position == 2) {
+                return 14; // Third place
+            } else if (position >= 3 && position <= 9) {
+                return 19 + (position - 3); // Fourth to Tenth place
+            } else {
+                return -1; // Invalid position
+            }
+        }
+    }
+
+    /**
+     * Creates an ItemStack representing a player with their kills and position on the leaderboard.
+     *
+     * @param entry    The standing of the player.
+     * @param position The position of the player on the leaderboard.
+     * @return The created player ItemStack.
+     */
+    private ItemStack createPlayerItem(LeaderboardEntry entry, int position) {
+        // Create a player head ItemStack
+        ItemStack playerHead = new ItemStack(Material.SKULL_ITEM, 1, (short) SkullType.PLAYER.ordinal());
+
+        //Get meta and set the owner, which is the expensive part, then the labels
+        SkullMeta skullMeta = (SkullMeta) playerHead.getItemMeta();
+        skullMeta.setOwner(entry.getPlayerName());
+        playerHead.setItemMeta(skullMeta);
+
+        return relabel(playerHead, entry, position);
+    }
+
+    /**
+     * Creates a copy of a rendered player head with an updated position and kill count, keeping the skull owner.
+     *
+     * @param playerHead The rendered head of the player.
+     * @param entry      The standing of the player.
+     * @param position   The position of the player on the leaderboard.
+     * @return The relabeled player ItemStack.
+     */
+    private ItemStack relabel(ItemStack playerHead, LeaderboardEntry entry, int position) {
+        ItemStack relabeled = playerHead.clone();
+        SkullMeta skullMeta = (SkullMeta) relabeled.getItemMeta();
+        skullMeta.setDisplayName("#" + position + " " + entry.getPlayerName());
+
+        // Setting lore
+        List<String> lore = new ArrayList<>();
+        lore.add("Special Kills: " + entry.getKills());
+        if (breakdown != null) {
+            lore.addAll(breakdown.breakdown(entry.getPlayerUUID(), BREAKDOWN_LINES));
+        }
+        skullMeta.setLore(lore);
+
+        // Apply the meta to the ItemStack
+        relabeled.setItemMeta(skullMeta);
+
+        return relabeled;
+    }
+
+    private static boolean sameName(ItemStack playerHead, LeaderboardEntry entry) {
+        String owner = ((SkullMeta) playerHead.getItemMeta()).getOwner();
+        return owner != null && owner.equals(entry.getPlayerName());
+    }
+
+    private static ItemStack createButton(Material material, String displayName) {
+        ItemStack item = new ItemStack(material);
+        ItemMeta meta = item.getItemMeta();
+        meta.setDisplayName(displayName);
+        item.setItemMeta(meta);
+        return item;
+    }
+}
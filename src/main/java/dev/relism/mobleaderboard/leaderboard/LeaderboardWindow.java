@@ -0,0 +1,78 @@
+package dev.relism.mobleaderboard.leaderboard;
+
+import java.time.LocalDate;
+
+/**
+ * The rolling time windows kills are counted in, on top of the season total held in the "kills" field.
+ * The season is not a window: its leaderboard is the main one, over the "kills" field, which the season rollover resets.
+ * Every window is stored per player as a single bucket, {@code {epoch, kills}}, holding the kills of the latest
+ * epoch the player killed in. A bucket of an older epoch counts as 0, so windows roll over without any reset pass.
+ */
+public enum LeaderboardWindow {
+
+    /**
+     * Kills since midnight.
+     */
+    DAILY("daily", "Daily kills leaderboard") {
+        @Override
+        public long epochOf(LocalDate date) {
+            return date.toEpochDay();
+        }
+    },
+
+    /**
+     * Kills since Monday at midnight.
+     */
+    WEEKLY("weekly", "Weekly kills leaderboard") {
+        @Override
+        public long epochOf(LocalDate date) {
+            // The epoch day 0 was a Thursday, shifting by 3 days makes the weeks start on Monday
+            return Math.floorDiv(date.toEpochDay() + 3, 7);
+        }
+    };
+
+    private final String field;
+    private final String title;
+
+    LeaderboardWindow(String field, String title) {
+        this.field = field;
+        this.title = title;
+    }
+
+    /**
+     * Computes the epoch a date belongs to. Dates of the same epoch share a bucket.
+     *
+     * @param date the date
+     * @return the number of the epoch
+     */
+    public abstract long epochOf(LocalDate date);
+
+    /**
+     * @return the name of the bucket field in the player data, which is also the name used in commands
+     */
+    public String getField() {
+        return field;
+    }
+
+    /**
+     * @return the title of the leaderboard GUI of this window
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * Finds a window by the name used in commands.
+     *
+     * @param name the name of the window
+     * @return the window, or null if there is none with this name
+     */
+    public static LeaderboardWindow fromName(String name) {
+        for (LeaderboardWindow window : values()) {
+            if (window.field.equalsIgnoreCase(name)) {
+                return window;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,156 @@
+package dev.relism.mobleaderboard.leaderboard;
+
+import org.bson.Document;
+import org.bukkit.entity.EntityType;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * The in-memory leaderboards of every mob type, such as the top zombie slayers.
+ * Each player's kills are stored per type in the "mobKills" sub-document, keyed by the name of the {@link EntityType},
+ * while the indexes live in an array indexed by the ordinal of the type and are only created once the type is killed.
+ */
+public class MobLeaderboards {
+
+    /**
+     * The name of the sub-document holding the kills of a player per mob type.
+     */
+    public static final String FIELD = "mobKills";
+
+    private static final EntityType[] TYPES = EntityType.values();
+
+    private final LeaderboardIndex[] indexes = new LeaderboardIndex[TYPES.length];
+
+    /**
+     * Retrieves the leaderboard of a mob type, creating it if nobody killed that type yet.
+     *
+     * @param type the mob type
+     * @return the index of the mob type
+     */
+    public synchronized LeaderboardIndex getIndex(EntityType type) {
+        LeaderboardIndex index = indexes[type.ordinal()];
+        if (index == null) {
+            index = new LeaderboardIndex();
+            indexes[type.ordinal()] = index;
+        }
+        return index;
+    }
+
+    /**
+     * Moves a player on the leaderboard of a mob type.
+     *
+     * @param type       the mob type
+     * @param playerUUID the UUID of the player
+     * @param playerName the name of the player, or null to keep the indexed one
+     * @param kills      the kills of the player on that mob type
+     */
+    public void update(EntityType type, UUID playerUUID, String playerName, int kills) {
+        getIndex(type).update(playerUUID, playerName, kills);
+    }
+
+    /**
+     * Fills the leaderboards with the per-type kills found in the stored player data.
+     * Players that are already indexed on a type are skipped, since their entries are newer than the stored data.
+     *
+     * @param playerDataDocuments the "playerdata" documents of all players
+     */
+    public void load(Collection<Document> playerDataDocuments) {
+        for (Document playerData : playerDataDocuments) {
+            Document mobKills = playerData.get(FIELD, Document.class);
+            if (mobKills == null) {
+                continue;
+            }
+            UUID playerUUID = UUID.fromString(playerData.getString("uuid"));
+            for (Map.Entry<String, Object> typeKills : mobKills.entrySet()) {
+                EntityType type = typeOf(typeKills.getKey());
+                if (type != null && typeKills.getValue() instanceof Number) {
+                    LeaderboardIndex index = getIndex(type);
+                    if (index.get(playerUUID) == null) {
+                        index.update(playerUUID, playerData.getString("name"), ((Number) typeKills.getValue()).intValue());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes every player from the leaderboards of all mob types, except the given ones.
+     *
+     * @param keep the UUIDs of the players whose per-type kills must be preserved
+     */
+    public synchronized void retainAll(Set<UUID> keep) {
+        for (LeaderboardIndex index : indexes) {
+            if (index != null) {
+                index.retainAll(keep);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the lore lines describing the kills of a player per mob type, most killed first.
+     *
+     * @param playerUUID the UUID of the player
+     * @param maxLines   the maximum number of mob types listed, the remaining ones are summed up in a last line
+     * @return the lore lines, empty if the player has no per-type kills
+     */
+    public List<String> breakdown(UUID playerUUID, int maxLines) {
+        LeaderboardIndex[] snapshot;
+        synchronized (this) {
+            snapshot = indexes.clone();
+        }
+        List<LeaderboardEntry> entries = new ArrayList<>();
+        List<EntityType> types = new ArrayList<>();
+        for (int ordinal = 0; ordinal < snapshot.length; ordinal++) {
+            LeaderboardEntry entry = snapshot[ordinal] == null ? null : snapshot[ordinal].get(playerUUID);
+            if (entry == null || entry.getKills() <= 0) {
+                continue;
+            }
+            // Insertion sort, a player rarely kills more than a handful of types
+            int position = entries.size();
+            while (position > 0 && entries.get(position - 1).getKills() < entry.getKills()) {
+                position--;
+            }
+            entries.add(position, entry);
+            types.add(position, TYPES[ordinal]);
+        }
+        List<String> lines = new ArrayList<>(Math.min(entries.size(), maxLines + 1));
+        for (int i = 0; i < entries.size() && i < maxLines; i++) {
+            lines.add("  " + displayName(types.get(i)) + ": " + entries.get(i).getKills());
+        }
+        if (entries.size() > maxLines) {
+            lines.add("  +" + (entries.size() - maxLines) + " more");
+        }
+        return lines;
+    }
+
+    /**
+     * Finds a mob type by name, ignoring case.
+     *
+     * @param name the name of the type, such as "zombie" or "PIG_ZOMBIE"
+     * @return the mob type, or null if there is none with that name
+     */
+    public static EntityType typeOf(String name) {
+        for (EntityType type : TYPES) {
+            if (type.name().equalsIgnoreCase(name)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Formats a mob type for display, "PIG_ZOMBIE" becomes "Pig zombie".
+     *
+     * @param type the mob type
+     * @return the display name of the type
+     */
+    public static String displayName(EntityType type) {
+        String name = type.name().replace('_', ' ').toLowerCase();
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+}
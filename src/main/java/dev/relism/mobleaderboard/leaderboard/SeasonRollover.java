@@ -0,0 +1,242 @@
+package dev.relism.mobleaderboard.leaderboard;
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Updates;
+import dev.relism.mobleaderboard.Mobleaderboard;
+import dev.relism.mobleaderboard.profile.PlayerProfileCache;
+import dev.relism.mobleaderboard.storage.LocalRecordStore;
+import dev.relism.mobleaderboard.storage.LocalStorage;
+import dev.relism.mobleaderboard.storage.MongoWrapper;
+import dev.relism.mobleaderboard.storage.StorageBackend;
+import dev.relism.mobleaderboard.storage.StorageLayout;
+import dev.relism.mobleaderboard.utils.msg;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ends a season: snapshots the final standings, then sets the kills of every player to 0
+ * and clears their kills per mob type, except for the players that are explicitly kept.
+ * The rollover issues bulk updates instead of one future per player, through the {@link MongoWrapper} like every other
+ * database operation, and reports a single summary once done. Kill flushes are held back meanwhile, and the ones
+ * already in flight, along with the other batched writes, are stored before the reset, so it's never overtaken by an
+ * older increment. Seasons are numbered by an atomic counter, so two rollovers never end the same season number.
+ */
+public class SeasonRollover {
+
+    private static final Bson RESET = Updates.combine(Updates.set("kills", 0), Updates.unset(MobLeaderboards.FIELD));
+    private static final Bson SEASON_COUNTER = Filters.eq("_id", "counter");
+
+    private final Mobleaderboard plugin;
+    private final int snapshotSize;
+
+    /**
+     * Constructs a new SeasonRollover.
+     *
+     * @param plugin       The main plugin instance.
+     * @param snapshotSize The number of top players saved in the standings snapshot of every season.
+     */
+    public SeasonRollover(Mobleaderboard plugin, int snapshotSize) {
+        this.plugin = plugin;
+        this.snapshotSize = snapshotSize;
+    }
+
+    /**
+     * Rolls the season over asynchronously.
+     *
+     * @param keep     The UUIDs of the players whose kills are preserved.
+     * @param executor The player executing the action, who receives the summary.
+     */
+    public void rollover(Set<UUID> keep, Player executor) {
+        // Snapshot the standings before the in-memory counters are touched
+        List<LeaderboardEntry> finalStandings = plugin.getLeaderboardIndex().top(snapshotSize);
+        int indexedPlayers = plugin.getLeaderboardIndex().size();
+        PlayerProfileCache profileCache = plugin.getProfileCache();
+        profileCache.resetAllExcept(keep);
+        plugin.getLeaderboardSync().publishReset(keep);
+        // Kills flushed before the reset must be stored before it runs, and kills counted since must wait until it's done
+        CompletableFuture<Void> flushesDone = profileCache.pauseFlushes();
+
+        long start = System.currentTimeMillis();
+        Set<String> keptIds = new HashSet<>(keep.size() * 2);
+        for (UUID playerUUID : keep) {
+            keptIds.add(playerUUID.toString());
+        }
+
+        CompletableFuture<long[]> done;
+        if (plugin.getStorageBackend() == StorageBackend.LOCAL) {
+            // The record file never leaves the process, the rollover only needs to stay off the main thread
+            done = flushesDone.thenApplyAsync(v -> {
+                LocalRecordStore store = plugin.getLocalRecordStore();
+                int season = saveLocalSnapshot(store, finalStandings, indexedPlayers);
+                return new long[]{season, resetLocalRecords(store, keptIds)};
+            }, task -> Bukkit.getScheduler().runTaskAsynchronously(plugin, task));
+        } else {
+            MongoWrapper mongoWrapper = plugin.getMongoWrapperInstance();
+            // Other writes still waiting for their batch go first too
+            done = flushesDone
+                    .thenCompose(v -> mongoWrapper.drainWrites())
+                    .thenCompose(v -> saveSnapshot(mongoWrapper, finalStandings, indexedPlayers))
+                    .thenCompose(season -> (plugin.getStorageLayout() == StorageLayout.SINGLE_COLLECTION
+                            ? resetSingleCollection(mongoWrapper, keptIds)
+                            : resetLegacyCollections(mongoWrapper, keptIds))
+                            .thenApply(reset -> new long[]{season, reset}));
+        }
+
+        done.whenComplete((result, ex) -> {
+            profileCache.resumeFlushes();
+            if (ex != null) {
+                Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                plugin.getMainThreadDispatcher().execute(() -> msg.send(executor, "&cError rolling the season over: " + cause.getMessage()));
+                msg.log("Error rolling the season over: " + cause.getMessage());
+                return;
+            }
+            String summary = "&aSeason &b" + result[0] + "&a closed: reset kills of &b" + result[1] + "&a players, kept &b"
+                    + keep.size() + "&a, in &b" + (System.currentTimeMillis() - start) + "ms&a.";
+            plugin.getMainThreadDispatcher().execute(() -> msg.send(executor, summary));
+        });
+    }
+
+    /**
+     * Saves the final standings of the season that is ending.
+     *
+     * @return a CompletableFuture containing the number of the season that ended
+     */
+    private CompletableFuture<Integer> saveSnapshot(MongoWrapper mongoWrapper, List<LeaderboardEntry> finalStandings, int indexedPlayers) {
+        return nextSeason(mongoWrapper).thenCompose(season -> mongoWrapper
+                .insertDocument(StorageLayout.DATABASE_NAME, StorageLayout.SEASONS_COLLECTION, createSnapshotDocument(season, finalStandings, indexedPlayers))
+                .thenApply(v -> season));
+    }
+
+    /**
+     * Takes the next season number from the counter of the seasons collection, with a single atomic $inc.
+     * The first rollover with a counter starts it from the last season snapshotted before it existed.
+     *
+     * @return a CompletableFuture containing the number of the season that ended
+     */
+    private CompletableFuture<Integer> nextSeason(MongoWrapper mongoWrapper) {
+        return incrementSeasonCounter(mongoWrapper)
+                .thenCompose(counter -> counter != null ? CompletableFuture.completedFuture(counter)
+                        : seedSeasonCounter(mongoWrapper).thenCompose(v -> incrementSeasonCounter(mongoWrapper)))
+                .thenApply(counter -> ((Number) counter.get("season")).intValue());
+    }
+
+    private CompletableFuture<Document> incrementSeasonCounter(MongoWrapper mongoWrapper) {
+        return mongoWrapper.updateAndGetDocument(StorageLayout.DATABASE_NAME, StorageLayout.SEASONS_COLLECTION, SEASON_COUNTER,
+                Updates.inc("season", 1), Projections.include("season"));
+    }
+
+    /**
+     * Creates the season counter, on the number of the last snapshotted season. Raising it with $max keeps it right
+     * if another server seeds it at the same time.
+     */
+    private CompletableFuture<Void> seedSeasonCounter(MongoWrapper mongoWrapper) {
+        AtomicInteger lastSeason = new AtomicInteger();
+        return mongoWrapper.streamDocuments(StorageLayout.DATABASE_NAME, StorageLayout.SEASONS_COLLECTION, Filters.exists("standings"),
+                        Projections.include("season"), snapshot -> {
+                            Object season = snapshot.get("season");
+                            if (season instanceof Number) {
+                                lastSeason.accumulateAndGet(((Number) season).intValue(), Math::max);
+                            }
+                        })
+                .thenCompose(snapshots -> mongoWrapper.updateDocument(StorageLayout.DATABASE_NAME, StorageLayout.SEASONS_COLLECTION, SEASON_COUNTER,
+                        Updates.max("season", lastSeason.get()), true))
+                .thenApply(result -> null);
+    }
+
+    /**
+     * Saves the final standings of the season that is ending in the embedded record file.
+     *
+     * @return the number of the season that ended
+     */
+    static int saveLocalSnapshot(LocalRecordStore store, List<LeaderboardEntry> finalStandings, int indexedPlayers) {
+        // Holding the store keeps two rollovers from taking the same number
+        synchronized (store) {
+            int season = store.findAll(document -> "season".equals(document.getString("type"))).size() + 1;
+            store.put("season:" + season, createSnapshotDocument(season, finalStandings, indexedPlayers).append("type", "season"));
+            return season;
+        }
+    }
+
+    static Document createSnapshotDocument(int season, List<LeaderboardEntry> finalStandings, int indexedPlayers) {
+        List<Document> standings = new ArrayList<>(finalStandings.size());
+        for (int i = 0; i < finalStandings.size(); i++) {
+            LeaderboardEntry entry = finalStandings.get(i);
+            standings.add(new Document("rank", i + 1)
+                    .append("uuid", entry.getPlayerUUID().toString())
+                    .append("name", entry.getPlayerName())
+                    .append("kills", entry.getKills()));
+        }
+        return new Document("season", season)
+                .append("endedAt", System.currentTimeMillis())
+                .append("players", indexedPlayers)
+                .append("standings", standings);
+    }
+
+    /**
+     * Zeroes the kills in the single collection layout with one updateMany.
+     */
+    private CompletableFuture<Long> resetSingleCollection(MongoWrapper mongoWrapper, Set<String> keptIds) {
+        Bson filter = keptIds.isEmpty()
+                ? Filters.ne("kills", 0)
+                : Filters.and(Filters.nin("_id", keptIds), Filters.ne("kills", 0));
+        return mongoWrapper.updateDocuments(StorageLayout.DATABASE_NAME, StorageLayout.PLAYERS_COLLECTION, filter, RESET)
+                .thenApply(result -> result.getModifiedCount());
+    }
+
+    /**
+     * Zeroes the kills in the embedded record file, skipping players that are already on 0 kills.
+     */
+    static long resetLocalRecords(LocalRecordStore store, Set<String> keptIds) {
+        long reset = 0;
+        for (Document playerData : store.findAll(document -> "playerdata".equals(document.getString("type")))) {
+            String playerUUID = playerData.getString("uuid");
+            Object kills = playerData.get("kills");
+            if (!keptIds.contains(playerUUID) && kills instanceof Number && ((Number) kills).intValue() != 0) {
+                store.update(LocalStorage.key(playerUUID, "playerdata"), document -> {
+                    document.put("kills", 0);
+                    document.remove(MobLeaderboards.FIELD);
+                });
+                reset++;
+            }
+        }
+        return reset;
+    }
+
+    /**
+     * Zeroes the kills in the legacy layout, where every player needs an update on their own collection.
+     * The collections are listed once, then updated back to back, skipping players that are already on 0 kills.
+     */
+    private CompletableFuture<Long> resetLegacyCollections(MongoWrapper mongoWrapper, Set<String> keptIds) {
+        return mongoWrapper.listCollectionNames(StorageLayout.DATABASE_NAME).thenCompose(collectionNames -> {
+            List<String> playerCollections = new ArrayList<>(collectionNames.size());
+            for (String collectionName : collectionNames) {
+                if (StorageLayout.isLegacyPlayerCollection(collectionName) && !keptIds.contains(collectionName)) {
+                    playerCollections.add(collectionName);
+                }
+            }
+            return resetLegacyCollections(mongoWrapper, playerCollections.iterator(), 0);
+        });
+    }
+
+    private CompletableFuture<Long> resetLegacyCollections(MongoWrapper mongoWrapper, Iterator<String> collectionNames, long reset) {
+        if (!collectionNames.hasNext()) {
+            return CompletableFuture.completedFuture(reset);
+        }
+        Bson filter = Filters.and(Filters.eq("type", "playerdata"), Filters.ne("kills", 0));
+        return mongoWrapper.updateDocument(StorageLayout.DATABASE_NAME, collectionNames.next(), filter, RESET, false)
+                .thenCompose(result -> resetLegacyCollections(mongoWrapper, collectionNames, reset + result.getModifiedCount()));
+    }
+}
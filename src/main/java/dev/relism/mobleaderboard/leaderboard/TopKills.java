@@ -0,0 +1,65 @@
+package dev.relism.mobleaderboard.leaderboard;
+
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Selects the players with the most kills out of a stream of "playerdata" documents, holding no more than the
+ * requested number of documents at once. The weakest of the best players offered so far sits at the head of a
+ * min-heap, and is evicted by any better one, so a stream of N players costs O(N log K) time and O(K) memory.
+ */
+public class TopKills {
+
+    private static final Comparator<Document> BY_KILLS = Comparator.comparingInt(TopKills::killsOf);
+
+    private final int size;
+    private final PriorityQueue<Document> heap;
+
+    /**
+     * Constructs a new, empty TopKills.
+     *
+     * @param size The number of players to keep.
+     */
+    public TopKills(int size) {
+        this.size = Math.max(0, size);
+        this.heap = new PriorityQueue<>(Math.min(Math.max(size, 1), 1024), BY_KILLS);
+    }
+
+    /**
+     * Offers a player, who is kept if they are among the best players offered so far.
+     *
+     * @param playerData the "playerdata" document of the player
+     */
+    public void offer(Document playerData) {
+        if (heap.size() < size) {
+            heap.add(playerData);
+        } else if (size > 0 && killsOf(playerData) > killsOf(heap.peek())) {
+            heap.poll();
+            heap.add(playerData);
+        }
+    }
+
+    /**
+     * @return the documents of the kept players, the most kills first
+     */
+    public List<Document> sorted() {
+        List<Document> sorted = new ArrayList<>(heap);
+        sorted.sort(BY_KILLS.reversed());
+        return sorted;
+    }
+
+    /**
+     * Reads the kills of a player, whatever the numeric type they are stored as.
+     *
+     * @param playerData the "playerdata" document of the player
+     * @return the kills of the player, 0 if there are none
+     */
+    public static int killsOf(Document playerData) {
+        Object kills = playerData.get("kills");
+        return kills instanceof Number ? ((Number) kills).intValue() : 0;
+    }
+}
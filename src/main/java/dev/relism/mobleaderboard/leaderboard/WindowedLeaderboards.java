@@ -0,0 +1,140 @@
+package dev.relism.mobleaderboard.leaderboard;
+
+import org.bson.Document;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * The in-memory leaderboards of the current epoch of every {@link LeaderboardWindow}.
+ * Each window has its own {@link LeaderboardIndex}, which is emptied as soon as a new epoch starts,
+ * so memory stays bounded by the players active in the current epochs and old epochs never need a reset pass.
+ */
+public class WindowedLeaderboards {
+
+    private final ZoneId zone;
+    private final LeaderboardIndex[] indexes = new LeaderboardIndex[LeaderboardWindow.values().length];
+    private final long[] epochs = new long[LeaderboardWindow.values().length];
+
+    /**
+     * Constructs a new WindowedLeaderboards.
+     *
+     * @param zone The time zone in which days and weeks start.
+     */
+    public WindowedLeaderboards(ZoneId zone) {
+        this.zone = zone;
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = new LeaderboardIndex();
+        }
+        Arrays.fill(epochs, Long.MIN_VALUE);
+    }
+
+    /**
+     * Computes the current epoch of a window.
+     *
+     * @param window the window
+     * @return the number of the current epoch
+     */
+    public long currentEpoch(LeaderboardWindow window) {
+        return window.epochOf(LocalDate.now(zone));
+    }
+
+    /**
+     * Computes the epoch of a window a given time falls in.
+     *
+     * @param window the window
+     * @param time   the time, in milliseconds since the epoch
+     * @return the number of the epoch
+     */
+    public long epochAt(LeaderboardWindow window, long time) {
+        return window.epochOf(Instant.ofEpochMilli(time).atZone(zone).toLocalDate());
+    }
+
+    /**
+     * Retrieves the leaderboard of the current epoch of a window.
+     * The returned index stays the same across epochs, it is emptied when a new one starts.
+     *
+     * @param window the window
+     * @return the index of the window
+     */
+    public synchronized LeaderboardIndex getIndex(LeaderboardWindow window) {
+        roll(window);
+        return indexes[window.ordinal()];
+    }
+
+    /**
+     * Moves a player on the leaderboard of a window, if the kills belong to the current epoch.
+     *
+     * @param window     the window
+     * @param epoch      the epoch the kills were counted in
+     * @param playerUUID the UUID of the player
+     * @param playerName the name of the player, or null to keep the indexed one
+     * @param kills      the kills of the player in the epoch
+     */
+    public synchronized void update(LeaderboardWindow window, long epoch, UUID playerUUID, String playerName, int kills) {
+        roll(window);
+        if (epoch == epochs[window.ordinal()]) {
+            indexes[window.ordinal()].update(playerUUID, playerName, kills);
+        }
+    }
+
+    /**
+     * Moves a player up on the leaderboard of a window, if the kills belong to the current epoch
+     * and are more than the indexed ones, see {@link LeaderboardIndex#raise(UUID, String, int)}.
+     *
+     * @param window     the window
+     * @param epoch      the epoch the kills were counted in
+     * @param playerUUID the UUID of the player
+     * @param playerName the name of the player, or null to keep the indexed one
+     * @param kills      the kills of the player in the epoch
+     */
+    public synchronized void raise(LeaderboardWindow window, long epoch, UUID playerUUID, String playerName, int kills) {
+        roll(window);
+        if (epoch == epochs[window.ordinal()]) {
+            indexes[window.ordinal()].raise(playerUUID, playerName, kills);
+        }
+    }
+
+    /**
+     * Fills the leaderboards with the buckets of the current epochs found in the stored player data.
+     *
+     * @param playerDataDocuments the "playerdata" documents of all players
+     */
+    public synchronized void load(Collection<Document> playerDataDocuments) {
+        for (LeaderboardWindow window : LeaderboardWindow.values()) {
+            roll(window);
+            long epoch = epochs[window.ordinal()];
+            LeaderboardIndex index = indexes[window.ordinal()];
+            for (Document playerData : playerDataDocuments) {
+                Document bucket = playerData.get(window.getField(), Document.class);
+                if (bucket != null && bucket.get("epoch") instanceof Number && ((Number) bucket.get("epoch")).longValue() == epoch) {
+                    UUID playerUUID = UUID.fromString(playerData.getString("uuid"));
+                    if (index.get(playerUUID) == null) {
+                        index.update(playerUUID, playerData.getString("name"), ((Number) bucket.get("kills")).intValue());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Empties the leaderboards of the windows whose epoch is over.
+     */
+    public synchronized void rollAll() {
+        for (LeaderboardWindow window : LeaderboardWindow.values()) {
+            roll(window);
+        }
+    }
+
+    private void roll(LeaderboardWindow window) {
+        long epoch = currentEpoch(window);
+        if (epoch != epochs[window.ordinal()]) {
+            epochs[window.ordinal()] = epoch;
+            indexes[window.ordinal()].clear();
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package dev.relism.mobleaderboard.listeners;
 
-import dev.relism.mobleaderboard.storage.PlayerStorage;
 import dev.relism.mobleaderboard.utils.msg;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.Player;
@@ -10,7 +9,8 @@ import org.bukkit.event.entity.EntityDeathEvent;
 import dev.relism.mobleaderboard.Mobleaderboard;
 
 /**
- * Listener for handling mob kill events. Increments the kill count for players when they kill special mobs.
+ * Listener for handling mob kill events. Increments the kill count for players when they kill special mobs,
+ * both in total and for the type of the killed mob.
  */
 public class MobKillListener implements Listener {
 
@@ -18,7 +18,8 @@ public class MobKillListener implements Listener {
 
     /**
      * Handles the EntityDeathEvent triggered when a mob is killed.
-     * Increments the "kills" field for the player who killed a special mob with the metadata "testPlugin".
+     * Increments the "kills" field for the player who killed a special mob, as tracked by the special mob registry.
+     * Any death of a special mob takes it out of the registry, the deaths of ordinary mobs cost a single lookup.
      *
      * @param event The EntityDeathEvent
      */
@@ -27,16 +28,13 @@ public class MobKillListener implements Listener {
         Entity killedEntity = event.getEntity();
         Player killer = event.getEntity().getKiller();
 
-        if (killer != null && killedEntity.hasMetadata("testPlugin")) {
-            PlayerStorage ps = new PlayerStorage(plugin, killer);
-
-            // Increment the "kills" field by 1
-            ps.getFieldValue("playerdata", "kills").thenAccept(kills -> {
-                int newKills = (kills != null) ? ((int) kills) + 1 : 1;
-                ps.setFieldValue("playerdata", "kills", newKills);
-                msg.send(killer, "• You've slain a special mob!");
-                msg.send(killer, "• &aSpecial mob kills&f: &b" + (newKills - 1) + "&f -> &b" + newKills);
-            });
+        if (plugin.getSpecialMobRegistry().remove(killedEntity.getUniqueId()) && killer != null) {
+            // Increment the resident counter, the change is written back by the next flush
+            int newKills = plugin.getProfileCache().increment(killer.getUniqueId(), killer.getName(), killedEntity.getType());
+            // The other servers move the killer on their own leaderboards
+            plugin.getLeaderboardSync().publishKill(killer.getUniqueId(), killedEntity.getType());
+            msg.send(killer, "• You've slain a special mob!");
+            msg.send(killer, "• &aSpecial mob kills&f: &b" + (newKills - 1) + "&f -> &b" + newKills);
         }
     }
 
@@ -1,17 +1,18 @@
 package dev.relism.mobleaderboard.listeners;
 
+import dev.relism.mobleaderboard.profile.PendingReward;
+import dev.relism.mobleaderboard.profile.PlayerProfile;
 import dev.relism.mobleaderboard.utils.msg;
-import org.bson.Document;
-import org.bukkit.Material;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.entity.Player;
 import dev.relism.mobleaderboard.Mobleaderboard;
-import dev.relism.mobleaderboard.storage.PlayerStorage;
 import org.bukkit.inventory.ItemStack;
 
-import java.util.concurrent.CompletableFuture;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Listener for handling player join events.
@@ -21,81 +22,62 @@ public class PlayerJoinListener implements Listener {
     private static final Mobleaderboard plugin = Mobleaderboard.getPlugin();
 
     /**
-     * Handles player join events. Checks if the player has an existing document in the MongoDB database
-     * with type "mobdata". If not, initializes player data by creating a new document.
+     * Handles player join events. Loads the player's session profile, which reads the player data
+     * in a single query and creates it if it doesn't exist, then hands out the pending rewards.
      *
      * @param event the PlayerJoinEvent
      */
     @EventHandler
     public void onPlayerJoinEvent(PlayerJoinEvent event) {
         Player player = event.getPlayer();
-        initializePlayerData(player);
-        rewardManager(player);
+        plugin.getProfileCache().load(player.getUniqueId(), player.getName()).whenLoaded()
+                .thenAcceptAsync(profile -> rewardManager(player, profile), plugin.getMainThreadDispatcher());
     }
 
     /**
-     * Initializes player data by checking if the player has an existing document in the MongoDB database.
-     * If not, creates a new document with the required fields.
+     * Manages rewards when a player joins. Gives the player every queued reward that fits in their inventory,
+     * then removes the delivered ones from the queue with a single write. The queue was read with the profile.
      *
-     * @param player the player to initialize data for
+     * @param player  the player for whom rewards are checked
+     * @param profile the session profile of the player
      */
-    private void initializePlayerData(Player player) {
-        PlayerStorage playerStorage = new PlayerStorage(plugin, player);
+    private void rewardManager(Player player, PlayerProfile profile) {
+        if (!player.isOnline()) {
+            return;
+        }
 
-        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
-            if (!playerStorage.playerDataExists()) {
-                // Player data doesn't exist, create a new document
-                plugin.getServer().getScheduler().runTask(plugin, () -> {
-                    msg.log("Initializing data for player: " + player.getName());
-                    playerStorage.insertDocument(createPlayerDataDocument(player));
-                });
-            }
-        });
-    }
+        List<PendingReward> pendingRewards = profile.getPendingRewards();
+        if (pendingRewards.isEmpty()) {
+            msg.send(player, "&bYou're awaiting no pending rewards");
+            return;
+        }
 
-    /**
-     * Creates a new document with the required fields for player data.
-     *
-     * @param player the player for whom the document is created
-     * @return the created document
-     */
-    private Document createPlayerDataDocument(Player player) {
-        return new Document("type", "playerdata")
-                .append("name", player.getName())
-                .append("uuid", player.getUniqueId().toString())
-                .append("kills", 0);
-    }
-
-    /**
-     * Manages rewards when a player joins. Checks for pending rewards and gives them to the player.
-     *
-     * @param player the player for whom rewards are checked
-     */
-    private void rewardManager(Player player) {
-        PlayerStorage playerStorage = new PlayerStorage(plugin, player);
-
-        CompletableFuture<Object> pendingRewardFuture = playerStorage.getFieldValue("playerdata", "pendingRewardMaterial");
-
-        pendingRewardFuture.thenAccept(pendingReward -> {
-            // Check if the pending reward is not null and not equal to an empty string
-            if (pendingReward != null && !pendingReward.equals("")) {
-                String pendingRewardMaterial = pendingReward.toString();
-
-                // Convert the pending reward to a Material object
-                Material material = Material.getMaterial(pendingRewardMaterial);
-
-                if (material != null) {
-                    ItemStack rewardItem = new ItemStack(material, 1);
-                    player.getInventory().addItem(rewardItem);
-                    msg.send(player, "&aYou received a pending reward: " + material.name());
-
-                    // Set pendingRewardMaterial to null or 0, depending on your use case
-                    playerStorage.setFieldValue("playerdata", "pendingRewardMaterial", "");
+        List<PendingReward> delivered = new ArrayList<>();
+        for (PendingReward reward : pendingRewards) {
+            ItemStack rewardItem = reward.toItemStack();
+            if (rewardItem == null) {
+                // The material doesn't exist on this server, there is nothing to hand out
+                msg.log("&cDropping the pending reward " + reward.getId() + " of " + player.getName() + ", unknown material " + reward.getMaterial());
+                delivered.add(reward);
+                continue;
+            }
+            Map<Integer, ItemStack> leftover = player.getInventory().addItem(rewardItem.clone());
+            if (!leftover.isEmpty()) {
+                // Take back the part that fit, the reward stays queued as a whole
+                ItemStack added = rewardItem.clone();
+                added.setAmount(rewardItem.getAmount() - leftover.values().iterator().next().getAmount());
+                if (added.getAmount() > 0) {
+                    player.getInventory().removeItem(added);
                 }
-            } else {
-                msg.send(player, "&bYou're awaiting no pending rewards");
+                msg.send(player, "&eYour inventory is full. Free up some space and rejoin the server to receive your other rewards.");
+                break;
             }
-        });
+            msg.send(player, "&aYou received a pending reward: " + reward.getAmount() + "x " + reward.getMaterial());
+            delivered.add(reward);
+        }
+
+        plugin.getRewardQueue().acknowledge(profile, delivered)
+                .exceptionally(ex -> { msg.log("&cCould not acknowledge the rewards of " + player.getName() + ": " + ex.getMessage()); return null; });
     }
 
 }
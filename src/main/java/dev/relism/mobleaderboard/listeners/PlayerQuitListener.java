@@ -0,0 +1,27 @@
+package dev.relism.mobleaderboard.listeners;
+
+import dev.relism.mobleaderboard.Mobleaderboard;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+/**
+ * Listener for handling player quit events.
+ */
+public class PlayerQuitListener implements Listener {
+
+    private static final Mobleaderboard plugin = Mobleaderboard.getPlugin();
+
+    /**
+     * Handles player quit events. Flushes the player's pending kills to the database
+     * and evicts their session profile, ending the menu session they may have left open.
+     *
+     * @param event the PlayerQuitEvent
+     */
+    @EventHandler
+    public void onPlayerQuitEvent(PlayerQuitEvent event) {
+        plugin.getGuiSessions().close(event.getPlayer());
+        plugin.getProfileCache().unload(event.getPlayer().getUniqueId());
+    }
+
+}
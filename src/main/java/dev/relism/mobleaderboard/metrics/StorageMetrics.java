@@ -0,0 +1,172 @@
+package dev.relism.mobleaderboard.metrics;
+
+import java.beans.ConstructorProperties;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Per-operation call and failure counters, latency histograms and an in-flight gauge for the database operations.
+ * Latencies are measured in microseconds from the call until the returned future completes,
+ * so they include the time spent waiting for a thread.
+ */
+public class StorageMetrics implements StorageMetricsMXBean {
+
+    /**
+     * The JMX name the metrics are registered under.
+     */
+    public static final String OBJECT_NAME = "dev.relism.mobleaderboard:type=StorageMetrics";
+
+    private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * Measures an asynchronous operation.
+     * The operation counts as failed if it throws or if the returned future completes exceptionally.
+     *
+     * @param operationName the name of the operation
+     * @param call          starts the operation and returns its future
+     * @return the future returned by the call
+     */
+    public <T> CompletableFuture<T> time(String operationName, Supplier<CompletableFuture<T>> call) {
+        Operation operation = operation(operationName);
+        long start = System.nanoTime();
+        inFlight.incrementAndGet();
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            complete(operation, start, true);
+            throw e;
+        }
+        future.whenComplete((result, ex) -> complete(operation, start, ex != null));
+        return future;
+    }
+
+    /**
+     * Counts a failed call of an operation that reported its error without completing exceptionally.
+     *
+     * @param operationName the name of the operation
+     */
+    public void failure(String operationName) {
+        operation(operationName).failures.increment();
+    }
+
+    /**
+     * Registers the metrics on the platform MBean server, replacing any previous registration.
+     */
+    public void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register " + OBJECT_NAME, e);
+        }
+    }
+
+    /**
+     * Removes the metrics from the platform MBean server, if they are registered.
+     */
+    public void unregisterMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not unregister " + OBJECT_NAME, e);
+        }
+    }
+
+    @Override
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    public Map<String, OperationSnapshot> getOperations() {
+        Map<String, OperationSnapshot> snapshots = new TreeMap<>();
+        for (Map.Entry<String, Operation> entry : operations.entrySet()) {
+            Operation operation = entry.getValue();
+            snapshots.put(entry.getKey(), new OperationSnapshot(operation.calls.sum(), operation.failures.sum(),
+                    operation.latency.percentile(50), operation.latency.percentile(99), operation.latency.max(), operation.latency.mean()));
+        }
+        return snapshots;
+    }
+
+    @Override
+    public void reset() {
+        for (Operation operation : operations.values()) {
+            operation.calls.reset();
+            operation.failures.reset();
+            operation.latency.reset();
+        }
+    }
+
+    private Operation operation(String operationName) {
+        return operations.computeIfAbsent(operationName, name -> new Operation());
+    }
+
+    private void complete(Operation operation, long start, boolean failed) {
+        inFlight.decrementAndGet();
+        operation.calls.increment();
+        if (failed) {
+            operation.failures.increment();
+        }
+        operation.latency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+    }
+
+    private static final class Operation {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+    }
+
+    /**
+     * The counters and latencies of an operation at a point in time. Latencies are in microseconds.
+     */
+    public static final class OperationSnapshot {
+        private final long calls;
+        private final long failures;
+        private final long p50Micros;
+        private final long p99Micros;
+        private final long maxMicros;
+        private final double meanMicros;
+
+        @ConstructorProperties({"calls", "failures", "p50Micros", "p99Micros", "maxMicros", "meanMicros"})
+        public OperationSnapshot(long calls, long failures, long p50Micros, long p99Micros, long maxMicros, double meanMicros) {
+            this.calls = calls;
+            this.failures = failures;
+            this.p50Micros = p50Micros;
+            this.p99Micros = p99Micros;
+            this.maxMicros = maxMicros;
+            this.meanMicros = meanMicros;
+        }
+
+        public long getCalls() { return calls; }
+
+        public long getFailures() { return failures; }
+
+        public long getP50Micros() { return p50Micros; }
+
+        public long getP99Micros() { return p99Micros; }
+
+        public long getMaxMicros() { return maxMicros; }
+
+        public double getMeanMicros() { return meanMicros; }
+    }
+}
@@ -0,0 +1,24 @@
+package dev.relism.mobleaderboard.metrics;
+
+import java.util.Map;
+
+/**
+ * The JMX view of the {@link StorageMetrics}, registered as {@value StorageMetrics#OBJECT_NAME}.
+ */
+public interface StorageMetricsMXBean {
+
+    /**
+     * @return the number of database operations currently in flight
+     */
+    int getInFlight();
+
+    /**
+     * @return the counters and latencies of every operation that was called at least once, by operation name
+     */
+    Map<String, StorageMetrics.OperationSnapshot> getOperations();
+
+    /**
+     * Discards every recorded call, latency and failure.
+     */
+    void reset();
+}
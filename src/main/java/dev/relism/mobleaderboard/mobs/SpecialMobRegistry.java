@@ -0,0 +1,296 @@
+package dev.relism.mobleaderboard.mobs;
+
+import dev.relism.mobleaderboard.utils.msg;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * The special mobs that are alive, by entity UUID. Unlike entity metadata, the registry survives chunk unloads,
+ * and it's checkpointed to a file so the mobs keep counting after a restart.
+ *
+ * <p>The UUIDs are kept in an open-addressing hash set of primitive longs, two per UUID, probed linearly and kept
+ * at most half full, so telling that an ordinary mob isn't special usually costs a single probe, without allocating.
+ * Removals shift the following entries back instead of leaving tombstones. The nil UUID, which marks empty slots,
+ * is tracked apart.</p>
+ *
+ * <p>Checkpoint layout: {@code int magic | int version | int count | count * (long msb | long lsb) | long crc32},
+ * where the CRC covers everything before itself. Checkpoints are written to a temporary file and moved in atomically.</p>
+ */
+public class SpecialMobRegistry {
+
+    private static final int MAGIC = 0x4D4C534D; // "MLSM"
+    private static final int VERSION = 1;
+    private static final int MIN_CAPACITY = 64;
+
+    private final File file;
+    private final Object checkpointLock = new Object();
+    private long[] table = new long[2 * MIN_CAPACITY];
+    private int mask = MIN_CAPACITY - 1;
+    private int size;
+    private boolean containsNil;
+    private long modifications;
+    private long checkpointedModifications;
+
+    /**
+     * Constructs a new, empty SpecialMobRegistry.
+     *
+     * @param file The checkpoint file.
+     */
+    public SpecialMobRegistry(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Marks an entity as a special mob.
+     *
+     * @param entityUUID the UUID of the entity
+     * @return true if the entity wasn't marked yet
+     */
+    public synchronized boolean add(UUID entityUUID) {
+        long msb = entityUUID.getMostSignificantBits();
+        long lsb = entityUUID.getLeastSignificantBits();
+        if (msb == 0 && lsb == 0) {
+            if (containsNil) {
+                return false;
+            }
+            containsNil = true;
+            modifications++;
+            return true;
+        }
+        if (insert(msb, lsb)) {
+            modifications++;
+            if (2 * size > mask + 1) {
+                resize(2 * (mask + 1));
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Unmarks an entity, typically because it died.
+     *
+     * @param entityUUID the UUID of the entity
+     * @return true if the entity was a special mob
+     */
+    public synchronized boolean remove(UUID entityUUID) {
+        long msb = entityUUID.getMostSignificantBits();
+        long lsb = entityUUID.getLeastSignificantBits();
+        if (msb == 0 && lsb == 0) {
+            boolean removed = containsNil;
+            containsNil = false;
+            modifications += removed ? 1 : 0;
+            return removed;
+        }
+        int slot = find(msb, lsb);
+        if (slot < 0) {
+            return false;
+        }
+        // Shift back the following entries of the run that may no longer be reachable past the freed slot
+        int gap = slot;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            long nextMsb = table[2 * next];
+            long nextLsb = table[2 * next + 1];
+            if (nextMsb == 0 && nextLsb == 0) {
+                break;
+            }
+            int home = home(nextMsb, nextLsb);
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                table[2 * gap] = nextMsb;
+                table[2 * gap + 1] = nextLsb;
+                gap = next;
+            }
+        }
+        table[2 * gap] = 0;
+        table[2 * gap + 1] = 0;
+        size--;
+        modifications++;
+        return true;
+    }
+
+    /**
+     * Checks whether an entity is a special mob.
+     *
+     * @param entityUUID the UUID of the entity
+     * @return true if the entity is marked
+     */
+    public synchronized boolean contains(UUID entityUUID) {
+        long msb = entityUUID.getMostSignificantBits();
+        long lsb = entityUUID.getLeastSignificantBits();
+        return msb == 0 && lsb == 0 ? containsNil : find(msb, lsb) >= 0;
+    }
+
+    /**
+     * @return the number of special mobs
+     */
+    public synchronized int size() {
+        return size + (containsNil ? 1 : 0);
+    }
+
+    /**
+     * Replaces the content of the registry with the last checkpoint, if there is one.
+     * A checkpoint that is corrupt or from another version is ignored, leaving the registry empty.
+     *
+     * @throws IOException if the checkpoint file can't be read
+     */
+    public void load() throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        CRC32 crc = new CRC32();
+        long[] entries;
+        boolean nil = false;
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(new FileInputStream(file)), crc))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                msg.log("&cIgnoring the special mobs checkpoint " + file.getName() + ", it's not a checkpoint of this version.");
+                return;
+            }
+            int count = in.readInt();
+            entries = new long[2 * count];
+            for (int i = 0; i < entries.length; i++) {
+                entries[i] = in.readLong();
+            }
+            long expected = crc.getValue();
+            if (in.readLong() != expected) {
+                msg.log("&cIgnoring the special mobs checkpoint " + file.getName() + ", it's corrupt.");
+                return;
+            }
+        }
+        synchronized (this) {
+            int capacity = MIN_CAPACITY;
+            while (capacity < entries.length) {
+                capacity <<= 1;
+            }
+            table = new long[2 * capacity];
+            mask = capacity - 1;
+            size = 0;
+            containsNil = false;
+            for (int i = 0; i < entries.length; i += 2) {
+                if (entries[i] == 0 && entries[i + 1] == 0) {
+                    nil = true;
+                } else {
+                    insert(entries[i], entries[i + 1]);
+                }
+            }
+            containsNil = nil;
+            checkpointedModifications = modifications;
+        }
+    }
+
+    /**
+     * Writes the registry to its checkpoint file, unless it didn't change since the last checkpoint.
+     * The entries are copied under the lock, the file is written without holding it. Can be called from any thread.
+     *
+     * @throws IOException if the checkpoint file can't be written
+     */
+    public void checkpoint() throws IOException {
+        synchronized (checkpointLock) {
+            long[] entries;
+            long snapshot;
+            synchronized (this) {
+                if (modifications == checkpointedModifications) {
+                    return;
+                }
+                snapshot = modifications;
+                entries = new long[2 * size()];
+                int count = 0;
+                for (int slot = 0; slot <= mask; slot++) {
+                    if (table[2 * slot] != 0 || table[2 * slot + 1] != 0) {
+                        entries[count++] = table[2 * slot];
+                        entries[count++] = table[2 * slot + 1];
+                    }
+                }
+                // The remaining pair is the nil UUID, left as zeros
+            }
+
+            File temporary = new File(file.getPath() + ".tmp");
+            CRC32 crc = new CRC32();
+            try (FileOutputStream fileOut = new FileOutputStream(temporary)) {
+                DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(fileOut), crc));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(entries.length / 2);
+                for (long value : entries) {
+                    out.writeLong(value);
+                }
+                out.flush();
+                new DataOutputStream(fileOut).writeLong(crc.getValue());
+                fileOut.getChannel().force(true);
+            }
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            synchronized (this) {
+                checkpointedModifications = snapshot;
+            }
+        }
+    }
+
+    private int find(long msb, long lsb) {
+        int slot = home(msb, lsb);
+        while (true) {
+            long slotMsb = table[2 * slot];
+            long slotLsb = table[2 * slot + 1];
+            if (slotMsb == msb && slotLsb == lsb) {
+                return slot;
+            }
+            if (slotMsb == 0 && slotLsb == 0) {
+                return -1;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private boolean insert(long msb, long lsb) {
+        int slot = home(msb, lsb);
+        while (true) {
+            long slotMsb = table[2 * slot];
+            long slotLsb = table[2 * slot + 1];
+            if (slotMsb == msb && slotLsb == lsb) {
+                return false;
+            }
+            if (slotMsb == 0 && slotLsb == 0) {
+                table[2 * slot] = msb;
+                table[2 * slot + 1] = lsb;
+                size++;
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void resize(int capacity) {
+        long[] old = table;
+        table = new long[2 * capacity];
+        mask = capacity - 1;
+        size = 0;
+        for (int i = 0; i < old.length; i += 2) {
+            if (old[i] != 0 || old[i + 1] != 0) {
+                insert(old[i], old[i + 1]);
+            }
+        }
+    }
+
+    private int home(long msb, long lsb) {
+        // Entity UUIDs are random, mixing both halves is enough to spread them
+        long hash = msb * 0x9E3779B97F4A7C15L ^ lsb;
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        return (int) hash & mask;
+    }
+}
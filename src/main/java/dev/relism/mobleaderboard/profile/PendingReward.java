@@ -0,0 +1,68 @@
+package dev.relism.mobleaderboard.profile;
+
+import org.bson.Document;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * A reward waiting in a player's queue until it can be handed out.
+ * Rewards are identified by an ID chosen when they are granted, so granting the same reward twice queues it once.
+ */
+public final class PendingReward {
+
+    private final String id;
+    private final String material;
+    private final int amount;
+
+    /**
+     * Constructs a new PendingReward.
+     *
+     * @param id       The ID of the reward, unique among the rewards of the player.
+     * @param material The name of the material of the reward.
+     * @param amount   The number of items.
+     */
+    public PendingReward(String id, String material, int amount) {
+        this.id = id;
+        this.material = material;
+        this.amount = amount;
+    }
+
+    public String getId() { return id; }
+
+    public String getMaterial() { return material; }
+
+    public int getAmount() { return amount; }
+
+    /**
+     * Creates the items of the reward.
+     *
+     * @return the items, or null if the material doesn't exist on this server
+     */
+    public ItemStack toItemStack() {
+        Material type = Material.getMaterial(material);
+        return type == null ? null : new ItemStack(type, amount);
+    }
+
+    /**
+     * @return the stored form of the reward, an element of the {@link RewardQueue#FIELD} array
+     */
+    public Document toDocument() {
+        return new Document("id", id).append("material", material).append("amount", amount);
+    }
+
+    /**
+     * Reads a reward from its stored form.
+     *
+     * @param document an element of the {@link RewardQueue#FIELD} array
+     * @return the reward, or null if the document isn't a valid reward
+     */
+    public static PendingReward fromDocument(Document document) {
+        String id = document.getString("id");
+        String material = document.getString("material");
+        Object amount = document.get("amount");
+        if (id == null || material == null) {
+            return null;
+        }
+        return new PendingReward(id, material, amount instanceof Number ? ((Number) amount).intValue() : 1);
+    }
+}
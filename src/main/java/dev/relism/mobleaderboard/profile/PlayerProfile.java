@@ -0,0 +1,148 @@
+package dev.relism.mobleaderboard.profile;
+
+import dev.relism.mobleaderboard.leaderboard.LeaderboardWindow;
+import dev.relism.mobleaderboard.storage.Storage;
+import org.bukkit.entity.EntityType;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * The resident data of a player for the length of their session, loaded once on join by the {@link PlayerProfileCache}.
+ * Kills are counted in memory and written back by the cache, other changes are written through right away.
+ * The kills per mob type are held in flat arrays indexed by the ordinal of the {@link EntityType}.
+ */
+public final class PlayerProfile {
+    final UUID playerUUID;
+    final Storage storage;
+    final AtomicInteger kills = new AtomicInteger();
+    final AtomicInteger pendingKills = new AtomicInteger();
+    final AtomicIntegerArray mobKills = new AtomicIntegerArray(EntityType.values().length);
+    final AtomicIntegerArray pendingMobKills = new AtomicIntegerArray(EntityType.values().length);
+    final WindowCounter[] windowCounters = new WindowCounter[LeaderboardWindow.values().length];
+    final AtomicBoolean loading = new AtomicBoolean();
+    final CompletableFuture<PlayerProfile> loadFuture = new CompletableFuture<>();
+    private final List<PendingReward> pendingRewards = new ArrayList<>();
+    volatile String playerName;
+    volatile boolean loaded;
+    volatile boolean online;
+    /** Counts the season resets of the player's kills, guarded by the profile, so failed flushes from before one aren't put back. */
+    int resetGeneration;
+    /** Whether the counters were seeded from the leaderboards since the stored data couldn't be read, and with what, guarded by the profile. */
+    boolean seeded;
+    int seededKills;
+    final long[] seededEpochs = new long[LeaderboardWindow.values().length];
+    final int[] seededWindowKills = new int[LeaderboardWindow.values().length];
+    /** The sequence number of the player's last journaled kill, guarded by the journal. */
+    long lastJournaled;
+    /** The flush of the kills running for the player, guarded by the profile, so the flushes of a player never overlap. */
+    CompletableFuture<Void> flushing;
+
+    PlayerProfile(UUID playerUUID, Storage storage) {
+        this.playerUUID = playerUUID;
+        this.storage = storage;
+        for (LeaderboardWindow window : LeaderboardWindow.values()) {
+            windowCounters[window.ordinal()] = new WindowCounter(window);
+        }
+    }
+
+    /**
+     * @return the UUID of the player owning this profile
+     */
+    public UUID getPlayerUUID() {
+        return playerUUID;
+    }
+
+    /**
+     * @return the last known name of the player
+     */
+    public String getPlayerName() {
+        return playerName;
+    }
+
+    /**
+     * @return the current kill count, including kills that haven't been flushed yet
+     */
+    public int getKills() {
+        return kills.get();
+    }
+
+    /**
+     * @param type the mob type
+     * @return the kill count on that mob type, including kills that haven't been flushed yet
+     */
+    public int getKills(EntityType type) {
+        return mobKills.get(type.ordinal());
+    }
+
+    /**
+     * @param window the time window
+     * @param epoch  the current epoch of the window
+     * @return the kill count in the current epoch of the window, including kills that haven't been flushed yet
+     */
+    public int getKills(LeaderboardWindow window, long epoch) {
+        return windowCounters[window.ordinal()].getKills(epoch);
+    }
+
+    /**
+     * @return the rewards waiting for the player, oldest first, see {@link RewardQueue}
+     */
+    public synchronized List<PendingReward> getPendingRewards() {
+        return new ArrayList<>(pendingRewards);
+    }
+
+    /**
+     * Adds rewards to the resident queue, skipping the ones that are already queued.
+     *
+     * @param rewards the rewards to add
+     */
+    synchronized void addPendingRewards(Collection<PendingReward> rewards) {
+        Set<String> ids = new HashSet<>();
+        for (PendingReward reward : pendingRewards) {
+            ids.add(reward.getId());
+        }
+        for (PendingReward reward : rewards) {
+            if (ids.add(reward.getId())) {
+                pendingRewards.add(reward);
+            }
+        }
+    }
+
+    /**
+     * Removes rewards from the resident queue.
+     *
+     * @param ids the IDs of the rewards to remove
+     */
+    synchronized void removePendingRewards(Collection<String> ids) {
+        pendingRewards.removeIf(reward -> ids.contains(reward.getId()));
+    }
+
+    /**
+     * @return true once the stored data of the player has been loaded
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * @return a CompletableFuture that completes with this profile once its stored data has been loaded
+     */
+    public CompletableFuture<PlayerProfile> whenLoaded() {
+        return loadFuture;
+    }
+
+    /**
+     * @return the storage of the player's data, shared by everything working on this player during the session
+     */
+    public Storage getStorage() {
+        return storage;
+    }
+}
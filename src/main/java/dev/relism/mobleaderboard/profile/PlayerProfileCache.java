@@ -0,0 +1,727 @@
+package dev.relism.mobleaderboard.profile;
+
+import dev.relism.mobleaderboard.Mobleaderboard;
+import dev.relism.mobleaderboard.leaderboard.LeaderboardEntry;
+import dev.relism.mobleaderboard.leaderboard.LeaderboardIndex;
+import dev.relism.mobleaderboard.leaderboard.LeaderboardWindow;
+import dev.relism.mobleaderboard.leaderboard.MobLeaderboards;
+import dev.relism.mobleaderboard.leaderboard.WindowedLeaderboards;
+import dev.relism.mobleaderboard.storage.BatchStorage;
+import dev.relism.mobleaderboard.storage.BucketIncrement;
+import dev.relism.mobleaderboard.storage.KillJournal;
+import dev.relism.mobleaderboard.storage.Storage;
+import dev.relism.mobleaderboard.utils.msg;
+import org.bson.Document;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.EntityType;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Resident per-player session profiles with write-behind kill counters.
+ * A profile is loaded when a player joins with a single projected query, which also creates the player data
+ * if it doesn't exist yet, and is shared by every listener and command for the rest of the session.
+ * Kills are incremented in memory on every special kill, while the accumulated deltas are written back
+ * to the database periodically and when the player quits, after which the profile is evicted.
+ * Kills are also counted per {@link LeaderboardWindow}, in the bucket of the current epoch.
+ * Kills are also counted per mob type, and sent in the same update as the season total.
+ * Every kill change is mirrored into the {@link LeaderboardIndex}, the {@link WindowedLeaderboards}
+ * and the {@link MobLeaderboards}.
+ * If a {@link KillJournal} is given, every kill is journaled before it's counted, and the journal is truncated
+ * after each periodic flush that left nothing unwritten, so buffered kills survive a crash.
+ * Every flush also raises the journal watermark of the player to the last kill it covers, so a replay skips the kills
+ * that were stored before the journal could be truncated. The flushes of a player run one at a time for this,
+ * a watermark must never cover the kills of an earlier flush that failed and is still to be retried.
+ */
+public class PlayerProfileCache {
+
+    private static final String[] PROJECTED_FIELDS = projectedFields();
+    private static final EntityType[] MOB_TYPES = EntityType.values();
+
+    private final Function<UUID, Storage> storageProvider;
+    private final LeaderboardIndex leaderboardIndex;
+    private final WindowedLeaderboards windowedLeaderboards;
+    private final MobLeaderboards mobLeaderboards;
+    private final KillJournal journal;
+    private final Map<UUID, PlayerProfile> profiles = new ConcurrentHashMap<>();
+    private final Set<CompletableFuture<Void>> flushesInFlight = ConcurrentHashMap.newKeySet();
+    private final AtomicLong failedWrites = new AtomicLong();
+    private int flushPauses;
+    private BukkitTask flushTask;
+
+    /**
+     * Constructs a new PlayerProfileCache.
+     *
+     * @param storageProvider  Provides the storage of a player's data, usually {@link Mobleaderboard#getPlayerStorage(UUID)}.
+     * @param leaderboardIndex     The leaderboard index kept in sync with the kill counters.
+     * @param windowedLeaderboards The leaderboards of the time windows kept in sync with the kill counters.
+     * @param mobLeaderboards      The leaderboards of the mob types kept in sync with the kill counters.
+     * @param journal              The journal of the kills, or null to only keep buffered kills in memory.
+     */
+    public PlayerProfileCache(Function<UUID, Storage> storageProvider, LeaderboardIndex leaderboardIndex,
+                              WindowedLeaderboards windowedLeaderboards, MobLeaderboards mobLeaderboards, KillJournal journal) {
+        this.storageProvider = storageProvider;
+        this.leaderboardIndex = leaderboardIndex;
+        this.windowedLeaderboards = windowedLeaderboards;
+        this.mobLeaderboards = mobLeaderboards;
+        this.journal = journal;
+    }
+
+    private static String[] projectedFields() {
+        List<String> fields = new ArrayList<>();
+        fields.add("kills");
+        fields.add(RewardQueue.FIELD);
+        fields.add(RewardQueue.LEGACY_FIELD);
+        fields.add(MobLeaderboards.FIELD);
+        for (LeaderboardWindow window : LeaderboardWindow.values()) {
+            fields.add(window.getField());
+        }
+        return fields.toArray(new String[0]);
+    }
+
+    /**
+     * Starts the periodic flush of dirty kill counters.
+     *
+     * @param plugin        the plugin owning the flush task
+     * @param intervalTicks the number of ticks between two flushes
+     */
+    public void start(Plugin plugin, long intervalTicks) {
+        flushTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::flushAll, intervalTicks, intervalTicks);
+    }
+
+    /**
+     * Stops the periodic flush. Pending deltas are kept until {@link #flushAll()} is called.
+     */
+    public void stop() {
+        if (flushTask != null) {
+            flushTask.cancel();
+            flushTask = null;
+        }
+    }
+
+    /**
+     * Writes the kills journaled by the previous run to the database, then removes them from the journal.
+     * The kills at or below the journal watermark stored with a player's data were flushed already and are skipped,
+     * the watermarks of all the journaled players are read together first.
+     * Must be called before any profile is loaded, so that the loaded kills include them.
+     * Kills that can't be written are kept in the journal, to be replayed again on the next start.
+     * This blocks until every write is done.
+     *
+     * @param batchStorage the storage reading the data of many players
+     * @return the number of kills written
+     */
+    public int replayJournal(BatchStorage batchStorage) {
+        if (journal == null) {
+            return 0;
+        }
+        Map<UUID, List<KillJournal.Kill>> journaled = new LinkedHashMap<>();
+        journal.replay(new KillJournal.Visitor() {
+            @Override
+            public void onKill(KillJournal.Kill kill) {
+                journaled.computeIfAbsent(kill.getPlayerUUID(), uuid -> new ArrayList<>()).add(kill);
+            }
+
+            @Override
+            public void onReset(Set<UUID> keep) {
+                // The stored kills were reset after these, only the kept players still need theirs
+                journaled.keySet().retainAll(keep);
+            }
+        });
+
+        if (journaled.isEmpty()) {
+            journal.discardRecovered();
+            return 0;
+        }
+        Map<UUID, Document> stored;
+        try {
+            stored = batchStorage.getFieldValues(journaled.keySet(), "playerdata", KillJournal.WATERMARK_FIELD).join();
+        } catch (CompletionException e) {
+            // Without the watermarks the kills can't be told apart from the stored ones, the whole journal is kept for next time
+            msg.log("&cCould not read the journal watermarks, the journaled kills are replayed on the next start: " + e.getMessage());
+            return 0;
+        }
+
+        List<KillJournal.Kill> failed = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger written = new AtomicInteger();
+        List<CompletableFuture<Void>> writes = new ArrayList<>(journaled.size());
+        for (Map.Entry<UUID, List<KillJournal.Kill>> playerKills : journaled.entrySet()) {
+            Document playerData = stored.get(playerKills.getKey());
+            long watermark = journal.watermarkOf(playerData == null ? null : playerData.get(KillJournal.WATERMARK_FIELD));
+            List<KillJournal.Kill> unstored = new ArrayList<>(playerKills.getValue().size());
+            for (KillJournal.Kill kill : playerKills.getValue()) {
+                // Kills of a version 1 segment have no sequence number, they can't be told apart and are always written
+                if (kill.getSequence() == 0 || kill.getSequence() > watermark) {
+                    unstored.add(kill);
+                }
+            }
+            if (unstored.isEmpty()) {
+                continue;
+            }
+            writes.add(writeJournaledKills(storageProvider.apply(playerKills.getKey()), unstored).thenRun(() -> written.addAndGet(unstored.size())).exceptionally(ex -> {
+                msg.log("&cCould not replay the journaled kills of " + playerKills.getKey() + ": " + ex.getMessage());
+                failed.addAll(unstored);
+                return null;
+            }));
+        }
+        CompletableFuture.allOf(writes.toArray(new CompletableFuture[0])).join();
+
+        if (failed.isEmpty()) {
+            journal.discardRecovered();
+            return written.get();
+        }
+        try {
+            journal.carryOver(failed);
+        } catch (IOException e) {
+            // The whole journal is replayed again next time, the kills written now will count twice
+            msg.log("&cCould not carry the unreplayed kills over: " + e.getMessage());
+        }
+        return written.get();
+    }
+
+    /**
+     * Adds journaled kills of a player to their stored data, in a single update which also raises their watermark.
+     * Only the latest epoch of every window is kept, an older bucket would be replaced by it anyway.
+     */
+    private CompletableFuture<Void> writeJournaledKills(Storage storage, List<KillJournal.Kill> kills) {
+        Map<String, Integer> increments = new LinkedHashMap<>();
+        increments.put("kills", kills.size());
+        long watermark = 0;
+        LeaderboardWindow[] windows = LeaderboardWindow.values();
+        long[] epochs = new long[windows.length];
+        int[] windowKills = new int[windows.length];
+        Arrays.fill(epochs, Long.MIN_VALUE);
+        for (KillJournal.Kill kill : kills) {
+            watermark = Math.max(watermark, kill.getSequence());
+            EntityType type = MobLeaderboards.typeOf(kill.getType());
+            if (type != null) {
+                increments.merge(MobLeaderboards.FIELD + "." + type.name(), 1, Integer::sum);
+            }
+            for (LeaderboardWindow window : windows) {
+                long epoch = windowedLeaderboards.epochAt(window, kill.getTime());
+                if (epoch > epochs[window.ordinal()]) {
+                    epochs[window.ordinal()] = epoch;
+                    windowKills[window.ordinal()] = 0;
+                }
+                if (epoch == epochs[window.ordinal()]) {
+                    windowKills[window.ordinal()]++;
+                }
+            }
+        }
+        List<BucketIncrement> bucketIncrements = new ArrayList<>(windows.length);
+        for (LeaderboardWindow window : windows) {
+            bucketIncrements.add(new BucketIncrement(window.getField(), epochs[window.ordinal()], windowKills[window.ordinal()]));
+        }
+        return storage.incrementFieldValues("playerdata", increments, watermarks(watermark), bucketIncrements);
+    }
+
+    /**
+     * Loads the profile of a player into memory, if it isn't resident already.
+     * The player data is read in one projected query, or created if it doesn't exist.
+     * Kills registered before the stored data arrives are kept and added on top of it.
+     *
+     * @param playerUUID the UUID of the player
+     * @param playerName the name of the player
+     * @return the resident profile of the player, see {@link PlayerProfile#whenLoaded()}
+     */
+    public PlayerProfile load(UUID playerUUID, String playerName) {
+        PlayerProfile profile = resident(playerUUID, playerName);
+        if (profile.loading.compareAndSet(false, true)) {
+            fetch(profile);
+        }
+        return profile;
+    }
+
+    /**
+     * Loads the profiles of many players into memory at once, such as the players still online after a reload.
+     * The stored data of all of them is read with batched projected queries. The players without stored data,
+     * the renamed ones, or all of them if a batch failed, are then loaded one by one like {@link #load(UUID, String)},
+     * which creates or updates their data.
+     *
+     * @param batchStorage the storage reading the data of many players
+     * @param players      the names of the players, by UUID
+     * @return a CompletableFuture that completes once every batched read is done, the single loads may still be running
+     */
+    public CompletableFuture<Void> loadAll(BatchStorage batchStorage, Map<UUID, String> players) {
+        Map<UUID, PlayerProfile> pending = new ConcurrentHashMap<>();
+        for (Map.Entry<UUID, String> player : players.entrySet()) {
+            PlayerProfile profile = resident(player.getKey(), player.getValue());
+            if (profile.loading.compareAndSet(false, true)) {
+                pending.put(player.getKey(), profile);
+            }
+        }
+        if (pending.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        String[] fields = Arrays.copyOf(PROJECTED_FIELDS, PROJECTED_FIELDS.length + 1);
+        fields[PROJECTED_FIELDS.length] = "name";
+        return batchStorage.getFieldValues(new ArrayList<>(pending.keySet()), "playerdata", fields).handle((stored, ex) -> {
+            if (ex != null) {
+                msg.log("&cCould not load the data of " + pending.size() + " players at once: " + ex.getMessage());
+            } else {
+                for (Map.Entry<UUID, Document> playerData : stored.entrySet()) {
+                    PlayerProfile profile = pending.get(playerData.getKey());
+                    if (profile != null && profile.playerName.equals(playerData.getValue().getString("name"))) {
+                        pending.remove(playerData.getKey());
+                        apply(profile, playerData.getValue());
+                    }
+                }
+            }
+            for (PlayerProfile profile : pending.values()) {
+                fetch(profile);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Retrieves the resident profile of an online player, creating it if needed.
+     *
+     * @param playerUUID the UUID of the player
+     * @param playerName the name of the player
+     * @return the resident profile of the player
+     */
+    private PlayerProfile resident(UUID playerUUID, String playerName) {
+        PlayerProfile profile = profiles.computeIfAbsent(playerUUID, uuid -> new PlayerProfile(uuid, storageProvider.apply(uuid)));
+        profile.playerName = playerName;
+        profile.online = true;
+        return profile;
+    }
+
+    /**
+     * Reads the stored data of a profile, creating it if it doesn't exist, and applies it.
+     * If it can't be read, the counters are seeded from the leaderboards meanwhile, but the profile isn't marked loaded:
+     * its kills aren't flushed, since the player data may not even exist yet, and the load is retried by the next
+     * {@link #flushAll()}.
+     *
+     * @param profile the profile, whose loading flag is set
+     */
+    private void fetch(PlayerProfile profile) {
+        Document defaults = new Document("uuid", profile.playerUUID.toString())
+                .append("kills", 0);
+        profile.storage.loadOrInsertDocument("playerdata", new Document("name", profile.playerName), defaults, PROJECTED_FIELDS)
+                .whenComplete((playerData, ex) -> {
+                    if (ex != null) {
+                        msg.log("&cCould not load the data of " + profile.playerName + ", using the leaderboards until it's retried: " + ex.getMessage());
+                        seedFromLeaderboards(profile);
+                        profile.loading.set(false);
+                    } else {
+                        apply(profile, playerData);
+                    }
+                });
+    }
+
+    /**
+     * Adds the stored data of a player to their profile, mirrors it into the leaderboards and marks the profile loaded.
+     *
+     * @param profile    the profile
+     * @param playerData the stored data, restricted to the projected fields, or null if there is none
+     */
+    private void apply(PlayerProfile profile, Document playerData) {
+        UUID playerUUID = profile.playerUUID;
+        unseed(profile);
+        if (playerData != null) {
+            Object kills = playerData.get("kills");
+            if (kills instanceof Number) {
+                profile.kills.addAndGet(((Number) kills).intValue());
+            }
+            for (WindowCounter counter : profile.windowCounters) {
+                Document bucket = playerData.get(counter.getWindow().getField(), Document.class);
+                if (bucket != null && bucket.get("epoch") instanceof Number && bucket.get("kills") instanceof Number) {
+                    long epoch = windowedLeaderboards.currentEpoch(counter.getWindow());
+                    int windowKills = counter.load(((Number) bucket.get("epoch")).longValue(), ((Number) bucket.get("kills")).intValue(), epoch);
+                    windowedLeaderboards.update(counter.getWindow(), epoch, playerUUID, profile.playerName, windowKills);
+                }
+            }
+            Document mobKills = playerData.get(MobLeaderboards.FIELD, Document.class);
+            if (mobKills != null) {
+                for (Map.Entry<String, Object> typeKills : mobKills.entrySet()) {
+                    EntityType type = MobLeaderboards.typeOf(typeKills.getKey());
+                    if (type != null && typeKills.getValue() instanceof Number) {
+                        int count = profile.mobKills.addAndGet(type.ordinal(), ((Number) typeKills.getValue()).intValue());
+                        mobLeaderboards.update(type, playerUUID, profile.playerName, count);
+                    }
+                }
+            }
+            // Rewards granted while loading may be part of the read queue too, they are only kept once
+            profile.addPendingRewards(RewardQueue.read(playerData));
+        }
+        profile.loaded = true;
+        leaderboardIndex.update(playerUUID, profile.playerName, profile.kills.get());
+        profile.loadFuture.complete(profile);
+    }
+
+    /**
+     * Seeds a profile whose player data can't be read with the kills the leaderboards hold for the player,
+     * so the player keeps their rank while the database is unavailable. Only the counters are derived from this,
+     * and only once, the seed is taken back out by {@link #unseed(PlayerProfile)} when the stored data is read.
+     *
+     * @param profile the profile
+     */
+    private void seedFromLeaderboards(PlayerProfile profile) {
+        LeaderboardEntry entry = leaderboardIndex.get(profile.playerUUID);
+        synchronized (profile) {
+            if (profile.seeded) {
+                return;
+            }
+            profile.seeded = true;
+            if (entry != null) {
+                profile.seededKills = entry.getKills();
+                profile.kills.addAndGet(entry.getKills());
+            }
+        }
+        for (WindowCounter counter : profile.windowCounters) {
+            LeaderboardEntry windowEntry = windowedLeaderboards.getIndex(counter.getWindow()).get(profile.playerUUID);
+            if (windowEntry != null) {
+                int ordinal = counter.getWindow().ordinal();
+                long epoch = windowedLeaderboards.currentEpoch(counter.getWindow());
+                profile.seededEpochs[ordinal] = epoch;
+                profile.seededWindowKills[ordinal] = windowEntry.getKills();
+                counter.load(epoch, windowEntry.getKills(), epoch);
+            }
+        }
+    }
+
+    /**
+     * Takes the seed of {@link #seedFromLeaderboards(PlayerProfile)} back out of the counters of a profile,
+     * leaving the kills counted since, before the stored data is added.
+     *
+     * @param profile the profile
+     */
+    private void unseed(PlayerProfile profile) {
+        synchronized (profile) {
+            if (!profile.seeded) {
+                return;
+            }
+            profile.seeded = false;
+            profile.kills.addAndGet(-profile.seededKills);
+            profile.seededKills = 0;
+        }
+        for (WindowCounter counter : profile.windowCounters) {
+            int ordinal = counter.getWindow().ordinal();
+            if (profile.seededWindowKills[ordinal] != 0) {
+                // A window that rolled over meanwhile dropped the seed already
+                counter.load(profile.seededEpochs[ordinal], -profile.seededWindowKills[ordinal], windowedLeaderboards.currentEpoch(counter.getWindow()));
+            }
+        }
+    }
+
+    /**
+     * Retrieves the resident profile of a player.
+     *
+     * @param playerUUID the UUID of the player
+     * @return the profile, or null if the player has no resident profile
+     */
+    public PlayerProfile get(UUID playerUUID) {
+        return profiles.get(playerUUID);
+    }
+
+    /**
+     * Registers a kill for a player. Apart from the journal append, this never performs any I/O,
+     * the change is persisted by the next flush. The counters themselves are primitive slots.
+     *
+     * @param playerUUID the UUID of the player
+     * @param playerName the name of the player
+     * @param type       the type of the killed mob
+     * @return the new kill count of the player
+     */
+    public int increment(UUID playerUUID, String playerName, EntityType type) {
+        PlayerProfile profile = profiles.get(playerUUID);
+        if (profile == null) {
+            profile = load(playerUUID, playerName);
+        }
+        if (journal == null) {
+            return count(profile, type);
+        }
+        // Rotations wait for the kill to reach the buffered deltas, so a segment is never sealed without them
+        synchronized (journal) {
+            profile.lastJournaled = journal.appendKill(playerUUID, type.name(), System.currentTimeMillis());
+            return count(profile, type);
+        }
+    }
+
+    private int count(PlayerProfile profile, EntityType type) {
+        profile.pendingKills.incrementAndGet();
+        profile.pendingMobKills.incrementAndGet(type.ordinal());
+        int kills = profile.kills.incrementAndGet();
+        leaderboardIndex.update(profile.playerUUID, profile.playerName, kills);
+        mobLeaderboards.update(type, profile.playerUUID, profile.playerName, profile.mobKills.incrementAndGet(type.ordinal()));
+        for (WindowCounter counter : profile.windowCounters) {
+            long epoch = windowedLeaderboards.currentEpoch(counter.getWindow());
+            windowedLeaderboards.update(counter.getWindow(), epoch, profile.playerUUID, profile.playerName, counter.increment(epoch));
+        }
+        return kills;
+    }
+
+    /**
+     * Retrieves the resident kill count of a player.
+     *
+     * @param playerUUID the UUID of the player
+     * @return the kill count, or -1 if the player has no resident profile
+     */
+    public int getKills(UUID playerUUID) {
+        PlayerProfile profile = profiles.get(playerUUID);
+        return profile == null ? -1 : profile.kills.get();
+    }
+
+    /**
+     * Writes the unflushed kills of a single player to the database.
+     * If the write fails, the delta is put back and retried on the next flush, unless the kills of the player
+     * were reset meanwhile.
+     *
+     * @param playerUUID the UUID of the player
+     * @return a CompletableFuture that completes when the delta has been written
+     */
+    public CompletableFuture<Void> flush(UUID playerUUID) {
+        PlayerProfile profile = profiles.get(playerUUID);
+        return profile == null ? CompletableFuture.completedFuture(null) : flush(profile);
+    }
+
+    /**
+     * Writes the unflushed kills of every resident player to the database,
+     * then evicts the profiles of players who are gone and have nothing left to write.
+     * The profiles whose stored data couldn't be read are loaded again first, their kills are written by a later flush.
+     * The journal segment holding the kills registered until now is sealed first, and deleted once every
+     * write succeeded, provided no profile was still loading and no other write failed or is still running,
+     * since their kills could then only be in memory.
+     *
+     * @return a CompletableFuture that completes when every delta has been written
+     */
+    public CompletableFuture<Void> flushAll() {
+        if (flushesPaused()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        long sealedSegment = journal == null ? -1 : journal.rotate();
+        long failuresBefore = failedWrites.get();
+        boolean complete = true;
+        List<CompletableFuture<Void>> flushes = new ArrayList<>();
+        for (PlayerProfile profile : profiles.values()) {
+            if (!profile.loaded && (profile.online || isDirty(profile)) && profile.loading.compareAndSet(false, true)) {
+                fetch(profile);
+            }
+            if (isDirty(profile)) {
+                complete &= profile.loaded;
+                flushes.add(flush(profile));
+            } else if (!profile.online) {
+                profiles.remove(profile.playerUUID, profile);
+            }
+        }
+        CompletableFuture<Void> flushed = CompletableFuture.allOf(flushes.toArray(new CompletableFuture[0]));
+        if (journal == null || !complete) {
+            return flushed;
+        }
+        return flushed.thenRun(() -> {
+            if (flushesInFlight.isEmpty() && failedWrites.get() == failuresBefore) {
+                journal.truncate(sealedSegment);
+            }
+        });
+    }
+
+    /**
+     * Flushes the profile of a player who left the server and evicts it once it's clean.
+     *
+     * @param playerUUID the UUID of the player
+     */
+    public void unload(UUID playerUUID) {
+        PlayerProfile profile = profiles.get(playerUUID);
+        if (profile == null) {
+            return;
+        }
+        profile.online = false;
+        flush(profile).thenRun(() -> {
+            if (!profile.online && !isDirty(profile)) {
+                profiles.remove(playerUUID, profile);
+            }
+        });
+    }
+
+    /**
+     * Sets the resident kill counters of all players to 0, discarding their unflushed deltas.
+     * Must be called when the stored kills are reset, so that stale values aren't written back.
+     */
+    public void resetAll() {
+        resetAllExcept(Collections.<UUID>emptySet());
+    }
+
+    /**
+     * Sets the resident kill counters of all players except the given ones to 0, discarding their unflushed deltas.
+     *
+     * @param keep the UUIDs of the players whose counters must be preserved
+     */
+    public void resetAllExcept(Set<UUID> keep) {
+        for (PlayerProfile profile : profiles.values()) {
+            if (!keep.contains(profile.playerUUID)) {
+                synchronized (profile) {
+                    profile.resetGeneration++;
+                    profile.pendingKills.set(0);
+                    profile.kills.set(0);
+                    profile.seededKills = 0;
+                    for (int ordinal = 0; ordinal < MOB_TYPES.length; ordinal++) {
+                        profile.pendingMobKills.set(ordinal, 0);
+                        profile.mobKills.set(ordinal, 0);
+                    }
+                }
+            }
+        }
+        if (journal != null) {
+            journal.appendReset(keep);
+        }
+        leaderboardIndex.resetAllExcept(keep);
+        mobLeaderboards.retainAll(keep);
+    }
+
+    /**
+     * Holds back every flush until {@link #resumeFlushes()}, so that a bulk change of the stored kills, such as a season
+     * reset, is neither overtaken by kills flushed before it nor overwrites kills flushed after it.
+     * The deltas keep accumulating in memory and in the journal meanwhile.
+     *
+     * @return a CompletableFuture that completes once the flushes already running are done
+     */
+    public CompletableFuture<Void> pauseFlushes() {
+        synchronized (flushesInFlight) {
+            flushPauses++;
+            return CompletableFuture.allOf(flushesInFlight.toArray(new CompletableFuture[0])).handle((v, ex) -> null);
+        }
+    }
+
+    /**
+     * Lets the flushes held back by {@link #pauseFlushes()} run again, on the next periodic flush.
+     */
+    public void resumeFlushes() {
+        synchronized (flushesInFlight) {
+            flushPauses--;
+        }
+    }
+
+    private boolean flushesPaused() {
+        synchronized (flushesInFlight) {
+            return flushPauses > 0;
+        }
+    }
+
+    private CompletableFuture<Void> flush(PlayerProfile profile) {
+        if (!profile.loaded) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        synchronized (flushesInFlight) {
+            if (flushPauses > 0) {
+                return CompletableFuture.completedFuture(null);
+            }
+            flushesInFlight.add(done);
+        }
+        int delta;
+        int generation;
+        long watermark;
+        CompletableFuture<Void> previous;
+        int[] mobDeltas = new int[MOB_TYPES.length];
+        List<BucketIncrement> bucketIncrements = new ArrayList<>();
+        // The journal lock keeps kills from being counted between the watermark and the deltas, window buckets included
+        synchronized (journal == null ? profile : journal) {
+            synchronized (profile) {
+                previous = profile.flushing;
+                if (previous != null && !previous.isDone()) {
+                    flushesInFlight.remove(done);
+                    // Runs once the previous flush put back whatever it failed to write
+                    return previous.handle((v, ex) -> null).thenCompose(v -> flush(profile));
+                }
+                profile.flushing = done;
+                watermark = profile.lastJournaled;
+                generation = profile.resetGeneration;
+                delta = profile.pendingKills.getAndSet(0);
+                for (int ordinal = 0; ordinal < MOB_TYPES.length; ordinal++) {
+                    mobDeltas[ordinal] = profile.pendingMobKills.getAndSet(ordinal, 0);
+                }
+                for (WindowCounter counter : profile.windowCounters) {
+                    counter.drain(bucketIncrements);
+                }
+            }
+        }
+        Map<String, Integer> increments = new LinkedHashMap<>();
+        if (delta != 0) {
+            increments.put("kills", delta);
+        }
+        for (int ordinal = 0; ordinal < MOB_TYPES.length; ordinal++) {
+            if (mobDeltas[ordinal] != 0) {
+                increments.put(MobLeaderboards.FIELD + "." + MOB_TYPES[ordinal].name(), mobDeltas[ordinal]);
+            }
+        }
+        if (increments.isEmpty() && bucketIncrements.isEmpty()) {
+            flushesInFlight.remove(done);
+            done.complete(null);
+            return done;
+        }
+        // The season total, the per-type kills and every window bucket are written together, in a single update
+        profile.storage
+                .incrementFieldValues("playerdata", increments, watermarks(watermark), bucketIncrements)
+                .whenComplete((v, ex) -> {
+                    if (ex != null) {
+                        failedWrites.incrementAndGet();
+                        synchronized (profile) {
+                            // Kills from before a season reset are dropped, the reset already discarded the stored ones
+                            if (profile.resetGeneration == generation) {
+                                profile.pendingKills.addAndGet(delta);
+                                for (int ordinal = 0; ordinal < mobDeltas.length; ordinal++) {
+                                    if (mobDeltas[ordinal] != 0) {
+                                        profile.pendingMobKills.addAndGet(ordinal, mobDeltas[ordinal]);
+                                    }
+                                }
+                            }
+                        }
+                        for (BucketIncrement increment : bucketIncrements) {
+                            profile.windowCounters[LeaderboardWindow.fromName(increment.getField()).ordinal()].restore(increment);
+                        }
+                        msg.debug("Kill flush for " + profile.playerUUID + " failed, retrying on next flush.");
+                    }
+                    flushesInFlight.remove(done);
+                    if (ex != null) {
+                        done.completeExceptionally(ex);
+                    } else {
+                        done.complete(null);
+                    }
+                });
+        return done;
+    }
+
+    /**
+     * @param watermark the sequence number of the last journaled kill covered by a write, 0 if there is none
+     * @return the fields raising the journal watermark of the player to it
+     */
+    private Map<String, Long> watermarks(long watermark) {
+        return journal == null || watermark == 0
+                ? Collections.<String, Long>emptyMap()
+                : Collections.singletonMap(journal.getWatermarkField(), watermark);
+    }
+
+    private static boolean isDirty(PlayerProfile profile) {
+        if (profile.pendingKills.get() != 0) {
+            return true;
+        }
+        for (int ordinal = 0; ordinal < MOB_TYPES.length; ordinal++) {
+            if (profile.pendingMobKills.get(ordinal) != 0) {
+                return true;
+            }
+        }
+        for (WindowCounter counter : profile.windowCounters) {
+            if (counter.isDirty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
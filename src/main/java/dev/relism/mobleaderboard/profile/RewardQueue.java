@@ -0,0 +1,155 @@
+package dev.relism.mobleaderboard.profile;
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.WriteModel;
+import dev.relism.mobleaderboard.Mobleaderboard;
+import dev.relism.mobleaderboard.storage.PlayerStorage;
+import dev.relism.mobleaderboard.storage.StorageBackend;
+import dev.relism.mobleaderboard.storage.StorageLayout;
+import dev.relism.mobleaderboard.utils.msg;
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The durable queues of the rewards waiting for players, stored in the "pendingRewards" array of their player data.
+ * Every reward has an ID and a queue never holds the same ID twice, so a grant that is retried is only queued once.
+ * Grants for many players are written together, in a single bulk write in the single collection layout,
+ * while the rewards of a player are read with the rest of their profile on join and acknowledged in a single write.
+ */
+public class RewardQueue {
+
+    /**
+     * The name of the array holding the queued rewards of a player.
+     */
+    public static final String FIELD = "pendingRewards";
+
+    /**
+     * The name of the field holding the single pending reward of older player data, read as one queued reward.
+     */
+    static final String LEGACY_FIELD = "pendingRewardMaterial";
+
+    private static final String LEGACY_ID_PREFIX = "legacy:";
+
+    private final Mobleaderboard plugin;
+
+    /**
+     * Constructs a new RewardQueue.
+     *
+     * @param plugin The main plugin instance.
+     */
+    public RewardQueue(Mobleaderboard plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Creates the ID of a new batch of grants. The rewards of the batch use it as a prefix of their own ID.
+     *
+     * @return a new, unique batch ID
+     */
+    public static String newBatchId() {
+        return UUID.randomUUID().toString();
+    }
+
+    /**
+     * Queues rewards for a set of players, whether they are online or not.
+     * The resident profiles see the rewards right away, the stored queues are updated in as few writes as the layout allows.
+     *
+     * @param rewards the rewards to queue, by player UUID
+     * @return a CompletableFuture that completes when every queue is written
+     */
+    public CompletableFuture<Void> grant(Map<UUID, List<PendingReward>> rewards) {
+        if (rewards.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        for (Map.Entry<UUID, List<PendingReward>> grant : rewards.entrySet()) {
+            PlayerProfile profile = plugin.getProfileCache().get(grant.getKey());
+            if (profile != null) {
+                profile.addPendingRewards(grant.getValue());
+            }
+        }
+
+        if (plugin.getStorageBackend() == StorageBackend.MONGO && plugin.getStorageLayout() == StorageLayout.SINGLE_COLLECTION) {
+            List<WriteModel<Document>> writes = new ArrayList<>(rewards.size());
+            for (Map.Entry<UUID, List<PendingReward>> grant : rewards.entrySet()) {
+                writes.addAll(PlayerStorage.pushUniqueWrites(Filters.eq("_id", grant.getKey().toString()), FIELD, "id", toDocuments(grant.getValue())));
+            }
+            return plugin.getMongoWrapperInstance().bulkWrite(StorageLayout.DATABASE_NAME, StorageLayout.PLAYERS_COLLECTION, writes)
+                    .thenAccept(result -> msg.debug("Queued rewards for " + result.getModifiedCount() + " players."));
+        }
+
+        // Every player has their own collection in the legacy layout, and local writes don't need batching
+        List<CompletableFuture<Void>> writes = new ArrayList<>(rewards.size());
+        for (Map.Entry<UUID, List<PendingReward>> grant : rewards.entrySet()) {
+            writes.add(plugin.getPlayerStorage(grant.getKey()).pushUnique("playerdata", FIELD, "id", toDocuments(grant.getValue())));
+        }
+        return CompletableFuture.allOf(writes.toArray(new CompletableFuture[0]));
+    }
+
+    /**
+     * Removes delivered rewards from the queue of a player, in a single write.
+     *
+     * @param profile   the resident profile of the player
+     * @param delivered the rewards handed out to the player
+     * @return a CompletableFuture that completes when the queue is written
+     */
+    public CompletableFuture<Void> acknowledge(PlayerProfile profile, List<PendingReward> delivered) {
+        if (delivered.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        List<String> ids = new ArrayList<>(delivered.size());
+        String legacyMaterial = null;
+        for (PendingReward reward : delivered) {
+            ids.add(reward.getId());
+            if (reward.getId().startsWith(LEGACY_ID_PREFIX)) {
+                legacyMaterial = reward.getMaterial();
+            }
+        }
+        profile.removePendingRewards(ids);
+        CompletableFuture<Void> acknowledged = profile.storage.pullByIds("playerdata", FIELD, "id", ids);
+        if (legacyMaterial != null) {
+            // Only happens once per player, the first time their old single reward is handed out.
+            // Only that reward is cleared, not one another server may have written in the meantime
+            acknowledged = CompletableFuture.allOf(acknowledged,
+                    profile.storage.compareAndSet("playerdata", LEGACY_FIELD, legacyMaterial, "").thenApply(set -> null));
+        }
+        return acknowledged;
+    }
+
+    /**
+     * Reads the queued rewards of a player, including the single pending reward of older player data.
+     *
+     * @param playerData the "playerdata" document of the player
+     * @return the queued rewards, oldest first
+     */
+    static List<PendingReward> read(Document playerData) {
+        List<PendingReward> rewards = new ArrayList<>();
+        String legacyMaterial = playerData.getString(LEGACY_FIELD);
+        if (legacyMaterial != null && !legacyMaterial.isEmpty()) {
+            rewards.add(new PendingReward(LEGACY_ID_PREFIX + legacyMaterial, legacyMaterial, 1));
+        }
+        Object queue = playerData.get(FIELD);
+        if (!(queue instanceof List)) {
+            return rewards;
+        }
+        for (Object element : (List<?>) queue) {
+            PendingReward reward = element instanceof Document ? PendingReward.fromDocument((Document) element) : null;
+            if (reward != null) {
+                rewards.add(reward);
+            }
+        }
+        return rewards;
+    }
+
+    private static List<Document> toDocuments(List<PendingReward> rewards) {
+        List<Document> documents = new ArrayList<>(rewards.size());
+        for (PendingReward reward : rewards) {
+            documents.add(reward.toDocument());
+        }
+        return documents;
+    }
+}
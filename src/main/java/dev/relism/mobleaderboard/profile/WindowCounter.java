@@ -0,0 +1,114 @@
+package dev.relism.mobleaderboard.profile;
+
+import dev.relism.mobleaderboard.leaderboard.LeaderboardWindow;
+import dev.relism.mobleaderboard.storage.BucketIncrement;
+
+import java.util.List;
+
+/**
+ * The resident kill counter of a player in the current epoch of a {@link LeaderboardWindow}.
+ * When a new epoch starts, the unflushed kills of the previous one are set aside,
+ * so that they are still written to the bucket of the epoch they were counted in.
+ */
+final class WindowCounter {
+    private final LeaderboardWindow window;
+    private long epoch = Long.MIN_VALUE;
+    private int kills;
+    private int pending;
+    private long previousEpoch;
+    private int previousPending;
+
+    WindowCounter(LeaderboardWindow window) {
+        this.window = window;
+    }
+
+    /**
+     * Registers a kill.
+     *
+     * @param currentEpoch the current epoch of the window
+     * @return the kills of the player in the current epoch
+     */
+    synchronized int increment(long currentEpoch) {
+        roll(currentEpoch);
+        pending++;
+        return ++kills;
+    }
+
+    /**
+     * Adds the stored kills of the player, if they belong to the current epoch.
+     *
+     * @param storedEpoch  the epoch of the stored bucket
+     * @param storedKills  the kills of the stored bucket
+     * @param currentEpoch the current epoch of the window
+     * @return the kills of the player in the current epoch
+     */
+    synchronized int load(long storedEpoch, int storedKills, long currentEpoch) {
+        roll(currentEpoch);
+        if (storedEpoch == currentEpoch) {
+            kills += storedKills;
+        }
+        return kills;
+    }
+
+    /**
+     * @param currentEpoch the current epoch of the window
+     * @return the kills of the player in the current epoch
+     */
+    synchronized int getKills(long currentEpoch) {
+        roll(currentEpoch);
+        return kills;
+    }
+
+    /**
+     * @return true if there are kills waiting to be written
+     */
+    synchronized boolean isDirty() {
+        return pending != 0 || previousPending != 0;
+    }
+
+    /**
+     * Takes the kills waiting to be written, oldest epoch first.
+     *
+     * @param increments the list receiving the bucket increments
+     */
+    synchronized void drain(List<BucketIncrement> increments) {
+        if (previousPending != 0) {
+            increments.add(new BucketIncrement(window.getField(), previousEpoch, previousPending));
+            previousPending = 0;
+        }
+        if (pending != 0) {
+            increments.add(new BucketIncrement(window.getField(), epoch, pending));
+            pending = 0;
+        }
+    }
+
+    /**
+     * Puts back drained kills whose write failed, unless their epoch is no longer tracked.
+     *
+     * @param increment the increment that couldn't be written
+     */
+    synchronized void restore(BucketIncrement increment) {
+        if (increment.getEpoch() == epoch) {
+            pending += increment.getDelta();
+        } else if (increment.getEpoch() == previousEpoch || previousPending == 0) {
+            previousEpoch = increment.getEpoch();
+            previousPending += increment.getDelta();
+        }
+    }
+
+    private void roll(long currentEpoch) {
+        if (currentEpoch != epoch) {
+            if (pending != 0) {
+                previousEpoch = epoch;
+                previousPending = pending;
+            }
+            epoch = currentEpoch;
+            kills = 0;
+            pending = 0;
+        }
+    }
+
+    LeaderboardWindow getWindow() {
+        return window;
+    }
+}
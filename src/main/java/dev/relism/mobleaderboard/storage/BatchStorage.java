@@ -0,0 +1,48 @@
+package dev.relism.mobleaderboard.storage;
+
+import org.bson.Document;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Asynchronous reads spanning the data of many players, where {@link Storage} is bound to a single one.
+ * The reads of the stored data of many players at once, the profiles of the players online after a reload and the
+ * journal watermarks of a replay, go through it. The top-10 and paged leaderboard views don't, they are served from the
+ * in-memory leaderboard indexes, and neither does the reward delivery, which reads the queue of a joining player
+ * with the rest of their profile, in the single query loading it.
+ */
+public interface BatchStorage {
+
+    /**
+     * Retrieves a set of fields from a document of many players, in as few projected queries as the backend allows.
+     *
+     * @param playerUUIDs  the UUIDs of the players
+     * @param documentType the identifier of the document
+     * @param fieldsToGet  the names of the fields to retrieve
+     * @return a CompletableFuture containing the documents by player UUID, restricted to the requested fields,
+     *         without the players who have no such document. Completes exceptionally if a query fails.
+     */
+    default CompletableFuture<Map<UUID, Document>> getFieldValues(Collection<UUID> playerUUIDs, String documentType, String... fieldsToGet) {
+        Map<UUID, Document> documents = new ConcurrentHashMap<>();
+        return streamFieldValues(playerUUIDs, documentType, documents::put, fieldsToGet).thenApply(count -> documents);
+    }
+
+    /**
+     * Retrieves a set of fields from a document of many players like {@link #getFieldValues(Collection, String, String...)},
+     * handing the documents to a consumer as they arrive, so they are never all held in memory at once.
+     * They may arrive on storage threads, several at once and in any order, and players without such a document are skipped.
+     *
+     * @param playerUUIDs  the UUIDs of the players
+     * @param documentType the identifier of the document
+     * @param onDocument   receives the UUID of a player and their document, restricted to the requested fields
+     * @param fieldsToGet  the names of the fields to retrieve
+     * @return a CompletableFuture containing the number of documents handed to the consumer.
+     *         Completes exceptionally if a query fails, the documents handed over until then stay valid.
+     */
+    CompletableFuture<Integer> streamFieldValues(Collection<UUID> playerUUIDs, String documentType, BiConsumer<UUID, Document> onDocument, String... fieldsToGet);
+}
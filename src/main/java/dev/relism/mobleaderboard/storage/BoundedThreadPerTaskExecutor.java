@@ -0,0 +1,94 @@
+package dev.relism.mobleaderboard.storage;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An executor starting a new thread for every task, meant for virtual threads, that caps the number of running tasks.
+ * Tasks submitted beyond the cap are handled by the {@link StorageExecutor.RejectionPolicy},
+ * like those submitted to a thread pool whose queue is full.
+ */
+class BoundedThreadPerTaskExecutor extends AbstractExecutorService {
+
+    private final ThreadFactory threadFactory;
+    private final int maxConcurrency;
+    private final Semaphore permits;
+    private final StorageExecutor.RejectionPolicy rejectionPolicy;
+    private volatile boolean shutdown;
+
+    /**
+     * Constructs a new BoundedThreadPerTaskExecutor.
+     *
+     * @param threadFactory    The factory of the thread running every task.
+     * @param maxConcurrency   The maximum number of tasks running at once.
+     * @param rejectionPolicy  What to do with tasks submitted while the maximum is reached.
+     */
+    BoundedThreadPerTaskExecutor(ThreadFactory threadFactory, int maxConcurrency, StorageExecutor.RejectionPolicy rejectionPolicy) {
+        this.threadFactory = threadFactory;
+        this.maxConcurrency = maxConcurrency;
+        this.permits = new Semaphore(maxConcurrency);
+        this.rejectionPolicy = rejectionPolicy;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (shutdown) {
+            throw new RejectedExecutionException("The storage executor is shut down");
+        }
+        if (!permits.tryAcquire()) {
+            if (rejectionPolicy == StorageExecutor.RejectionPolicy.CALLER_RUNS) {
+                task.run();
+                return;
+            }
+            throw new RejectedExecutionException("The storage executor is saturated, " + maxConcurrency + " operations are running");
+        }
+        try {
+            threadFactory.newThread(() -> {
+                try {
+                    task.run();
+                } finally {
+                    permits.release();
+                }
+            }).start();
+        } catch (RuntimeException | Error e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        // Tasks are never queued, so there is nothing to hand back
+        shutdown = true;
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown && permits.availablePermits() == maxConcurrency;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        if (!permits.tryAcquire(maxConcurrency, timeout, unit)) {
+            return false;
+        }
+        permits.release(maxConcurrency);
+        return true;
+    }
+}
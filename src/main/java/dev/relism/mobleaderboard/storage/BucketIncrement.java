@@ -0,0 +1,31 @@
+package dev.relism.mobleaderboard.storage;
+
+/**
+ * An increment of an epoch bucket, a sub-document {@code {epoch, kills}} counting the kills of a single epoch.
+ * If the stored bucket belongs to the same epoch, the delta is added to it. If it belongs to an older epoch,
+ * or doesn't exist, it's replaced by a bucket of this epoch holding the delta. A newer bucket is left alone.
+ */
+public final class BucketIncrement {
+    private final String field;
+    private final long epoch;
+    private final int delta;
+
+    /**
+     * Constructs a new BucketIncrement.
+     *
+     * @param field The name of the bucket field.
+     * @param epoch The epoch the kills were counted in.
+     * @param delta The number of kills to add.
+     */
+    public BucketIncrement(String field, long epoch, int delta) {
+        this.field = field;
+        this.epoch = epoch;
+        this.delta = delta;
+    }
+
+    public String getField() { return field; }
+
+    public long getEpoch() { return epoch; }
+
+    public int getDelta() { return delta; }
+}
@@ -0,0 +1,97 @@
+package dev.relism.mobleaderboard.storage;
+
+import dev.relism.mobleaderboard.utils.msg;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops sending operations to a database that keeps failing or answering slowly, so callers fail fast
+ * instead of piling up behind it. The circuit opens after a number of consecutive failed or slow calls,
+ * a slow call being one that missed its deadline, rejects every call for a while, then lets a single trial call
+ * through: the circuit closes again if it succeeds in time, and stays open for another while otherwise.
+ */
+public class CircuitBreaker {
+
+    /**
+     * The states of a circuit.
+     */
+    public enum State {
+        /** Calls go through. */
+        CLOSED,
+        /** Calls are rejected. */
+        OPEN,
+        /** A single trial call is in flight, other calls are rejected. */
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+
+    /**
+     * Constructs a new, closed CircuitBreaker.
+     *
+     * @param failureThreshold The number of consecutive failed or slow calls that opens the circuit.
+     * @param openMillis       The time the circuit stays open before a trial call.
+     */
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+    }
+
+    /**
+     * Asks whether a call may go through. A call that is allowed must be reported to
+     * {@link #onSuccess()} or {@link #onFailure()} once done.
+     *
+     * @return true if the call may go through, false if it must be rejected
+     */
+    public synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - openedAt < openNanos) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Reports a call that completed within its deadline.
+     */
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            msg.log("&aThe database answers again, closing the circuit.");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+    }
+
+    /**
+     * Reports a call that failed or missed its deadline.
+     */
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            if (state == State.CLOSED) {
+                msg.log("&cOpening the database circuit after &b" + consecutiveFailures + "&c failed or slow calls, serving cached values for &b"
+                        + TimeUnit.NANOSECONDS.toSeconds(openNanos) + "s&c.");
+            }
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+        }
+    }
+
+    /**
+     * @return the current state of the circuit
+     */
+    public synchronized State getState() {
+        return state;
+    }
+}
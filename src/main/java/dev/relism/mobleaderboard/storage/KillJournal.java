@@ -0,0 +1,487 @@
+package dev.relism.mobleaderboard.storage;
+
+import dev.relism.mobleaderboard.utils.msg;
+import org.bson.Document;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only local journal of the special kills, so that kills buffered in memory or in flight to the database
+ * survive a crash. Every kill is appended to the active segment before it's counted, which hands it to the operating
+ * system right away, while the segment is forced to the storage device in batches by {@link #sync()}.
+ *
+ * <p>The journal is split into numbered segments. {@link #rotate()} seals the active segment before a flush of the
+ * buffered kills, and {@link #truncate(long)} deletes the sealed segments once that flush is confirmed.
+ * Segments left over by a crash are read back by {@link #replay(Visitor)} on the next start, then either discarded
+ * once their kills are stored, or replaced by a single segment holding the kills that couldn't be stored.
+ * Truncations never touch the segments of a previous run.</p>
+ *
+ * <p>Every kill gets a sequence number, increasing across segments and runs. A flush stores the number of the last
+ * kill it covers with the player data, under the {@link #getWatermarkField() watermark field} of this journal, and the
+ * replay skips the kills at or below it, so kills whose flush was acknowledged right before a crash aren't counted twice.
+ * The journal is identified by a random ID kept in its directory, so the servers sharing a database keep apart watermarks.</p>
+ *
+ * <p>Segment layout: {@code int magic | int version | long firstSequence} then records of
+ * {@code int length | int crc32 | byte kind | long time | payload}, where the length counts the bytes after itself
+ * and the CRC covers everything after itself. A kill carries {@code long sequence | long msb | long lsb | short typeLength | type},
+ * a season reset carries {@code int count | count * (long msb | long lsb)}, the players whose kills are kept.
+ * A CRC mismatch or a truncated record marks a torn write, which ends the segment. The first sequence of a segment
+ * is the number the next kill was going to get when the segment was created. Version 1 segments have neither
+ * sequence, their kills are read with sequence 0 and always replayed.</p>
+ */
+public class KillJournal {
+
+    private static final int MAGIC = 0x4D4C4B4A; // "MLKJ"
+    private static final int VERSION = 2;
+    private static final int LEGACY_VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int LEGACY_HEADER_SIZE = 8;
+    private static final byte KIND_KILL = 0;
+    private static final byte KIND_RESET = 1;
+    private static final String SEGMENT_PREFIX = "kills-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String ID_FILE = "journal.id";
+
+    /**
+     * The field of the player data holding the watermarks of the journals, by journal ID.
+     */
+    public static final String WATERMARK_FIELD = "journal";
+
+    private final File directory;
+    private final TreeMap<Long, File> recoveredSegments = new TreeMap<>();
+    private final long firstId;
+    private final String journalId;
+    private long activeId;
+    private long nextSequence = 1;
+    private FileChannel active;
+    private volatile boolean dirty;
+
+    /**
+     * Opens the journal in a directory, creating it if needed. The segments already there are kept for
+     * {@link #replay(Visitor)}, and a new active segment is started after them, numbering the kills after theirs.
+     *
+     * @param directory the directory of the segments
+     * @throws IOException if the ID of the journal can't be read or created, or the active segment can't be created
+     */
+    public KillJournal(File directory) throws IOException {
+        this.directory = directory;
+        directory.mkdirs();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                long id = segmentId(file);
+                if (id >= 0) {
+                    recoveredSegments.put(id, file);
+                }
+            }
+        }
+        firstId = recoveredSegments.isEmpty() ? 0 : recoveredSegments.lastKey() + 1;
+        // Every segment starts after the kills of the previous ones, so the last readable one holds the greatest number
+        for (File segment : recoveredSegments.descendingMap().values()) {
+            long[] lastSequence = new long[1];
+            long firstSequence = readSegment(segment, new Visitor() {
+                @Override
+                public void onKill(Kill kill) {
+                    lastSequence[0] = Math.max(lastSequence[0], kill.getSequence());
+                }
+
+                @Override
+                public void onReset(Set<UUID> keep) {
+                }
+            });
+            if (firstSequence > 0) {
+                nextSequence = Math.max(firstSequence, lastSequence[0] + 1);
+                break;
+            }
+        }
+        // Without a segment the numbering starts over, under a new ID so the stored watermarks don't hide the new kills
+        File idFile = new File(directory, ID_FILE);
+        journalId = nextSequence > 1 ? readOrCreateId(idFile) : createId(idFile);
+        activeId = firstId;
+        active = openSegment(activeId);
+    }
+
+    /**
+     * @return the field of the player data holding the watermark of this journal, in dot notation
+     */
+    public String getWatermarkField() {
+        return WATERMARK_FIELD + "." + journalId;
+    }
+
+    /**
+     * Reads the watermark of this journal out of the {@link #WATERMARK_FIELD} of a player's data.
+     *
+     * @param watermarks the value of the field, null if it's missing
+     * @return the sequence number of the last kill of the player stored by a flush, 0 if there is none
+     */
+    public long watermarkOf(Object watermarks) {
+        Object watermark = watermarks instanceof Document ? ((Document) watermarks).get(journalId) : null;
+        return watermark instanceof Number ? ((Number) watermark).longValue() : 0;
+    }
+
+    /**
+     * Reads the records of the segments left over by the previous run, oldest first.
+     *
+     * @param visitor receives the records
+     */
+    public void replay(Visitor visitor) {
+        for (File segment : recoveredSegments.values()) {
+            readSegment(segment, visitor);
+        }
+    }
+
+    /**
+     * Deletes the segments left over by the previous run, once their kills are stored.
+     */
+    public synchronized void discardRecovered() {
+        for (File segment : recoveredSegments.values()) {
+            if (!segment.delete()) {
+                msg.log("&cCould not delete the kill journal segment " + segment.getName());
+            }
+        }
+        recoveredSegments.clear();
+    }
+
+    /**
+     * Replaces the segments left over by the previous run with a single one holding the given kills,
+     * typically the replayed kills that couldn't be stored, so they are replayed again on the next start.
+     * The new segment is written aside and moved in atomically, before the other segments are deleted.
+     *
+     * @param kills the kills to keep
+     * @throws IOException if the new segment can't be written, in which case the old ones are left untouched
+     */
+    public synchronized void carryOver(Collection<Kill> kills) throws IOException {
+        if (recoveredSegments.isEmpty()) {
+            return;
+        }
+        File target = recoveredSegments.lastEntry().getValue();
+        File temporary = new File(target.getPath() + ".tmp");
+        try (FileChannel channel = new RandomAccessFile(temporary, "rw").getChannel()) {
+            channel.truncate(0);
+            writeFully(channel, header(nextSequence));
+            for (Kill kill : kills) {
+                writeFully(channel, killRecord(kill.getSequence(), kill.getPlayerUUID(), kill.getType(), kill.getTime()));
+            }
+            channel.force(true);
+        }
+        Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        for (File segment : recoveredSegments.headMap(recoveredSegments.lastKey(), false).values()) {
+            if (!segment.delete()) {
+                msg.log("&cCould not delete the kill journal segment " + segment.getName());
+            }
+        }
+        recoveredSegments.headMap(recoveredSegments.lastKey(), false).clear();
+    }
+
+    /**
+     * Appends a kill to the active segment. The kill reaches the operating system before this returns,
+     * and the storage device on the next {@link #sync()}.
+     *
+     * @param playerUUID the UUID of the killer
+     * @param type       the name of the type of the killed mob
+     * @param time       the time of the kill, in milliseconds since the epoch
+     * @return the sequence number of the kill
+     */
+    public synchronized long appendKill(UUID playerUUID, String type, long time) {
+        long sequence = nextSequence++;
+        append(killRecord(sequence, playerUUID, type, time));
+        return sequence;
+    }
+
+    /**
+     * Appends a season reset to the active segment. On replay, the kills appended before it are dropped,
+     * except for the given players.
+     *
+     * @param keep the UUIDs of the players whose kills are kept
+     */
+    public void appendReset(Collection<UUID> keep) {
+        ByteBuffer payload = ByteBuffer.allocate(4 + 16 * keep.size());
+        payload.putInt(keep.size());
+        for (UUID playerUUID : keep) {
+            payload.putLong(playerUUID.getMostSignificantBits()).putLong(playerUUID.getLeastSignificantBits());
+        }
+        append(record(KIND_RESET, System.currentTimeMillis(), payload));
+    }
+
+    /**
+     * Forces the records appended since the last call to the storage device. Can be called from any thread.
+     */
+    public void sync() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        FileChannel channel;
+        synchronized (this) {
+            channel = active;
+        }
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            // A segment sealed meanwhile was forced by the rotation
+            if (channel.isOpen()) {
+                dirty = true;
+                msg.log("&cCould not sync the kill journal: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Seals the active segment and starts a new one. Kills appended from now on go to the new segment.
+     *
+     * @return the ID of the sealed segment, to pass to {@link #truncate(long)} once its kills are stored
+     */
+    public synchronized long rotate() {
+        long sealedId = activeId;
+        try {
+            FileChannel next = openSegment(activeId + 1);
+            active.force(false);
+            active.close();
+            active = next;
+            activeId++;
+        } catch (IOException e) {
+            // Keep appending to the same segment, which is then only deleted by a later rotation
+            msg.log("&cCould not rotate the kill journal: " + e.getMessage());
+            return sealedId - 1;
+        }
+        return sealedId;
+    }
+
+    /**
+     * Deletes the sealed segments of this run up to a given one.
+     * Must only be called once every kill of these segments is stored.
+     *
+     * @param sealedId the ID of the last segment to delete
+     */
+    public void truncate(long sealedId) {
+        long activeSegment;
+        synchronized (this) {
+            activeSegment = activeId;
+        }
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            long id = segmentId(file);
+            if (id >= firstId && id <= sealedId && id != activeSegment && !file.delete()) {
+                msg.log("&cCould not delete the kill journal segment " + file.getName());
+            }
+        }
+    }
+
+    /**
+     * Forces and closes the active segment.
+     */
+    public synchronized void close() {
+        try {
+            active.force(false);
+            active.close();
+        } catch (IOException e) {
+            msg.log("&cCould not close the kill journal: " + e.getMessage());
+        }
+    }
+
+    private synchronized void append(ByteBuffer record) {
+        try {
+            writeFully(active, record);
+            dirty = true;
+        } catch (IOException e) {
+            msg.log("&cCould not append to the kill journal: " + e.getMessage());
+        }
+    }
+
+    private static ByteBuffer killRecord(long sequence, UUID playerUUID, String type, long time) {
+        byte[] typeBytes = type.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(8 + 8 + 8 + 2 + typeBytes.length);
+        payload.putLong(sequence).putLong(playerUUID.getMostSignificantBits()).putLong(playerUUID.getLeastSignificantBits());
+        payload.putShort((short) typeBytes.length).put(typeBytes);
+        return record(KIND_KILL, time, payload);
+    }
+
+    private static ByteBuffer record(byte kind, long time, ByteBuffer payload) {
+        payload.flip();
+        int bodySize = 1 + 8 + payload.remaining();
+        ByteBuffer record = ByteBuffer.allocate(4 + 4 + bodySize);
+        record.putInt(4 + bodySize).putInt(0).put(kind).putLong(time).put(payload);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 8, bodySize);
+        record.putInt(4, (int) crc.getValue());
+        record.flip();
+        return record;
+    }
+
+    private static ByteBuffer header(long firstSequence) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).putLong(firstSequence);
+        header.flip();
+        return header;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private FileChannel openSegment(long id) throws IOException {
+        File file = new File(directory, String.format("%s%016d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+        FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+        channel.truncate(0);
+        writeFully(channel, header(nextSequence));
+        return channel;
+    }
+
+    private static String readOrCreateId(File file) throws IOException {
+        if (file.exists()) {
+            String id = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim();
+            if (id.matches("[0-9a-f]{32}")) {
+                return id;
+            }
+            msg.log("&cThe kill journal ID in " + file.getName() + " is invalid, starting a new one.");
+        }
+        return createId(file);
+    }
+
+    private static String createId(File file) throws IOException {
+        String id = UUID.randomUUID().toString().replace("-", "");
+        Files.write(file.toPath(), id.getBytes(StandardCharsets.UTF_8));
+        return id;
+    }
+
+    /**
+     * Reads the records of a segment.
+     *
+     * @return the first sequence of the segment, 0 for a version 1 segment, or -1 if the segment can't be read
+     */
+    private static long readSegment(File file, Visitor visitor) {
+        ByteBuffer buffer;
+        try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Read the whole segment
+            }
+        } catch (IOException e) {
+            msg.log("&cCould not read the kill journal segment " + file.getName() + ": " + e.getMessage());
+            return -1;
+        }
+        buffer.flip();
+        int version = buffer.remaining() < LEGACY_HEADER_SIZE || buffer.getInt() != MAGIC ? -1 : buffer.getInt();
+        long firstSequence;
+        if (version == VERSION && buffer.remaining() >= HEADER_SIZE - LEGACY_HEADER_SIZE) {
+            firstSequence = buffer.getLong();
+        } else if (version == LEGACY_VERSION) {
+            firstSequence = 0;
+        } else {
+            msg.log("&cIgnoring " + file.getName() + ", it's not a kill journal segment of a known version.");
+            return -1;
+        }
+        while (buffer.remaining() >= 8) {
+            int length = buffer.getInt();
+            if (length < 4 + 1 + 8 || length > buffer.remaining()) {
+                break;
+            }
+            int crc = buffer.getInt();
+            CRC32 actual = new CRC32();
+            actual.update(buffer.array(), buffer.position(), length - 4);
+            if ((int) actual.getValue() != crc) {
+                msg.log("&eDropped a torn record at the end of " + file.getName() + ".");
+                break;
+            }
+            byte kind = buffer.get();
+            long time = buffer.getLong();
+            if (kind == KIND_KILL) {
+                long sequence = version == LEGACY_VERSION ? 0 : buffer.getLong();
+                UUID playerUUID = new UUID(buffer.getLong(), buffer.getLong());
+                byte[] type = new byte[buffer.getShort()];
+                buffer.get(type);
+                visitor.onKill(new Kill(sequence, playerUUID, new String(type, StandardCharsets.UTF_8), time));
+            } else if (kind == KIND_RESET) {
+                int count = buffer.getInt();
+                Set<UUID> keep = new HashSet<>(count * 2);
+                for (int i = 0; i < count; i++) {
+                    keep.add(new UUID(buffer.getLong(), buffer.getLong()));
+                }
+                visitor.onReset(keep);
+            }
+        }
+        return firstSequence;
+    }
+
+    private static long segmentId(File file) {
+        String name = file.getName();
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * A kill read back from the journal.
+     */
+    public static final class Kill {
+        private final long sequence;
+        private final UUID playerUUID;
+        private final String type;
+        private final long time;
+
+        /**
+         * Constructs a new Kill.
+         *
+         * @param sequence   The sequence number of the kill, 0 if it has none.
+         * @param playerUUID The UUID of the killer.
+         * @param type       The name of the type of the killed mob.
+         * @param time       The time of the kill, in milliseconds since the epoch.
+         */
+        public Kill(long sequence, UUID playerUUID, String type, long time) {
+            this.sequence = sequence;
+            this.playerUUID = playerUUID;
+            this.type = type;
+            this.time = time;
+        }
+
+        public long getSequence() { return sequence; }
+
+        public UUID getPlayerUUID() { return playerUUID; }
+
+        public String getType() { return type; }
+
+        public long getTime() { return time; }
+    }
+
+    /**
+     * Receives the records of the journal during a replay.
+     */
+    public interface Visitor {
+
+        /**
+         * Called for every kill.
+         *
+         * @param kill the kill
+         */
+        void onKill(Kill kill);
+
+        /**
+         * Called for every season reset.
+         *
+         * @param keep the UUIDs of the players whose kills are kept
+         */
+        void onReset(Set<UUID> keep);
+    }
+}
@@ -0,0 +1,189 @@
+package dev.relism.mobleaderboard.storage;
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+import dev.relism.mobleaderboard.Mobleaderboard;
+import dev.relism.mobleaderboard.utils.msg;
+import org.bson.Document;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Copies the player data from the {@link StorageLayout#LEGACY} layout into the
+ * {@link StorageLayout#SINGLE_COLLECTION} layout while the server keeps running.
+ * The collections are listed once when the migration starts, then migrated in name order, one small batch per
+ * scheduler run, and the name of the last migrated collection is checkpointed after every batch, so an interrupted
+ * migration resumes where it stopped. Every query goes through the {@link MongoWrapper}, so the migration never blocks
+ * a scheduler thread, and shares the bulkheads, deadlines and circuit breaker of the other database operations.
+ * Copies are idempotent upserts, so the migration can also be restarted from scratch to pick up newer data.
+ */
+public class LegacyMigrator {
+
+    private static final String CHECKPOINT_ID = "legacy-to-single-collection";
+
+    private final Mobleaderboard plugin;
+    private final MongoWrapper mwi;
+    private final int batchSize;
+    private final long batchDelayTicks;
+    private volatile boolean running;
+
+    /**
+     * Constructs a new LegacyMigrator.
+     *
+     * @param plugin          The main plugin instance.
+     * @param batchSize       The number of player collections copied per batch.
+     * @param batchDelayTicks The number of ticks to wait between two batches.
+     */
+    public LegacyMigrator(Mobleaderboard plugin, int batchSize, long batchDelayTicks) {
+        this.plugin = plugin;
+        this.mwi = plugin.getMongoWrapperInstance();
+        this.batchSize = batchSize;
+        this.batchDelayTicks = batchDelayTicks;
+    }
+
+    /**
+     * Starts or resumes the migration.
+     *
+     * @param executor    The player who started the migration, notified of its outcome.
+     * @param fromScratch Whether to discard the checkpoint and copy every collection again.
+     * @return false if a migration is already running, true otherwise
+     */
+    public synchronized boolean start(Player executor, boolean fromScratch) {
+        if (running) {
+            return false;
+        }
+        running = true;
+        readCheckpoint(fromScratch)
+                .thenCompose(checkpoint -> mwi.listCollectionNames(StorageLayout.DATABASE_NAME).thenAccept(collectionNames -> {
+                    String lastCollection = checkpoint == null ? "" : checkpoint.getString("lastCollection");
+                    int migrated = checkpoint == null ? 0 : checkpoint.getInteger("migrated", 0);
+                    List<String> remaining = remainingCollections(collectionNames, lastCollection);
+                    msg.log("&eMigrating player data to the single collection layout, resuming after &b'" + lastCollection + "'&e...");
+                    runBatch(executor, remaining, 0, migrated);
+                }))
+                .exceptionally(ex -> {
+                    fail(executor, ex);
+                    return null;
+                });
+        return true;
+    }
+
+    /**
+     * @return true if a migration is currently running
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Selects the player collections left to migrate, the ones named after the last checkpointed collection.
+     *
+     * @param collectionNames the names of the collections of the player database
+     * @param lastCollection  the name of the last migrated collection, empty if none was migrated
+     * @return the names of the collections left to migrate, sorted
+     */
+    static List<String> remainingCollections(Collection<String> collectionNames, String lastCollection) {
+        List<String> remaining = new ArrayList<>();
+        for (String collectionName : collectionNames) {
+            if (StorageLayout.isLegacyPlayerCollection(collectionName) && collectionName.compareTo(lastCollection) > 0) {
+                remaining.add(collectionName);
+            }
+        }
+        Collections.sort(remaining);
+        return remaining;
+    }
+
+    /**
+     * Copies the next batch of collections, then checkpoints it and schedules the batch after it.
+     *
+     * @param remaining the sorted names of the collections left to migrate when the migration started
+     * @param from      the index of the first collection of the batch
+     * @param migrated  the number of players copied so far
+     */
+    private void runBatch(Player executor, List<String> remaining, int from, int migrated) {
+        if (from >= remaining.size()) {
+            running = false;
+            msg.log("&aPlayer data migration complete, &b" + migrated + "&a players copied.");
+            plugin.getMainThreadDispatcher().execute(() -> msg.send(executor,
+                    "&aPlayer data migration complete, &b" + migrated + "&a players copied. Set storage.layout to 'single' and restart to use it."));
+            return;
+        }
+
+        int to = Math.min(from + batchSize, remaining.size());
+        List<WriteModel<Document>> copies = new ArrayList<>(to - from);
+        String newLastCollection = remaining.get(to - 1);
+        readPlayerData(remaining.subList(from, to).iterator(), copies)
+                .thenCompose(v -> copies.isEmpty()
+                        ? CompletableFuture.completedFuture(null)
+                        : mwi.bulkWrite(StorageLayout.DATABASE_NAME, StorageLayout.PLAYERS_COLLECTION, copies))
+                .thenCompose(v -> saveCheckpoint(newLastCollection, migrated + copies.size()))
+                .whenComplete((v, ex) -> {
+                    if (ex != null) {
+                        fail(executor, ex);
+                        return;
+                    }
+                    int newMigrated = migrated + copies.size();
+                    msg.debug("Migrated " + newMigrated + " players, checkpoint: " + newLastCollection);
+                    // The next batch only starts queries, so it can start from the main thread
+                    Bukkit.getScheduler().runTaskLater(plugin, () -> runBatch(executor, remaining, to, newMigrated), batchDelayTicks);
+                });
+    }
+
+    /**
+     * Reads the "playerdata" document of every collection of a batch, one collection after the other,
+     * and adds its copy to the single collection layout to the copies.
+     */
+    private CompletableFuture<Void> readPlayerData(Iterator<String> collectionNames, List<WriteModel<Document>> copies) {
+        if (!collectionNames.hasNext()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        String collectionName = collectionNames.next();
+        AtomicBoolean copied = new AtomicBoolean();
+        return mwi.streamDocuments(StorageLayout.DATABASE_NAME, collectionName, Filters.eq("type", "playerdata"), new Document(), playerData -> {
+            if (copied.compareAndSet(false, true)) {
+                playerData.put("_id", collectionName);
+                copies.add(new ReplaceOneModel<>(Filters.eq("_id", collectionName), playerData, new ReplaceOptions().upsert(true)));
+            }
+        }).thenCompose(count -> readPlayerData(collectionNames, copies));
+    }
+
+    /**
+     * Reads the checkpoint of the migration, or resets it when starting from scratch.
+     *
+     * @return a CompletableFuture containing the checkpoint, or null if there is none
+     */
+    private CompletableFuture<Document> readCheckpoint(boolean fromScratch) {
+        if (fromScratch) {
+            return saveCheckpoint("", 0).thenApply(v -> null);
+        }
+        AtomicReference<Document> checkpoint = new AtomicReference<>();
+        return mwi.streamDocuments(StorageLayout.DATABASE_NAME, StorageLayout.MIGRATIONS_COLLECTION, Filters.eq("_id", CHECKPOINT_ID),
+                Projections.include("lastCollection", "migrated"), checkpoint::set).thenApply(count -> checkpoint.get());
+    }
+
+    private CompletableFuture<Void> saveCheckpoint(String lastCollection, int migrated) {
+        return mwi.updateDocument(StorageLayout.DATABASE_NAME, StorageLayout.MIGRATIONS_COLLECTION, Filters.eq("_id", CHECKPOINT_ID),
+                Updates.combine(Updates.set("lastCollection", lastCollection), Updates.set("migrated", migrated)), true).thenApply(result -> null);
+    }
+
+    private void fail(Player executor, Throwable ex) {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        running = false;
+        msg.log("&cPlayer data migration stopped: " + cause.getMessage());
+        plugin.getMainThreadDispatcher().execute(() -> msg.send(executor, "&cPlayer data migration stopped: " + cause.getMessage() + ". Run it again to resume."));
+    }
+}
@@ -0,0 +1,45 @@
+package dev.relism.mobleaderboard.storage;
+
+import org.bson.Document;
+
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+/**
+ * Reads the data of many players from the embedded {@link LocalRecordStore}.
+ * Every document is handed over as soon as it's read, and the returned future is already complete.
+ */
+public class LocalBatchStorage implements BatchStorage {
+    private final LocalRecordStore store;
+
+    /**
+     * Constructs a new LocalBatchStorage.
+     *
+     * @param store the record store holding the player data
+     */
+    public LocalBatchStorage(LocalRecordStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public CompletableFuture<Integer> streamFieldValues(Collection<UUID> playerUUIDs, String documentType, BiConsumer<UUID, Document> onDocument, String... fieldsToGet) {
+        int count = 0;
+        for (UUID playerUUID : playerUUIDs) {
+            Document document = store.get(LocalStorage.key(playerUUID.toString(), documentType));
+            if (document == null) {
+                continue;
+            }
+            Document projected = new Document();
+            for (String field : fieldsToGet) {
+                if (document.containsKey(field)) {
+                    projected.put(field, document.get(field));
+                }
+            }
+            onDocument.accept(playerUUID, projected);
+            count++;
+        }
+        return CompletableFuture.completedFuture(count);
+    }
+}
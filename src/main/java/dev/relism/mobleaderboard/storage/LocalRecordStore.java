@@ -0,0 +1,471 @@
+package dev.relism.mobleaderboard.storage;
+
+import org.bson.Document;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+
+/**
+ * An embedded, append-only record file holding documents keyed by string.
+ * The file is memory-mapped, every write appends a new version of the record and an in-memory index maps
+ * each key to the offset of its latest version, so reads and writes never leave the process.
+ * Superseded versions are reclaimed by {@link #compactIfNeeded()}, which rewrites the live records to a new file
+ * while reads and writes go on.
+ *
+ * <p>Record layout: {@code int length | int crc32 | byte flags | short keyLength | key | int valueLength | value},
+ * where the value is the extended JSON form of the document, which keeps the numeric types apart, and the CRC covers
+ * everything after itself. A zero length marks the end of the written data, a CRC mismatch marks a torn write that is
+ * discarded on open.</p>
+ *
+ * <p>The file is mapped as a single buffer, so it can't grow past {@link Integer#MAX_VALUE} bytes. A write that would
+ * take it past that fails with an IllegalStateException before anything is written, and compacting makes room again.</p>
+ */
+public class LocalRecordStore {
+
+    private static final int MAGIC = 0x4D4C4253; // "MLBS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int MIN_CAPACITY = 1 << 20;
+    private static final long MAX_CAPACITY = Integer.MAX_VALUE;
+    // Relaxed JSON writes a Long that fits in an int like an int, which would come back as an Integer
+    private static final JsonWriterSettings JSON_SETTINGS = JsonWriterSettings.builder().outputMode(JsonMode.EXTENDED).build();
+    private static final byte FLAG_LIVE = 0;
+    private static final byte FLAG_TOMBSTONE = 1;
+
+    private final File file;
+    private final Map<String, Integer> offsets = new HashMap<>();
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int writePosition;
+    private long liveBytes;
+    private boolean compacting;
+    private final List<MappedByteBuffer> retired = new ArrayList<>();
+
+    /**
+     * Opens a record file, creating it if it doesn't exist, and rebuilds the index from its records.
+     *
+     * @param file the record file
+     * @throws IOException if the file can't be opened or isn't a record file
+     */
+    public LocalRecordStore(File file) throws IOException {
+        this.file = file;
+        open();
+    }
+
+    /**
+     * Retrieves the latest version of a document.
+     *
+     * @param key the key of the document
+     * @return the document, or null if there is none
+     */
+    public synchronized Document get(String key) {
+        Integer offset = offsets.get(key);
+        return offset == null ? null : readValue(offset);
+    }
+
+    /**
+     * Stores a document, replacing the previous version if any.
+     *
+     * @param key      the key of the document
+     * @param document the document to store
+     * @throws IllegalStateException if the file can't grow to hold the document
+     */
+    public synchronized void put(String key, Document document) {
+        append(key, document.toJson(JSON_SETTINGS).getBytes(StandardCharsets.UTF_8), FLAG_LIVE);
+    }
+
+    /**
+     * Applies a change to an existing document and stores the result.
+     *
+     * @param key      the key of the document
+     * @param mutation the change to apply
+     * @return false if there is no document with the given key, true otherwise
+     */
+    public synchronized boolean update(String key, Consumer<Document> mutation) {
+        Document document = get(key);
+        if (document == null) {
+            return false;
+        }
+        mutation.accept(document);
+        put(key, document);
+        return true;
+    }
+
+    /**
+     * Removes a document.
+     *
+     * @param key the key of the document
+     */
+    public synchronized void remove(String key) {
+        if (offsets.containsKey(key)) {
+            append(key, new byte[0], FLAG_TOMBSTONE);
+        }
+    }
+
+    /**
+     * Retrieves every stored document matching a predicate.
+     *
+     * @param predicate the condition the documents must satisfy
+     * @return the matching documents
+     */
+    public synchronized List<Document> findAll(Predicate<Document> predicate) {
+        List<Document> documents = new ArrayList<>();
+        for (int offset : offsets.values()) {
+            Document document = readValue(offset);
+            if (predicate.test(document)) {
+                documents.add(document);
+            }
+        }
+        return documents;
+    }
+
+    /**
+     * @return the number of stored documents
+     */
+    public synchronized int size() {
+        return offsets.size();
+    }
+
+    /**
+     * Rewrites the file without superseded records, if they take up more than half of it.
+     *
+     * @throws IOException if the new file can't be written
+     */
+    public void compactIfNeeded() throws IOException {
+        boolean needed;
+        synchronized (this) {
+            long usedBytes = writePosition - HEADER_SIZE;
+            needed = usedBytes > MIN_CAPACITY && liveBytes * 2 < usedBytes;
+        }
+        if (needed) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the file with only the latest version of every record, then swaps it in atomically.
+     * The records stored when the compaction starts are copied without holding the store, since they never change,
+     * so reads and writes go on meanwhile. Only the records written during the copy, and the swap itself,
+     * are done while holding it. If the new file can't be moved in, the store goes on with the old one.
+     *
+     * @throws IOException if the new file can't be written
+     */
+    public void compact() throws IOException {
+        Map<String, Integer> snapshot;
+        MappedByteBuffer snapshotBuffer;
+        int snapshotPosition;
+        synchronized (this) {
+            if (compacting) {
+                return;
+            }
+            compacting = true;
+            snapshot = new HashMap<>(offsets);
+            snapshotBuffer = buffer;
+            snapshotPosition = writePosition;
+        }
+        File compacted = new File(file.getPath() + ".compact");
+        try {
+            Map<String, Integer> compactedOffsets = new HashMap<>(snapshot.size() * 2);
+            try (FileChannel out = new RandomAccessFile(compacted, "rw").getChannel()) {
+                out.truncate(0);
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION);
+                header.flip();
+                writeFully(out, header);
+                for (Map.Entry<String, Integer> entry : snapshot.entrySet()) {
+                    int offset = entry.getValue();
+                    compactedOffsets.put(entry.getKey(), (int) out.position());
+                    ByteBuffer record = snapshotBuffer.duplicate();
+                    record.position(offset).limit(offset + 4 + snapshotBuffer.getInt(offset));
+                    writeFully(out, record);
+                }
+                synchronized (this) {
+                    if (buffer == null) {
+                        throw new IOException(file + " was closed during the compaction");
+                    }
+                    // The records written during the copy are replayed on top of it
+                    int position = snapshotPosition;
+                    while (position < writePosition) {
+                        int recordSize = 4 + buffer.getInt(position);
+                        String key = readKey(position);
+                        if (buffer.get(position + 8) == FLAG_TOMBSTONE) {
+                            compactedOffsets.remove(key);
+                        } else {
+                            compactedOffsets.put(key, (int) out.position());
+                        }
+                        ByteBuffer record = buffer.duplicate();
+                        record.position(position).limit(position + recordSize);
+                        writeFully(out, record);
+                        position += recordSize;
+                    }
+                    ByteBuffer end = ByteBuffer.allocate(4);
+                    int compactedPosition = (int) out.position();
+                    writeFully(out, end);
+                    out.force(true);
+                    swap(compacted, compactedOffsets, compactedPosition);
+                }
+            }
+        } finally {
+            synchronized (this) {
+                compacting = false;
+                for (MappedByteBuffer retiredBuffer : retired) {
+                    unmap(retiredBuffer);
+                }
+                retired.clear();
+            }
+            Files.deleteIfExists(compacted.toPath());
+        }
+    }
+
+    /**
+     * Replaces the file with its compacted copy. The old file is unmapped first, since a mapped file can't be replaced
+     * on every platform, and reopened if the move fails. Must be called holding the store.
+     */
+    private void swap(File compacted, Map<String, Integer> compactedOffsets, int compactedPosition) throws IOException {
+        closeFile();
+        try {
+            Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            openFile();
+            throw e;
+        }
+        openFile();
+        offsets.clear();
+        offsets.putAll(compactedOffsets);
+        writePosition = compactedPosition;
+        liveBytes = 0;
+        for (int offset : offsets.values()) {
+            liveBytes += 4 + buffer.getInt(offset);
+        }
+    }
+
+    /**
+     * Writes the mapped changes to the storage device.
+     */
+    public synchronized void force() {
+        buffer.force();
+    }
+
+    /**
+     * Writes the pending changes and closes the file.
+     *
+     * @throws IOException if the file can't be closed
+     */
+    public synchronized void close() throws IOException {
+        buffer.force();
+        closeFile();
+    }
+
+    private void open() throws IOException {
+        boolean created = !file.exists() || file.length() == 0;
+        openFile();
+
+        offsets.clear();
+        liveBytes = 0;
+        if (created) {
+            buffer.putInt(0, MAGIC).putInt(4, VERSION);
+            writePosition = HEADER_SIZE;
+            return;
+        }
+        if (buffer.getInt(0) != MAGIC) {
+            closeFile();
+            throw new IOException(file + " is not a record file");
+        }
+        scan();
+    }
+
+    /**
+     * Replays every record to rebuild the index, stopping at the end of the data or at the first torn record.
+     */
+    private void scan() {
+        int position = HEADER_SIZE;
+        Map<String, Integer> sizes = new HashMap<>();
+        while (position + 4 <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length < 11 || position + 4 + length > buffer.capacity() || checksum(position + 8, length - 4) != buffer.getInt(position + 4)) {
+                break;
+            }
+            String key = readKey(position);
+            byte flags = buffer.get(position + 8);
+            Integer previousSize = sizes.remove(key);
+            if (previousSize != null) {
+                liveBytes -= previousSize;
+            }
+            if (flags == FLAG_TOMBSTONE) {
+                offsets.remove(key);
+            } else {
+                offsets.put(key, position);
+                sizes.put(key, 4 + length);
+                liveBytes += 4 + length;
+            }
+            position += 4 + length;
+        }
+        writePosition = position;
+        // Clear a torn tail, so that it can't be mistaken for records later on
+        for (int i = position; i < Math.min(position + 4, buffer.capacity()); i++) {
+            buffer.put(i, (byte) 0);
+        }
+    }
+
+    private void append(String key, byte[] value, byte flags) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        // Computed as a long, a record past the maximum size must fail here rather than wrap around
+        long required = (long) writePosition + 4 + 4 + 1 + 2 + keyBytes.length + 4 + value.length + 4;
+        ensureCapacity(required);
+        int length = 4 + 1 + 2 + keyBytes.length + 4 + value.length;
+
+        int position = writePosition;
+        ByteBuffer record = buffer.duplicate();
+        record.position(position + 8);
+        record.put(flags).putShort((short) keyBytes.length).put(keyBytes).putInt(value.length).put(value);
+        buffer.putInt(position + 4, checksum(position + 8, length - 4));
+        // The length is written last, so a crash mid-write leaves the record invisible
+        buffer.putInt(position, length);
+        writePosition = position + 4 + length;
+
+        Integer previous = offsets.remove(key);
+        if (previous != null) {
+            liveBytes -= 4 + buffer.getInt(previous);
+        }
+        if (flags == FLAG_LIVE) {
+            offsets.put(key, position);
+            liveBytes += 4 + length;
+        }
+    }
+
+    private String readKey(int position) {
+        byte[] keyBytes = new byte[buffer.getShort(position + 9)];
+        ByteBuffer record = buffer.duplicate();
+        record.position(position + 11);
+        record.get(keyBytes);
+        return new String(keyBytes, StandardCharsets.UTF_8);
+    }
+
+    private Document readValue(int position) {
+        int valuePosition = position + 11 + buffer.getShort(position + 9);
+        byte[] value = new byte[buffer.getInt(valuePosition)];
+        ByteBuffer record = buffer.duplicate();
+        record.position(valuePosition + 4);
+        record.get(value);
+        return Document.parse(new String(value, StandardCharsets.UTF_8));
+    }
+
+    private int checksum(int position, int length) {
+        ByteBuffer region = buffer.duplicate();
+        region.position(position).limit(position + length);
+        CRC32 crc = new CRC32();
+        crc.update(region);
+        return (int) crc.getValue();
+    }
+
+    private void ensureCapacity(long required) {
+        if (required > MAX_CAPACITY) {
+            throw new IllegalStateException(file + " is full, a record file can't grow past " + MAX_CAPACITY + " bytes");
+        }
+        if (required > buffer.capacity()) {
+            try {
+                buffer.force();
+                map(capacityFor(required));
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not grow " + file, e);
+            }
+        }
+    }
+
+    private void openFile() throws IOException {
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        channel = randomAccessFile.getChannel();
+        map(capacityFor(channel.size()));
+    }
+
+    private void map(long capacity) throws IOException {
+        if (capacity > Integer.MAX_VALUE) {
+            throw new IOException(file + " exceeds the maximum size of a record file");
+        }
+        MappedByteBuffer previous = buffer;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        if (previous != null) {
+            retire(previous);
+        }
+    }
+
+    private void closeFile() throws IOException {
+        retire(buffer);
+        buffer = null;
+        channel.close();
+        randomAccessFile.close();
+    }
+
+    /**
+     * Unmaps a buffer that is no longer used, or keeps it until the running compaction, which may still read it, is done.
+     */
+    private void retire(MappedByteBuffer oldBuffer) {
+        if (compacting) {
+            retired.add(oldBuffer);
+        } else {
+            unmap(oldBuffer);
+        }
+    }
+
+    /**
+     * Releases a mapping right away instead of when the buffer is garbage collected, which the JDK has no public API for.
+     * The buffer must never be accessed again.
+     */
+    private static void unmap(MappedByteBuffer mapped) {
+        try {
+            try {
+                // Java 9 and later
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(theUnsafe.get(null), mapped);
+            } catch (NoSuchMethodException e) {
+                // Java 8
+                Method cleanerMethod = mapped.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(mapped);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // The mapping is released by the garbage collector instead
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * @return the power of two holding the given size, no smaller than the minimum capacity,
+     *         and no larger than the maximum one unless the size itself is
+     */
+    private static long capacityFor(long size) {
+        long power = MIN_CAPACITY;
+        while (power < size) {
+            power <<= 1;
+        }
+        return size <= MAX_CAPACITY ? Math.min(power, MAX_CAPACITY) : power;
+    }
+}
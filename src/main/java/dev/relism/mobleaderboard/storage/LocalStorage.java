@@ -0,0 +1,396 @@
+package dev.relism.mobleaderboard.storage;
+
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A storage class for managing player-specific data in the embedded {@link LocalRecordStore}.
+ * Every operation runs in-process and is already complete when the returned future is handed back.
+ */
+public class LocalStorage implements Storage {
+    private final LocalRecordStore store;
+    private final String playerUUID;
+
+    /**
+     * Constructs a LocalStorage instance for a player.
+     *
+     * @param store      the record store holding the player data
+     * @param playerUUID the UUID of the player whose data will be managed by this storage
+     */
+    public LocalStorage(LocalRecordStore store, UUID playerUUID) {
+        this.store = store;
+        this.playerUUID = playerUUID.toString();
+    }
+
+    /**
+     * Builds the key of a player's document in the record store.
+     *
+     * @param playerUUID   the UUID of the player
+     * @param documentType the identifier of the document
+     * @return the record key
+     */
+    public static String key(String playerUUID, String documentType) {
+        return playerUUID + ":" + documentType;
+    }
+
+    /**
+     * Checks if a player data exists in the record store.
+     *
+     * @return a completed CompletableFuture containing true if a document with type "playerdata" exists for the player, false otherwise.
+     */
+    @Override
+    public CompletableFuture<Boolean> playerDataExists() {
+        return CompletableFuture.completedFuture(store.get(key(playerUUID, "playerdata")) != null);
+    }
+
+    /**
+     * Retrieves the value of a specific field from a player's document.
+     *
+     * @param documentType the identifier of the document
+     * @param fieldToGet   the name of the field to retrieve
+     * @return a completed CompletableFuture containing the value of the specified field, or null if there is none
+     */
+    @Override
+    public CompletableFuture<Object> getFieldValue(String documentType, String fieldToGet) {
+        Document document = store.get(key(playerUUID, documentType));
+        return CompletableFuture.completedFuture(document == null ? null : document.get(fieldToGet));
+    }
+
+    /**
+     * Sets the value of a specific field in a player's document.
+     *
+     * @param documentType the identifier of the document
+     * @param fieldToSet   the name of the field to update
+     * @param newValue     the new value to set for the field
+     * @return a completed CompletableFuture
+     */
+    @Override
+    public CompletableFuture<Void> setFieldValue(String documentType, String fieldToSet, Object newValue) {
+        store.update(key(playerUUID, documentType), document -> document.put(fieldToSet, newValue));
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Increments a numeric field in a player's document. A missing field is treated as 0.
+     *
+     * @param documentType     the identifier of the document
+     * @param fieldToIncrement the name of the numeric field to increment
+     * @param delta            the amount to add to the field
+     * @return a completed CompletableFuture
+     */
+    @Override
+    public CompletableFuture<Void> incrementFieldValue(String documentType, String fieldToIncrement, Number delta) {
+        store.update(key(playerUUID, documentType), document -> document.put(fieldToIncrement, add(document.get(fieldToIncrement), delta)));
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Increments a set of numeric fields and epoch buckets in a player's document, in a single write.
+     * Missing fields are treated as 0 and missing sub-documents are created.
+     *
+     * @param documentType     the identifier of the document
+     * @param increments       the amounts to add, by field name
+     * @param maxima           the values to raise fields to, by field name, a missing field being set to its value
+     * @param bucketIncrements the increments of the epoch buckets, applied in order
+     * @return a completed CompletableFuture
+     */
+    @Override
+    public CompletableFuture<Void> incrementFieldValues(String documentType, Map<String, Integer> increments, Map<String, Long> maxima, List<BucketIncrement> bucketIncrements) {
+        store.update(key(playerUUID, documentType), document -> {
+            for (Map.Entry<String, Integer> increment : increments.entrySet()) {
+                Document parent = parentOf(document, increment.getKey());
+                String child = childOf(increment.getKey());
+                parent.put(child, add(parent.get(child), increment.getValue()));
+            }
+            for (Map.Entry<String, Long> maximum : maxima.entrySet()) {
+                Document parent = parentOf(document, maximum.getKey());
+                String child = childOf(maximum.getKey());
+                Object current = parent.get(child);
+                if (!(current instanceof Number) || compare((Number) current, maximum.getValue()) < 0) {
+                    parent.put(child, maximum.getValue());
+                }
+            }
+            for (BucketIncrement increment : bucketIncrements) {
+                Document bucket = document.get(increment.getField(), Document.class);
+                long storedEpoch = bucket != null && bucket.get("epoch") instanceof Number ? ((Number) bucket.get("epoch")).longValue() : Long.MIN_VALUE;
+                if (storedEpoch == increment.getEpoch()) {
+                    bucket.put("kills", add(bucket.get("kills"), increment.getDelta()));
+                } else if (storedEpoch < increment.getEpoch()) {
+                    document.put(increment.getField(), new Document("epoch", increment.getEpoch()).append("kills", increment.getDelta()));
+                }
+            }
+        });
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Increments a numeric field in a player's document and retrieves its new value. A missing field is treated as 0.
+     *
+     * @param documentType     the identifier of the document
+     * @param fieldToIncrement the name of the numeric field to increment
+     * @param delta            the amount to add to the field
+     * @return a completed CompletableFuture containing the value of the field after this increment, or null if the document doesn't exist
+     */
+    @Override
+    public CompletableFuture<Number> incrementAndGet(String documentType, String fieldToIncrement, Number delta) {
+        Number[] incremented = new Number[1];
+        store.update(key(playerUUID, documentType), document -> {
+            incremented[0] = add(document.get(fieldToIncrement), delta);
+            document.put(fieldToIncrement, incremented[0]);
+        });
+        return CompletableFuture.completedFuture(incremented[0]);
+    }
+
+    /**
+     * Raises a numeric field in a player's document to a value, if the value is greater than the stored one.
+     *
+     * @param documentType the identifier of the document
+     * @param fieldToSet   the name of the numeric field, set to the value if missing
+     * @param value        the candidate value
+     * @return a completed CompletableFuture containing true if the field was raised
+     */
+    @Override
+    public CompletableFuture<Boolean> setIfGreater(String documentType, String fieldToSet, Number value) {
+        boolean[] raised = new boolean[1];
+        store.update(key(playerUUID, documentType), document -> {
+            Object current = document.get(fieldToSet);
+            if (!(current instanceof Number) || compare((Number) current, value) < 0) {
+                document.put(fieldToSet, value);
+                raised[0] = true;
+            }
+        });
+        return CompletableFuture.completedFuture(raised[0]);
+    }
+
+    /**
+     * Sets a field in a player's document, if it still holds the expected value.
+     *
+     * @param documentType  the identifier of the document
+     * @param fieldToSet    the name of the field to update
+     * @param expectedValue the value the field must hold, null matching a missing field too
+     * @param newValue      the new value to set for the field
+     * @return a completed CompletableFuture containing true if the field was set
+     */
+    @Override
+    public CompletableFuture<Boolean> compareAndSet(String documentType, String fieldToSet, Object expectedValue, Object newValue) {
+        boolean[] set = new boolean[1];
+        store.update(key(playerUUID, documentType), document -> {
+            if (Objects.equals(document.get(fieldToSet), expectedValue)) {
+                document.put(fieldToSet, newValue);
+                set[0] = true;
+            }
+        });
+        return CompletableFuture.completedFuture(set[0]);
+    }
+
+    /**
+     * Appends an element to an array field of a player's document.
+     *
+     * @param documentType the identifier of the document
+     * @param arrayField   the name of the array field, created if missing
+     * @param element      the element to append
+     * @return a completed CompletableFuture
+     */
+    @Override
+    public CompletableFuture<Void> push(String documentType, String arrayField, Object element) {
+        store.update(key(playerUUID, documentType), document -> {
+            Object stored = document.get(arrayField);
+            List<Object> array = stored instanceof List ? new ArrayList<Object>((List<?>) stored) : new ArrayList<>();
+            array.add(element);
+            document.put(arrayField, array);
+        });
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Sets fields of a player's document, creating the document first if it doesn't exist.
+     *
+     * @param documentType the identifier of the document
+     * @param fields       the fields to set
+     * @return a completed CompletableFuture
+     */
+    @Override
+    public CompletableFuture<Void> upsert(String documentType, Document fields) {
+        String key = key(playerUUID, documentType);
+        synchronized (store) {
+            Document document = store.get(key);
+            if (document == null) {
+                document = new Document("type", documentType);
+            }
+            document.putAll(fields);
+            store.put(key, document);
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Loads a player's document, creating it first if it doesn't exist.
+     *
+     * @param documentType    the identifier of the document
+     * @param setFields       the fields written whether or not the document exists
+     * @param defaultFields   the fields only written when the document is created
+     * @param projectedFields the fields to retrieve
+     * @return a completed CompletableFuture containing the document, restricted to the projected fields
+     */
+    @Override
+    public CompletableFuture<Document> loadOrInsertDocument(String documentType, Document setFields, Document defaultFields, String... projectedFields) {
+        String key = key(playerUUID, documentType);
+        Document document;
+        synchronized (store) {
+            document = store.get(key);
+            if (document == null) {
+                document = new Document("type", documentType);
+                document.putAll(defaultFields);
+            }
+            document.putAll(setFields);
+            store.put(key, document);
+        }
+        Document projection = new Document();
+        for (String field : projectedFields) {
+            if (document.containsKey(field)) {
+                projection.put(field, document.get(field));
+            }
+        }
+        return CompletableFuture.completedFuture(projection);
+    }
+
+    /**
+     * Appends elements to an array field of a player's document, skipping the elements whose ID is already in it.
+     *
+     * @param documentType the identifier of the document
+     * @param arrayField   the name of the array field, created if missing
+     * @param idField      the name of the field identifying an element
+     * @param elements     the elements to append
+     * @return a completed CompletableFuture
+     */
+    @Override
+    public CompletableFuture<Void> pushUnique(String documentType, String arrayField, String idField, List<Document> elements) {
+        store.update(key(playerUUID, documentType), document -> {
+            List<Document> array = arrayOf(document, arrayField);
+            Set<Object> ids = new HashSet<>();
+            for (Document element : array) {
+                ids.add(element.get(idField));
+            }
+            for (Document element : elements) {
+                if (ids.add(element.get(idField))) {
+                    array.add(element);
+                }
+            }
+            document.put(arrayField, array);
+        });
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Removes the elements with the given IDs from an array field of a player's document.
+     *
+     * @param documentType the identifier of the document
+     * @param arrayField   the name of the array field
+     * @param idField      the name of the field identifying an element
+     * @param ids          the IDs of the elements to remove
+     * @return a completed CompletableFuture
+     */
+    @Override
+    public CompletableFuture<Void> pullByIds(String documentType, String arrayField, String idField, Collection<String> ids) {
+        store.update(key(playerUUID, documentType), document -> {
+            List<Document> array = arrayOf(document, arrayField);
+            array.removeIf(element -> ids.contains(element.get(idField)));
+            document.put(arrayField, array);
+        });
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Inserts a document for the player, keyed by its "type" field.
+     *
+     * @param document the document to insert
+     * @return a completed CompletableFuture
+     */
+    @Override
+    public CompletableFuture<Void> insertDocument(Document document) {
+        store.put(key(playerUUID, document.getString("type")), document);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Finds the player's documents based on a field and its value.
+     * Lookups by "type" are direct, any other field requires scanning the store.
+     *
+     * @param fieldIdentifier the name of the field to search
+     * @param valueIdentifier the value to search for in the field
+     * @return a completed CompletableFuture containing the matching documents
+     */
+    @Override
+    public CompletableFuture<List<Document>> findDocuments(String fieldIdentifier, Object valueIdentifier) {
+        if (fieldIdentifier.equals("type")) {
+            Document document = store.get(key(playerUUID, String.valueOf(valueIdentifier)));
+            return CompletableFuture.completedFuture(document == null ? Collections.<Document>emptyList() : Collections.singletonList(document));
+        }
+        return CompletableFuture.completedFuture(store.findAll(document ->
+                playerUUID.equals(document.getString("uuid")) && Objects.equals(document.get(fieldIdentifier), valueIdentifier)));
+    }
+
+    private static List<Document> arrayOf(Document document, String arrayField) {
+        List<Document> array = new ArrayList<>();
+        Object stored = document.get(arrayField);
+        if (stored instanceof List) {
+            for (Object element : (List<?>) stored) {
+                if (element instanceof Document) {
+                    array.add((Document) element);
+                }
+            }
+        }
+        return array;
+    }
+
+    /**
+     * Finds the document holding a field given in dot notation, creating the sub-document if it's missing.
+     */
+    private static Document parentOf(Document document, String field) {
+        int dot = field.indexOf('.');
+        if (dot < 0) {
+            return document;
+        }
+        Document parent = document.get(field.substring(0, dot), Document.class);
+        if (parent == null) {
+            parent = new Document();
+            document.put(field.substring(0, dot), parent);
+        }
+        return parent;
+    }
+
+    private static String childOf(String field) {
+        return field.substring(field.indexOf('.') + 1);
+    }
+
+    private static Number add(Object current, Number delta) {
+        if (!(current instanceof Number)) {
+            return delta;
+        }
+        Number value = (Number) current;
+        if (value instanceof Double || delta instanceof Double) {
+            return value.doubleValue() + delta.doubleValue();
+        }
+        if (value instanceof Integer && delta instanceof Integer) {
+            return value.intValue() + delta.intValue();
+        }
+        return value.longValue() + delta.longValue();
+    }
+
+    private static int compare(Number a, Number b) {
+        if (a instanceof Double || b instanceof Double || a instanceof Float || b instanceof Float) {
+            return Double.compare(a.doubleValue(), b.doubleValue());
+        }
+        return Long.compare(a.longValue(), b.longValue());
+    }
+}
@@ -1,17 +1,36 @@
 package dev.relism.mobleaderboard.storage;
 
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.*;
+import com.mongodb.client.model.BulkWriteOptions;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.client.result.UpdateResult;
 import dev.relism.mobleaderboard.Mobleaderboard;
+import dev.relism.mobleaderboard.leaderboard.TopKills;
+import dev.relism.mobleaderboard.metrics.StorageMetrics;
 import dev.relism.mobleaderboard.utils.msg;
 import org.bson.Document;
-import org.bukkit.Bukkit;
+import org.bson.conversions.Bson;
 
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
 import java.util.StringJoiner;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 public class MongoWrapper {
 
@@ -22,17 +41,40 @@ public class MongoWrapper {
 
     private final Mobleaderboard plugin = Mobleaderboard.getPlugin();
 
+    private final StorageMetrics metrics = new StorageMetrics();
+
+    private final ExecutorService executor;
+
+    private final StorageGuard guard;
+
+    private final WriteCoalescer coalescer;
+
     /**
      * Constructs a new MongoWrapper with the provided connection string.
      *
-     * @param connectionString the MongoDB connection string
+     * @param connectionString    the MongoDB connection string
+     * @param executor            the executor running the blocking database operations, shut down by {@link #close()}
+     * @param guard               the deadlines, bulkheads and circuit breaker every operation goes through
+     * @param socketTimeoutMillis the time the driver waits for a server before giving up on an operation
+     * @param groupCommitMillis   the time a write may wait for others to be sent in the same batch
+     * @param groupCommitSize     the number of writes that fills a batch, which is then sent right away
      */
-    public MongoWrapper(String connectionString) {
-        this.mongoClient = MongoClients.create(connectionString);
+    public MongoWrapper(String connectionString, ExecutorService executor, StorageGuard guard, int socketTimeoutMillis,
+                        long groupCommitMillis, int groupCommitSize) {
+        this.mongoClient = MongoClients.create(MongoClientSettings.builder()
+                .applyConnectionString(new ConnectionString(connectionString))
+                .applyToSocketSettings(builder -> builder
+                        .connectTimeout(socketTimeoutMillis, TimeUnit.MILLISECONDS)
+                        .readTimeout(socketTimeoutMillis, TimeUnit.MILLISECONDS))
+                .applyToClusterSettings(builder -> builder.serverSelectionTimeout(socketTimeoutMillis, TimeUnit.MILLISECONDS))
+                .build());
+        this.executor = executor;
+        this.guard = guard;
+        this.coalescer = new WriteCoalescer(this::sendBatch, groupCommitMillis, groupCommitSize, guard.getBatchConcurrency());
     }
 
     /**
-     * Inserts a document into the specified collection asynchronously.
+     * Inserts a document into the specified collection asynchronously, in the next batch of writes to the collection.
      *
      * @param databaseName   the name of the database
      * @param collectionName the name of the collection
@@ -42,13 +84,7 @@ public class MongoWrapper {
      */
     public CompletableFuture<Void> insertDocument(String databaseName, String collectionName, Document document) {
         String queryType = "insertDocument";
-        CompletableFuture<Void> result = CompletableFuture.runAsync(() -> {
-            MongoDatabase database = mongoClient.getDatabase(databaseName);
-            if (database == null) { sendErrorMsg(queryType, "Database doesn't exist", databaseName, collectionName, document.toString()); return; }
-            MongoCollection<Document> collection = database.getCollection(collectionName);
-            if (collection == null) { sendErrorMsg(queryType, "Collection doesn't exist", databaseName, collectionName, document.toString()); return; }
-            collection.insertOne(document);
-        });
+        CompletableFuture<Void> result = metrics.time(queryType, () -> coalescer.write(databaseName, collectionName, null, new InsertOneModel<>(document)));
         result.exceptionally(ex -> { String errorMsg = "Query Exception occurred: " + ex.getMessage();  msg.log(errorMsg); return null; });
         return result;
     }
@@ -61,24 +97,46 @@ public class MongoWrapper {
      * @param collectionName the name of the collection
      * @param fieldName      the name of the field to search
      * @param value          the value to search for in the field
-     * @return a CompletableFuture containing a FindIterable of matching documents.
+     * @return a CompletableFuture containing the matching documents, read on a storage thread.
      *         May return null if the database, collection, or field is null or if an exception occurs during execution.
      */
-    public CompletableFuture<FindIterable<Document>> findDocuments(String databaseName, String collectionName, String fieldName, Object value) {
+    public CompletableFuture<List<Document>> findDocuments(String databaseName, String collectionName, String fieldName, Object value) {
         String queryType = "findDocuments";
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                MongoDatabase database = mongoClient.getDatabase(databaseName);
-                if (database == null) { sendErrorMsg(queryType, "Database doesn't exist", databaseName, collectionName, fieldName, value.toString()); return null; }
-                MongoCollection<Document> collection = database.getCollection(collectionName);
-                if (collection == null) { sendErrorMsg(queryType, "Collection doesn't exist", databaseName, collectionName, fieldName, value.toString()); return null; }
-                return collection.find(Filters.eq(fieldName, value));
-            } catch (Exception ex) { String errorMsg = "Exception occurred: " + ex.getMessage(); msg.log(errorMsg); return null; }
-        }).exceptionally(ex -> { String errorMsg = "Query Exception occurred: " + ex.getMessage();  msg.log(errorMsg); return null; });
+        return metrics.time(queryType, () -> guard.read(queryType, null, () -> supplyAsync(() -> {
+            MongoDatabase database = mongoClient.getDatabase(databaseName);
+            if (database == null) { sendErrorMsg(queryType, "Database doesn't exist", databaseName, collectionName, fieldName, value.toString()); return null; }
+            MongoCollection<Document> collection = database.getCollection(collectionName);
+            if (collection == null) { sendErrorMsg(queryType, "Collection doesn't exist", databaseName, collectionName, fieldName, value.toString()); return null; }
+            // A FindIterable only queries once iterated, which must happen here, under the guard, rather than on the caller's thread
+            List<Document> documents = collection.find(Filters.eq(fieldName, value)).into(new ArrayList<>());
+            return documents;
+        }))).exceptionally(ex -> { String errorMsg = "Query Exception occurred: " + ex.getMessage();  msg.log(errorMsg); return null; });
+    }
+
+    /**
+     * Finds documents in the specified collection matching a filter asynchronously.
+     *
+     * @param databaseName   the name of the database
+     * @param collectionName the name of the collection
+     * @param filter         the query filter
+     * @return a CompletableFuture containing the matching documents, read on a storage thread.
+     *         May return null if the database or collection is null or if an exception occurs during execution.
+     */
+    public CompletableFuture<List<Document>> findDocuments(String databaseName, String collectionName, Bson filter) {
+        String queryType = "findDocuments";
+        return metrics.time(queryType, () -> guard.read(queryType, null, () -> supplyAsync(() -> {
+            MongoDatabase database = mongoClient.getDatabase(databaseName);
+            if (database == null) { sendErrorMsg(queryType, "Database doesn't exist", databaseName, collectionName, String.valueOf(filter)); return null; }
+            MongoCollection<Document> collection = database.getCollection(collectionName);
+            if (collection == null) { sendErrorMsg(queryType, "Collection doesn't exist", databaseName, collectionName, String.valueOf(filter)); return null; }
+            List<Document> documents = collection.find(filter).into(new ArrayList<>());
+            return documents;
+        }))).exceptionally(ex -> { String errorMsg = "Query Exception occurred: " + ex.getMessage();  msg.log(errorMsg); return null; });
     }
 
     /**
      * Retrieves a specific field value from a document in the specified collection asynchronously.
+     * Only that field is sent back by the server.
      *
      * @param databaseName   the name of the database
      * @param collectionName the name of the collection
@@ -90,24 +148,56 @@ public class MongoWrapper {
      */
     public CompletableFuture<Object> getFieldValue(String databaseName, String collectionName, String fieldName, Object value, String fieldToGet) {
         String queryType = "getFieldValue";
-        CompletableFuture<Object> result = CompletableFuture.supplyAsync(() -> {
+        String cacheKey = queryType + ":" + databaseName + "/" + collectionName + "/" + fieldName + "=" + value + "/" + fieldToGet;
+        CompletableFuture<Object> result = metrics.time(queryType, () -> guard.read(queryType, cacheKey, () -> supplyAsync(() -> {
             try {
                 MongoDatabase database = mongoClient.getDatabase(databaseName);
                 if (database == null) { sendErrorMsg(queryType, "Database doesn't exist", databaseName, collectionName, fieldName, value.toString(), fieldToGet); return null; }
                 MongoCollection<Document> collection = database.getCollection(collectionName);
                 if (collection == null) { sendErrorMsg(queryType, "Collection doesn't exist", databaseName, collectionName, fieldName, value.toString(), fieldToGet); return null; }
-                Document document = collection.find(Filters.eq(fieldName, value)).first();
+                Document document = collection.find(Filters.eq(fieldName, value)).projection(Projections.include(fieldToGet)).first();
                 if (document == null) { sendErrorMsg(queryType, "Document doesn't exist", databaseName, collectionName, fieldName, value.toString(), fieldToGet); return null; }
                 if(document.get(fieldToGet) == null) { sendErrorMsg(queryType, "Field doesn't exist, or its data is null (very unlikely)", databaseName, collectionName, fieldName, value.toString(), fieldToGet); return null; };
                 return document.get(fieldToGet);
-            } catch (Exception ex) { String errorMsg = "Exception occurred: " + ex.getMessage(); msg.log(errorMsg); return null; }
-        });
+            } catch (Exception ex) { String errorMsg = "Exception occurred: " + ex.getMessage(); msg.log(errorMsg); metrics.failure(queryType); return null; }
+        })));
+        result.exceptionally(ex -> { String errorMsg = "Query Exception occurred: " + ex.getMessage();  msg.log(errorMsg); return null; });
+        return result;
+    }
+
+    /**
+     * Streams the documents matching a filter, restricted to a projection, from the specified collection asynchronously.
+     * The documents are handed to the consumer one by one on a storage thread, as the cursor brings them in,
+     * so the result set is never held in memory as a whole.
+     *
+     * @param databaseName   the name of the database
+     * @param collectionName the name of the collection
+     * @param filter         the query filter
+     * @param projection     the fields to retrieve
+     * @param onDocument     receives every matching document
+     * @return a CompletableFuture containing the number of documents handed to the consumer.
+     *         Completes exceptionally if the query could not be performed, the documents handed over until then stay valid.
+     */
+    public CompletableFuture<Integer> streamDocuments(String databaseName, String collectionName, Bson filter, Bson projection, Consumer<Document> onDocument) {
+        String queryType = "streamDocuments";
+        CompletableFuture<Integer> result = metrics.time(queryType, () -> guard.read(queryType, null, () -> supplyAsync(() -> {
+            int count = 0;
+            FindIterable<Document> documents = mongoClient.getDatabase(databaseName).getCollection(collectionName).find(filter).projection(projection);
+            try (MongoCursor<Document> cursor = documents.iterator()) {
+                while (cursor.hasNext()) {
+                    onDocument.accept(cursor.next());
+                    count++;
+                }
+            }
+            return count;
+        })));
         result.exceptionally(ex -> { String errorMsg = "Query Exception occurred: " + ex.getMessage();  msg.log(errorMsg); return null; });
         return result;
     }
 
     /**
-     * Sets a specific field value in a document in the specified collection asynchronously.
+     * Sets a specific field value in a document in the specified collection asynchronously, in the next batch of writes
+     * to the collection. Pending changes to the same document are merged into a single update.
      *
      * @param databaseName   the name of the database
      * @param collectionName the name of the collection
@@ -120,57 +210,274 @@ public class MongoWrapper {
      */
     public CompletableFuture<Void> setFieldValue(String databaseName, String collectionName, String fieldName, Object value, String fieldToSet, Object newValue) {
         String queryType = "setFieldValue";
-        return CompletableFuture.runAsync(() -> {
-            try {
-                MongoDatabase database = mongoClient.getDatabase(databaseName);
-                if (database == null) { sendErrorMsg(queryType, "Database doesn't exist", databaseName, collectionName, fieldName, value.toString(), fieldToSet, newValue.toString()); return; }
-                MongoCollection<Document> collection = database.getCollection(collectionName);
-                if (collection == null) { sendErrorMsg(queryType, "Collection doesn't exist", databaseName, collectionName, fieldName, value.toString(), fieldToSet, newValue.toString()); return; }
-                collection.updateOne(Filters.eq(fieldName, value), new Document("$set", new Document(fieldToSet, newValue)));
-            } catch (Exception ex) { String errorMsg = "Exception occurred: " + ex.getMessage(); msg.log(errorMsg); }
-        }).exceptionally(ex -> { String errorMsg = "Query Exception occurred: " + ex.getMessage();  msg.log(errorMsg); return null; });
+        return metrics.time(queryType, () -> coalescer.update(databaseName, collectionName, documentKey(fieldName, value), Filters.eq(fieldName, value),
+                new Document("$set", new Document(fieldToSet, newValue))))
+                .exceptionally(ex -> { String errorMsg = "Query Exception occurred: " + ex.getMessage();  msg.log(errorMsg); return null; });
+    }
+
+    /**
+     * Atomically increments a numeric field in a document in the specified collection asynchronously.
+     * Unlike a get followed by a set, concurrent increments are never lost.
+     * The increment is sent in the next batch of writes to the collection, merged with the pending changes to the same document.
+     *
+     * @param databaseName   the name of the database
+     * @param collectionName the name of the collection
+     * @param fieldName      the name of the field to search
+     * @param value          the value to search for in the field
+     * @param fieldToIncrement the name of the numeric field to increment
+     * @param delta          the amount to add to the field
+     * @return a CompletableFuture that completes when the field is updated.
+     *         Completes exceptionally if the update could not be performed.
+     */
+    public CompletableFuture<Void> incrementFieldValue(String databaseName, String collectionName, String fieldName, Object value, String fieldToIncrement, Number delta) {
+        CompletableFuture<Void> result = metrics.time("incrementFieldValue", () -> coalescer.update(databaseName, collectionName,
+                documentKey(fieldName, value), Filters.eq(fieldName, value), new Document("$inc", new Document(fieldToIncrement, delta))));
+        result.exceptionally(ex -> { String errorMsg = "Query Exception occurred: " + ex.getMessage();  msg.log(errorMsg); return null; });
+        return result;
     }
 
     /**
-     * Asynchronously fetches a sorted list of top players based on kills.
+     * Applies a $set/$inc/$max update to a document in the specified collection asynchronously, if it also meets a condition.
+     * The update is sent in the next batch of writes to the collection, merged with the pending updates of the same document
+     * under the same condition.
+     *
+     * @param databaseName   the name of the database
+     * @param collectionName the name of the collection
+     * @param fieldName      the name of the field to search
+     * @param value          the value to search for in the field
+     * @param condition      the condition the document must meet as well, or null if there is none
+     * @param conditionKey   identifies the condition, so that only updates under the same condition are merged, or null if there is none
+     * @param update         the update, made of $set, $inc and $max operators only
+     * @return a CompletableFuture that completes when the update is applied, or when it's known that the document doesn't meet the condition.
+     *         Completes exceptionally if the update could not be performed.
+     */
+    public CompletableFuture<Void> updateFields(String databaseName, String collectionName, String fieldName, Object value,
+                                               Bson condition, String conditionKey, Document update) {
+        Bson filter = condition == null ? Filters.eq(fieldName, value) : Filters.and(Filters.eq(fieldName, value), condition);
+        String documentKey = conditionKey == null ? documentKey(fieldName, value) : documentKey(fieldName, value) + "|" + conditionKey;
+        CompletableFuture<Void> result = metrics.time("updateFields", () -> coalescer.update(databaseName, collectionName, documentKey, filter, update));
+        result.exceptionally(ex -> { String errorMsg = "Query Exception occurred: " + ex.getMessage();  msg.log(errorMsg); return null; });
+        return result;
+    }
+
+    /**
+     * Updates a document in the specified collection asynchronously, in the next batch of writes to the collection.
+     *
+     * @param databaseName   the name of the database
+     * @param collectionName the name of the collection
+     * @param filter         the query filter identifying the document
+     * @param update         the update to apply
+     * @return a CompletableFuture that completes when the document is updated.
+     *         Completes exceptionally if the update could not be performed.
+     */
+    public CompletableFuture<Void> updateDocument(String databaseName, String collectionName, Bson filter, Bson update) {
+        CompletableFuture<Void> result = metrics.time("updateDocument", () -> coalescer.write(databaseName, collectionName, null,
+                new UpdateOneModel<Document>(filter, update)));
+        result.exceptionally(ex -> { String errorMsg = "Query Exception occurred: " + ex.getMessage();  msg.log(errorMsg); return null; });
+        return result;
+    }
+
+    /**
+     * Updates a document in the specified collection asynchronously, optionally inserting it if it doesn't exist.
+     * The update is applied atomically by the server, so a conditional filter makes it a compare-and-set.
+     *
+     * @param databaseName   the name of the database
+     * @param collectionName the name of the collection
+     * @param filter         the query filter identifying the document
+     * @param update         the update to apply
+     * @param upsert         whether to insert the document if the filter matches none
+     * @return a CompletableFuture containing the result of the update, with the matched and modified counts.
+     *         Completes exceptionally if the update could not be performed.
+     */
+    public CompletableFuture<UpdateResult> updateDocument(String databaseName, String collectionName, Bson filter, Bson update, boolean upsert) {
+        CompletableFuture<UpdateResult> result = metrics.time("updateDocument", () -> guard.write("updateDocument", () -> supplyAsync(() ->
+                mongoClient.getDatabase(databaseName).getCollection(collectionName).updateOne(filter, update, new UpdateOptions().upsert(upsert)))));
+        result.exceptionally(ex -> { String errorMsg = "Query Exception occurred: " + ex.getMessage();  msg.log(errorMsg); return null; });
+        return result;
+    }
+
+    /**
+     * Updates every document matching a filter in the specified collection asynchronously, in a single updateMany.
+     *
+     * @param databaseName   the name of the database
+     * @param collectionName the name of the collection
+     * @param filter         the query filter identifying the documents
+     * @param update         the update to apply
+     * @return a CompletableFuture containing the result of the update, with the matched and modified counts.
+     *         Completes exceptionally if the update could not be performed.
+     */
+    public CompletableFuture<UpdateResult> updateDocuments(String databaseName, String collectionName, Bson filter, Bson update) {
+        CompletableFuture<UpdateResult> result = metrics.time("updateDocuments", () -> guard.write("updateDocuments", () -> supplyAsync(() ->
+                mongoClient.getDatabase(databaseName).getCollection(collectionName).updateMany(filter, update))));
+        result.exceptionally(ex -> { String errorMsg = "Query Exception occurred: " + ex.getMessage();  msg.log(errorMsg); return null; });
+        return result;
+    }
+
+    /**
+     * Updates a document in the specified collection and returns it as it is after the update, asynchronously.
+     * Both happen atomically in a single round trip, so the returned values are the ones this update produced.
+     *
+     * @param databaseName   the name of the database
+     * @param collectionName the name of the collection
+     * @param filter         the query filter identifying the document
+     * @param update         the update to apply
+     * @param projection     the fields to retrieve
+     * @return a CompletableFuture containing the updated document, or null if the filter matches none.
+     *         Completes exceptionally if the update could not be performed.
+     */
+    public CompletableFuture<Document> updateAndGetDocument(String databaseName, String collectionName, Bson filter, Bson update, Bson projection) {
+        FindOneAndUpdateOptions options = new FindOneAndUpdateOptions().returnDocument(ReturnDocument.AFTER).projection(projection);
+        CompletableFuture<Document> result = metrics.time("updateAndGetDocument", () -> guard.write("updateAndGetDocument", () -> supplyAsync(() ->
+                mongoClient.getDatabase(databaseName).getCollection(collectionName).findOneAndUpdate(filter, update, options))));
+        result.exceptionally(ex -> { String errorMsg = "Query Exception occurred: " + ex.getMessage();  msg.log(errorMsg); return null; });
+        return result;
+    }
+
+    /**
+     * Sends a batch of writes to the specified collection in a single round trip, asynchronously.
+     * The writes are unordered, so a failing write doesn't prevent the others from being applied.
+     *
+     * @param databaseName   the name of the database
+     * @param collectionName the name of the collection
+     * @param writes         the writes to apply
+     * @return a CompletableFuture containing the result of the batch.
+     *         Completes exceptionally if any of the writes could not be performed.
+     */
+    public CompletableFuture<BulkWriteResult> bulkWrite(String databaseName, String collectionName, List<? extends WriteModel<Document>> writes) {
+        CompletableFuture<BulkWriteResult> result = metrics.time("bulkWrite", () -> guard.write("bulkWrite", () -> supplyAsync(() ->
+                mongoClient.getDatabase(databaseName).getCollection(collectionName).bulkWrite(writes, new BulkWriteOptions().ordered(false)))));
+        result.exceptionally(ex -> { String errorMsg = "Query Exception occurred: " + ex.getMessage();  msg.log(errorMsg); return null; });
+        return result;
+    }
+
+    /**
+     * Updates a document in the specified collection and returns it, inserting it if it doesn't exist, asynchronously.
+     * Both cases take a single round trip. It's a write, which may create the document, so it goes through the write
+     * bulkhead and is never served from the read cache.
+     *
+     * @param databaseName   the name of the database
+     * @param collectionName the name of the collection
+     * @param filter         the query filter identifying the document
+     * @param update         the update to apply, usually a combination of $set and $setOnInsert
+     * @param projection     the fields to retrieve
+     * @return a CompletableFuture containing the updated or inserted document.
+     *         Completes exceptionally if the operation could not be performed.
+     */
+    public CompletableFuture<Document> findOrInsertDocument(String databaseName, String collectionName, Bson filter, Bson update, Bson projection) {
+        FindOneAndUpdateOptions options = new FindOneAndUpdateOptions().upsert(true).returnDocument(ReturnDocument.AFTER).projection(projection);
+        CompletableFuture<Document> result = metrics.time("findOrInsertDocument", () -> guard.write("findOrInsertDocument", () -> supplyAsync(() ->
+                mongoClient.getDatabase(databaseName).getCollection(collectionName).findOneAndUpdate(filter, update, options))));
+        result.exceptionally(ex -> { String errorMsg = "Query Exception occurred: " + ex.getMessage();  msg.log(errorMsg); return null; });
+        return result;
+    }
+
+    /**
+     * Creates an index on the specified collection asynchronously, if it doesn't exist yet.
+     *
+     * @param databaseName   the name of the database
+     * @param collectionName the name of the collection
+     * @param keys           the keys of the index
+     * @return a CompletableFuture that completes when the index exists.
+     */
+    public CompletableFuture<Void> createIndex(String databaseName, String collectionName, Bson keys) {
+        CompletableFuture<Void> result = metrics.time("createIndex", () -> guard.write("createIndex", () -> runAsync(() ->
+                mongoClient.getDatabase(databaseName).getCollection(collectionName).createIndex(keys))));
+        result.exceptionally(ex -> { String errorMsg = "Query Exception occurred: " + ex.getMessage();  msg.log(errorMsg); return null; });
+        return result;
+    }
+
+    /**
+     * Lists the names of the collections of the specified database asynchronously.
+     *
+     * @param databaseName the name of the database
+     * @return a CompletableFuture containing the names of the collections.
+     *         Completes exceptionally if the collections could not be listed.
+     */
+    public CompletableFuture<List<String>> listCollectionNames(String databaseName) {
+        String queryType = "listCollectionNames";
+        CompletableFuture<List<String>> result = metrics.time(queryType, () -> guard.scan(queryType, null, () -> supplyAsync(() ->
+                mongoClient.getDatabase(databaseName).listCollectionNames().into(new ArrayList<>()))));
+        result.exceptionally(ex -> { String errorMsg = "Query Exception occurred: " + ex.getMessage();  msg.log(errorMsg); return null; });
+        return result;
+    }
+
+    /**
+     * Asynchronously fetches a sorted list of top players based on kills, restricted to their uuid, name and kills.
+     * In the single collection layout this is a single indexed sort/limit query,
+     * in the legacy layout every player collection is streamed through a heap holding the best {@code size} players,
+     * so no more than {@code size} documents are ever held in memory.
      *
      * @param size The maximum number of top players to retrieve.
      * @return A CompletableFuture containing a sorted list of top players' documents based on special kills.
      *         The CompletableFuture may complete exceptionally if an error occurs during the operation.
      */
     public CompletableFuture<List<Document>> fetchSortedTopPlayersAsync(int size) {
-        CompletableFuture<List<Document>> futureResult = new CompletableFuture<>();
+        return metrics.time("fetchSortedTopPlayersAsync", () -> guard.scan("fetchSortedTopPlayersAsync", "fetchSortedTopPlayersAsync:" + size,
+                () -> fetchSortedTopPlayers(size)));
+    }
 
-        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
-            try {
-                MongoDatabase database = mongoClient.getDatabase("mbl-players");
-                List<Document> topPlayers = new ArrayList<>();
-                for (String collectionName : database.listCollectionNames()) {
-                    if (collectionName.equals("system.indexes")) {
-                        continue;
-                    }
-                    MongoCollection<Document> collection = database.getCollection(collectionName);
-                    FindIterable<Document> playerDataDocuments = collection.find(new Document("type", "playerdata"));
-                    try (MongoCursor<Document> cursor = playerDataDocuments.iterator()) {
-                        while (cursor.hasNext()) {
-                            topPlayers.add(cursor.next());
-                        }
-                    }
-                }
-                topPlayers.sort(Comparator.comparingInt(doc -> -doc.getInteger("kills")));
+    private CompletableFuture<List<Document>> fetchSortedTopPlayers(int size) {
+        return supplyAsync(() -> {
+            Bson projection = Projections.include("uuid", "name", "kills");
+            MongoDatabase database = mongoClient.getDatabase(StorageLayout.DATABASE_NAME);
+            if (plugin.getStorageLayout() == StorageLayout.SINGLE_COLLECTION) {
+                return database.getCollection(StorageLayout.PLAYERS_COLLECTION).find().projection(projection)
+                        .sort(Sorts.descending("kills")).limit(size).into(new ArrayList<>());
+            }
 
-                if (topPlayers.size() > size) {
-                    topPlayers = topPlayers.subList(0, size);
+            TopKills topPlayers = new TopKills(size);
+            for (String collectionName : database.listCollectionNames()) {
+                if (!StorageLayout.isLegacyPlayerCollection(collectionName)) {
+                    continue;
+                }
+                FindIterable<Document> playerDataDocuments = database.getCollection(collectionName)
+                        .find(new Document("type", "playerdata")).projection(projection);
+                try (MongoCursor<Document> cursor = playerDataDocuments.iterator()) {
+                    while (cursor.hasNext()) {
+                        topPlayers.offer(cursor.next());
+                    }
                 }
-                futureResult.complete(topPlayers);
-            } catch (Exception e) {
-                futureResult.completeExceptionally(e);
             }
+            return topPlayers.sorted();
         });
-
-        return futureResult;
     }
 
+    /**
+     * Asynchronously streams the playerdata document of every player, restricted to a projection, whatever the layout.
+     * The documents are handed to the consumer one by one on a storage thread, in no particular order.
+     *
+     * @param projection the fields to retrieve
+     * @param onDocument receives the playerdata document of every player
+     * @return A CompletableFuture containing the number of documents handed to the consumer.
+     *         The CompletableFuture may complete exceptionally if an error occurs during the operation,
+     *         the documents handed over until then stay valid.
+     */
+    public CompletableFuture<Integer> streamPlayerDataAsync(Bson projection, Consumer<Document> onDocument) {
+        String queryType = "streamPlayerDataAsync";
+        return metrics.time(queryType, () -> guard.scan(queryType, null, () -> supplyAsync(() -> {
+            MongoDatabase database = mongoClient.getDatabase(StorageLayout.DATABASE_NAME);
+            List<FindIterable<Document>> queries = new ArrayList<>();
+            if (plugin.getStorageLayout() == StorageLayout.SINGLE_COLLECTION) {
+                queries.add(database.getCollection(StorageLayout.PLAYERS_COLLECTION).find());
+            } else {
+                for (String collectionName : database.listCollectionNames()) {
+                    if (StorageLayout.isLegacyPlayerCollection(collectionName)) {
+                        queries.add(database.getCollection(collectionName).find(new Document("type", "playerdata")));
+                    }
+                }
+            }
+            int count = 0;
+            for (FindIterable<Document> query : queries) {
+                try (MongoCursor<Document> cursor = query.projection(projection).iterator()) {
+                    while (cursor.hasNext()) {
+                        onDocument.accept(cursor.next());
+                        count++;
+                    }
+                }
+            }
+            return count;
+        })));
+    }
 
     /**
      * returns the MongoDB client instance used by the MongoWrapper.
@@ -182,12 +489,119 @@ public class MongoWrapper {
     }
 
     /**
-     * Closes the MongoDB client.
+     * returns the latency and throughput metrics of the operations performed by the MongoWrapper.
+     *
+     * @return The metrics of the MongoWrapper.
+     */
+    public StorageMetrics getMetrics(){
+        return metrics;
+    }
+
+    /**
+     * returns the deadlines, bulkheads and circuit breaker the operations of the MongoWrapper go through.
+     *
+     * @return The storage guard of the MongoWrapper.
+     */
+    public StorageGuard getGuard(){
+        return guard;
+    }
+
+    /**
+     * Sends the writes waiting for their batch right away.
+     *
+     * @return a CompletableFuture that completes when every write submitted so far is acknowledged or failed
+     */
+    public CompletableFuture<Void> drainWrites() {
+        return coalescer.drain();
+    }
+
+    /**
+     * Sends the writes waiting for their batch, then lets the pending operations finish, for up to 10 seconds each,
+     * then closes the MongoDB client. The caller should wait for the returned future, the plugin classes must stay
+     * loaded until the pending writes are sent.
      *
      * @return a CompletableFuture that completes when the client is closed
      */
     public CompletableFuture<Void> close() {
-        return CompletableFuture.runAsync(() -> mongoClient.close());
+        CompletableFuture<Void> drained = coalescer.drain();
+        // The pending batches need the storage executor, so the shutdown waits on a thread of its own
+        return CompletableFuture.runAsync(() -> {
+            try {
+                drained.get(10, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                msg.log("&cSome batched writes were still pending when the connection was closed.");
+            }
+            coalescer.close();
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                    msg.log("&cSome database operations were still running when the connection was closed.");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mongoClient.close();
+            guard.close();
+        }, task -> {
+            Thread thread = new Thread(task, "mobleaderboard-storage-shutdown");
+            // A hung database must not keep the JVM from exiting
+            thread.setDaemon(true);
+            thread.start();
+        });
+    }
+
+    /**
+     * Sends a batch of writes collected by the {@link WriteCoalescer} as a single ordered bulkWrite.
+     *
+     * @param databaseName   the name of the database
+     * @param collectionName the name of the collection
+     * @param writes         the writes, applied in order
+     * @return a CompletableFuture containing the result of the batch
+     */
+    private CompletableFuture<BulkWriteResult> sendBatch(String databaseName, String collectionName, List<WriteModel<Document>> writes) {
+        return metrics.time("groupCommit", () -> guard.batch("groupCommit", () -> supplyAsync(() ->
+                mongoClient.getDatabase(databaseName).getCollection(collectionName).bulkWrite(writes, new BulkWriteOptions().ordered(true)))));
+    }
+
+    /**
+     * @return the key identifying a document within its collection, for the merging of its pending updates
+     */
+    private static String documentKey(String fieldName, Object value) {
+        return fieldName + "=" + value;
+    }
+
+    /**
+     * Runs a database operation on the storage executor.
+     *
+     * @param operation the operation to run
+     * @return a CompletableFuture that completes when the operation is done,
+     *         exceptionally with a RejectedExecutionException if the executor is saturated.
+     */
+    private CompletableFuture<Void> runAsync(Runnable operation) {
+        try {
+            return CompletableFuture.runAsync(operation, executor);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<Void> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(e);
+            return rejected;
+        }
+    }
+
+    /**
+     * Runs a database operation on the storage executor.
+     *
+     * @param operation the operation to run
+     * @return a CompletableFuture containing the result of the operation,
+     *         completed exceptionally with a RejectedExecutionException if the executor is saturated.
+     */
+    private <T> CompletableFuture<T> supplyAsync(Supplier<T> operation) {
+        try {
+            return CompletableFuture.supplyAsync(operation, executor);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<T> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(e);
+            return rejected;
+        }
     }
 
     /**
@@ -204,6 +618,7 @@ public class MongoWrapper {
         }
         msg.log("&cMongoWrapperError on &b" + queryType + "&c, reference &f-> &e" + errorParams);
         msg.log("&f ↳  &c&n" + errorMessage);
+        metrics.failure(queryType);
     }
 
 }
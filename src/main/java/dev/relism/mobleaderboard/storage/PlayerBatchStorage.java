@@ -0,0 +1,97 @@
+package dev.relism.mobleaderboard.storage;
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Reads the data of many players from MongoDB. In the single collection layout every batch of players
+ * is read with one $in query, in the legacy layout every player has a collection of their own,
+ * so it takes one query per player. Either way the queries only bring back the requested fields.
+ * They run on a bounded number of concurrent chains, each one holding a single slot of the read bulkhead,
+ * so a read of many players neither runs one round trip after the other nor floods the bulkhead.
+ */
+public class PlayerBatchStorage implements BatchStorage {
+    private final MongoWrapper mongoWrapper;
+    private final StorageLayout layout;
+    private final int batchSize;
+    private final int parallelism;
+
+    /**
+     * Constructs a new PlayerBatchStorage.
+     *
+     * @param mongoWrapper The MongoWrapper running the queries.
+     * @param layout       The layout of the player data.
+     * @param batchSize    The maximum number of players read by a single query.
+     * @param parallelism  The maximum number of queries of a read in flight at once.
+     */
+    public PlayerBatchStorage(MongoWrapper mongoWrapper, StorageLayout layout, int batchSize, int parallelism) {
+        this.mongoWrapper = mongoWrapper;
+        this.layout = layout;
+        this.batchSize = Math.max(1, batchSize);
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    @Override
+    public CompletableFuture<Integer> streamFieldValues(Collection<UUID> playerUUIDs, String documentType, BiConsumer<UUID, Document> onDocument, String... fieldsToGet) {
+        List<Supplier<CompletableFuture<Integer>>> queries = new ArrayList<>();
+        if (layout == StorageLayout.SINGLE_COLLECTION) {
+            Bson projection = Projections.include(fieldsToGet);
+            List<String> batch = new ArrayList<>(Math.min(batchSize, playerUUIDs.size()));
+            for (UUID playerUUID : playerUUIDs) {
+                batch.add(playerUUID.toString());
+                if (batch.size() == batchSize) {
+                    queries.add(batchQuery(batch, projection, onDocument));
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                queries.add(batchQuery(batch, projection, onDocument));
+            }
+        } else {
+            Bson projection = Projections.fields(Projections.include(fieldsToGet), Projections.excludeId());
+            for (UUID playerUUID : playerUUIDs) {
+                queries.add(() -> mongoWrapper.streamDocuments(StorageLayout.DATABASE_NAME, playerUUID.toString(),
+                        Filters.eq("type", documentType), projection, document -> onDocument.accept(playerUUID, document)));
+            }
+        }
+        return runConcurrently(queries);
+    }
+
+    private Supplier<CompletableFuture<Integer>> batchQuery(List<String> batch, Bson projection, BiConsumer<UUID, Document> onDocument) {
+        // Like in PlayerStorage, a player has a single document in this layout, found by its UUID alone
+        Bson filter = Filters.in("_id", batch);
+        return () -> mongoWrapper.streamDocuments(StorageLayout.DATABASE_NAME, StorageLayout.PLAYERS_COLLECTION, filter, projection,
+                document -> onDocument.accept(UUID.fromString(String.valueOf(document.remove("_id"))), document));
+    }
+
+    /**
+     * Runs queries on at most {@link #parallelism} chains, each one starting its next query once the previous one is done.
+     * A failed query fails the whole read, but the queries already started still hand over their documents.
+     *
+     * @return a CompletableFuture containing the total number of documents handed over
+     */
+    private CompletableFuture<Integer> runConcurrently(List<Supplier<CompletableFuture<Integer>>> queries) {
+        AtomicInteger count = new AtomicInteger();
+        List<CompletableFuture<Void>> chains = new ArrayList<>(parallelism);
+        for (int first = 0; first < Math.min(parallelism, queries.size()); first++) {
+            CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+            for (int i = first; i < queries.size(); i += parallelism) {
+                Supplier<CompletableFuture<Integer>> query = queries.get(i);
+                chain = chain.thenCompose(v -> query.get()).thenAccept(count::addAndGet);
+            }
+            chains.add(chain);
+        }
+        return CompletableFuture.allOf(chains.toArray(new CompletableFuture[0])).thenApply(v -> count.get());
+    }
+}
@@ -1,19 +1,35 @@
 package dev.relism.mobleaderboard.storage;
 
-import com.mongodb.client.FindIterable;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.Updates;
 import dev.relism.mobleaderboard.Mobleaderboard;
 import org.bson.Document;
+import org.bson.conversions.Bson;
 import org.bukkit.entity.Player;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 /**
  * A storage class for managing player-specific data asynchronously.
+ * Depending on the configured {@link StorageLayout}, the data lives either in the player's own collection
+ * or in their document of the shared "players" collection.
+ * The operations of a player run in submission order through the {@link StorageLanes}: the writes the {@link WriteCoalescer}
+ * batches are only ordered as they are queued, while the reads and the read-modify-writes wait for every earlier write to be acknowledged.
  */
 public class PlayerStorage implements Storage {
     private final MongoWrapper mongoWrapper;
-    private final String databaseName = "mbl-players";
+    private final String databaseName = StorageLayout.DATABASE_NAME;
+    private final StorageLayout layout;
+    private final StorageLanes lanes;
 
     private final String playerUUID;
 
@@ -25,20 +41,33 @@ public class PlayerStorage implements Storage {
      */
     public PlayerStorage(Mobleaderboard plugin, Player player) {
         this.mongoWrapper = plugin.getMongoWrapperInstance();
+        this.layout = plugin.getStorageLayout();
+        this.lanes = plugin.getStorageLanes();
         this.playerUUID = String.valueOf(player.getUniqueId()); // Assuming getUniqueId() retrieves the UUID
     }
 
     /**
-     * Checks if a player data exists in the MongoDB database.
+     * Constructs a PlayerStorage instance for a player identified only by UUID,
+     * which also works for players that are currently offline.
      *
-     * @return true if a document with type "playerdata" exists for the player, false otherwise.
+     * @param plugin     the Plugin instance providing access to the MongoWrapper
+     * @param playerUUID the UUID of the player whose data will be managed by this storage
      */
-    public boolean playerDataExists() {
-        // Check if the document with type "mobdata" exists for the player
-        return findDocuments("type", "playerdata")
-                .thenApply(findIterable -> findIterable.into(new ArrayList<>()))
-                .thenApply(documents -> documents.size() > 0)
-                .join();
+    public PlayerStorage(Mobleaderboard plugin, UUID playerUUID) {
+        this.mongoWrapper = plugin.getMongoWrapperInstance();
+        this.layout = plugin.getStorageLayout();
+        this.lanes = plugin.getStorageLanes();
+        this.playerUUID = playerUUID.toString();
+    }
+
+    /**
+     * Checks if a player data exists in the MongoDB database asynchronously.
+     *
+     * @return a CompletableFuture containing true if a document with type "playerdata" exists for the player, false otherwise.
+     */
+    @Override
+    public CompletableFuture<Boolean> playerDataExists() {
+        return findDocuments("type", "playerdata").thenApply(documents -> documents != null && !documents.isEmpty());
     }
 
     /**
@@ -50,7 +79,7 @@ public class PlayerStorage implements Storage {
      */
     @Override
     public CompletableFuture<Object> getFieldValue(String documentType, String fieldToGet) {
-        return mongoWrapper.getFieldValue(databaseName, playerUUID, "type", documentType, fieldToGet);
+        return inLane(() -> mongoWrapper.getFieldValue(databaseName, collectionName(), filterField(), filterValue(documentType), fieldToGet));
     }
 
     /**
@@ -63,18 +92,239 @@ public class PlayerStorage implements Storage {
      */
     @Override
     public CompletableFuture<Void> setFieldValue(String documentType, String fieldToSet, Object newValue) {
-        return mongoWrapper.setFieldValue(databaseName, playerUUID, "type", documentType, fieldToSet, newValue);
+        return handOffInLane(() -> mongoWrapper.setFieldValue(databaseName, collectionName(), filterField(), filterValue(documentType), fieldToSet, newValue));
+    }
+
+    /**
+     * Atomically increments a numeric field in a player's document asynchronously.
+     *
+     * @param documentType     the identifier of the document
+     * @param fieldToIncrement the name of the numeric field to increment
+     * @param delta            the amount to add to the field
+     * @return a CompletableFuture that completes when the field is updated
+     */
+    @Override
+    public CompletableFuture<Void> incrementFieldValue(String documentType, String fieldToIncrement, Number delta) {
+        return handOffInLane(() -> mongoWrapper.incrementFieldValue(databaseName, collectionName(), filterField(), filterValue(documentType), fieldToIncrement, delta));
+    }
+
+    /**
+     * Increments a set of numeric fields and epoch buckets in a player's document with plain updates, sent together
+     * in the next batch of writes, so any MongoDB version applies them and they merge with the other pending increments
+     * of the player. The numeric fields are incremented and raised atomically together by a single $inc and $max. Every bucket takes two
+     * conditional updates: one replaces an older or missing bucket with an empty bucket of the epoch, and is a no-op
+     * once the bucket is there, the other one adds the delta to the bucket if it belongs to the epoch.
+     *
+     * @param documentType     the identifier of the document
+     * @param increments       the amounts to add, by field name
+     * @param maxima           the values to raise fields to, by field name, a missing field being set to its value
+     * @param bucketIncrements the increments of the epoch buckets, applied in order
+     * @return a CompletableFuture that completes when the document is updated
+     */
+    @Override
+    public CompletableFuture<Void> incrementFieldValues(String documentType, Map<String, Integer> increments, Map<String, Long> maxima, List<BucketIncrement> bucketIncrements) {
+        return handOffInLane(() -> {
+            String collectionName = collectionName();
+            Object filterValue = filterValue(documentType);
+            List<CompletableFuture<Void>> writes = new ArrayList<>();
+            Document update = new Document();
+            if (!increments.isEmpty()) {
+                update.put("$inc", new Document(new LinkedHashMap<String, Object>(increments)));
+            }
+            if (!maxima.isEmpty()) {
+                update.put("$max", new Document(new LinkedHashMap<String, Object>(maxima)));
+            }
+            if (!update.isEmpty()) {
+                writes.add(mongoWrapper.updateFields(databaseName, collectionName, filterField(), filterValue, null, null, update));
+            }
+            for (BucketIncrement increment : bucketIncrements) {
+                String epochField = increment.getField() + ".epoch";
+                long epoch = increment.getEpoch();
+                writes.add(mongoWrapper.updateFields(databaseName, collectionName, filterField(), filterValue,
+                        Filters.or(Filters.lt(epochField, epoch), Filters.exists(epochField, false)), epochField + "<" + epoch,
+                        new Document("$set", new Document(increment.getField(), new Document("epoch", epoch).append("kills", 0)))));
+                writes.add(mongoWrapper.updateFields(databaseName, collectionName, filterField(), filterValue,
+                        Filters.eq(epochField, epoch), epochField + "=" + epoch,
+                        new Document("$inc", new Document(increment.getField() + ".kills", increment.getDelta()))));
+            }
+            return CompletableFuture.allOf(writes.toArray(new CompletableFuture[0]));
+        });
+    }
+
+    /**
+     * Atomically increments a numeric field in a player's document with a findOneAndUpdate $inc,
+     * which returns the value this increment produced.
+     *
+     * @param documentType     the identifier of the document
+     * @param fieldToIncrement the name of the numeric field to increment, treated as 0 if missing
+     * @param delta            the amount to add to the field
+     * @return a CompletableFuture containing the value of the field after this increment, or null if the document doesn't exist
+     */
+    @Override
+    public CompletableFuture<Number> incrementAndGet(String documentType, String fieldToIncrement, Number delta) {
+        return inLane(() -> mongoWrapper.updateAndGetDocument(databaseName, collectionName(), Filters.eq(filterField(), filterValue(documentType)),
+                        Updates.inc(fieldToIncrement, delta), Projections.include(fieldToIncrement))
+                .thenApply(document -> document == null ? null : (Number) document.get(fieldToIncrement)));
+    }
+
+    /**
+     * Atomically raises a numeric field in a player's document with a $max.
+     *
+     * @param documentType the identifier of the document
+     * @param fieldToSet   the name of the numeric field, set to the value if missing
+     * @param value        the candidate value
+     * @return a CompletableFuture containing true if the field was raised, false if it was already as great or the document doesn't exist
+     */
+    @Override
+    public CompletableFuture<Boolean> setIfGreater(String documentType, String fieldToSet, Number value) {
+        return inLane(() -> mongoWrapper.updateDocument(databaseName, collectionName(), Filters.eq(filterField(), filterValue(documentType)),
+                        Updates.max(fieldToSet, value), false)
+                .thenApply(result -> result.getModifiedCount() > 0));
+    }
+
+    /**
+     * Atomically sets a field in a player's document with an update whose filter also matches the expected value.
+     *
+     * @param documentType  the identifier of the document
+     * @param fieldToSet    the name of the field to update
+     * @param expectedValue the value the field must hold, null matching a missing field too
+     * @param newValue      the new value to set for the field
+     * @return a CompletableFuture containing true if the field held the expected value and was set, false otherwise
+     */
+    @Override
+    public CompletableFuture<Boolean> compareAndSet(String documentType, String fieldToSet, Object expectedValue, Object newValue) {
+        Bson filter = Filters.and(Filters.eq(filterField(), filterValue(documentType)), Filters.eq(fieldToSet, expectedValue));
+        return inLane(() -> mongoWrapper.updateDocument(databaseName, collectionName(), filter, Updates.set(fieldToSet, newValue), false)
+                .thenApply(result -> result.getMatchedCount() > 0));
+    }
+
+    /**
+     * Atomically appends an element to an array field of a player's document with a $push.
+     *
+     * @param documentType the identifier of the document
+     * @param arrayField   the name of the array field, created if missing
+     * @param element      the element to append
+     * @return a CompletableFuture that completes when the document is updated
+     */
+    @Override
+    public CompletableFuture<Void> push(String documentType, String arrayField, Object element) {
+        return handOffInLane(() -> mongoWrapper.updateDocument(databaseName, collectionName(), Filters.eq(filterField(), filterValue(documentType)), Updates.push(arrayField, element)));
+    }
+
+    /**
+     * Sets fields of a player's document with a single upserting update.
+     *
+     * @param documentType the identifier of the document
+     * @param fields       the fields to set
+     * @return a CompletableFuture that completes when the document is written
+     */
+    @Override
+    public CompletableFuture<Void> upsert(String documentType, Document fields) {
+        List<Bson> updates = new ArrayList<>();
+        updates.add(new Document("$set", fields));
+        if (layout == StorageLayout.SINGLE_COLLECTION) {
+            // In the legacy layout the type is the filter, so the upsert sets it already
+            updates.add(new Document("$setOnInsert", new Document("type", documentType)));
+        }
+        return inLane(() -> mongoWrapper.updateDocument(databaseName, collectionName(), Filters.eq(filterField(), filterValue(documentType)), Updates.combine(updates), true)
+                .thenApply(result -> null));
+    }
+
+    /**
+     * Loads a player's document with a single findOneAndUpdate, upserting it if it doesn't exist.
+     *
+     * @param documentType    the identifier of the document
+     * @param setFields       the fields written whether or not the document exists
+     * @param defaultFields   the fields only written when the document is created
+     * @param projectedFields the fields to retrieve
+     * @return a CompletableFuture containing the document, restricted to the projected fields
+     */
+    @Override
+    public CompletableFuture<Document> loadOrInsertDocument(String documentType, Document setFields, Document defaultFields, String... projectedFields) {
+        Document insertedFields = new Document(defaultFields);
+        if (layout == StorageLayout.SINGLE_COLLECTION) {
+            // In the legacy layout the type is the filter, so the upsert sets it already
+            insertedFields.put("type", documentType);
+        }
+        List<Bson> updates = new ArrayList<>();
+        if (!setFields.isEmpty()) {
+            updates.add(new Document("$set", setFields));
+        }
+        if (!insertedFields.isEmpty()) {
+            updates.add(new Document("$setOnInsert", insertedFields));
+        }
+        return inLane(() -> mongoWrapper.findOrInsertDocument(databaseName, collectionName(), Filters.eq(filterField(), filterValue(documentType)),
+                Updates.combine(updates), Projections.include(projectedFields)));
+    }
+
+    /**
+     * Appends elements to an array field of a player's document, skipping the elements whose ID is already in the array.
+     * Every element takes a $push whose filter requires its ID to be missing, all of them sent in the next batch of writes.
+     *
+     * @param documentType the identifier of the document
+     * @param arrayField   the name of the array field, created if missing
+     * @param idField      the name of the field identifying an element
+     * @param elements     the elements to append
+     * @return a CompletableFuture that completes when the document is updated
+     */
+    @Override
+    public CompletableFuture<Void> pushUnique(String documentType, String arrayField, String idField, List<Document> elements) {
+        return handOffInLane(() -> {
+            List<CompletableFuture<Void>> writes = new ArrayList<>(elements.size());
+            for (UpdateOneModel<Document> write : pushUniqueWrites(Filters.eq(filterField(), filterValue(documentType)), arrayField, idField, elements)) {
+                writes.add(mongoWrapper.updateDocument(databaseName, collectionName(), write.getFilter(), write.getUpdate()));
+            }
+            return CompletableFuture.allOf(writes.toArray(new CompletableFuture[0]));
+        });
+    }
+
+    /**
+     * Removes the elements with the given IDs from an array field of a player's document with a single $pull.
+     *
+     * @param documentType the identifier of the document
+     * @param arrayField   the name of the array field
+     * @param idField      the name of the field identifying an element
+     * @param ids          the IDs of the elements to remove
+     * @return a CompletableFuture that completes when the document is updated
+     */
+    @Override
+    public CompletableFuture<Void> pullByIds(String documentType, String arrayField, String idField, Collection<String> ids) {
+        Bson update = Updates.pullByFilter(new Document(arrayField, new Document(idField, new Document("$in", new ArrayList<>(ids)))));
+        return handOffInLane(() -> mongoWrapper.updateDocument(databaseName, collectionName(), Filters.eq(filterField(), filterValue(documentType)), update));
+    }
+
+    /**
+     * Builds the updates appending elements to an array field of a document, skipping the elements whose ID is already in it.
+     * Every element takes a $push whose filter requires its ID to be missing from the array, so repeating them is harmless.
+     *
+     * @param filter     the query filter identifying the document
+     * @param arrayField the name of the array field, created if missing
+     * @param idField    the name of the field identifying an element
+     * @param elements   the elements to append
+     * @return the updates, to apply in order
+     */
+    public static List<UpdateOneModel<Document>> pushUniqueWrites(Bson filter, String arrayField, String idField, List<Document> elements) {
+        List<UpdateOneModel<Document>> writes = new ArrayList<>(elements.size());
+        for (Document element : elements) {
+            writes.add(new UpdateOneModel<Document>(Filters.and(filter, Filters.ne(arrayField + "." + idField, element.get(idField))),
+                    Updates.push(arrayField, element)));
+        }
+        return writes;
     }
 
     /**
      * Inserts a document into the player's collection asynchronously.
+     * In the single collection layout, the document is keyed by the player's UUID.
      *
      * @param document the document to insert
      * @return a CompletableFuture that completes when the document is inserted
      */
     @Override
     public CompletableFuture<Void> insertDocument(Document document) {
-        return mongoWrapper.insertDocument(databaseName, playerUUID, document);
+        if (layout == StorageLayout.SINGLE_COLLECTION) {
+            document.put("_id", playerUUID);
+        }
+        return handOffInLane(() -> mongoWrapper.insertDocument(databaseName, collectionName(), document));
     }
 
     /**
@@ -82,11 +332,57 @@ public class PlayerStorage implements Storage {
      *
      * @param fieldIdentifier the name of the field to search
      * @param valueIdentifier the value to search for in the field
-     * @return a CompletableFuture containing a FindIterable of matching documents
+     * @return a CompletableFuture containing the matching documents, already read
      */
     @Override
-    public CompletableFuture<FindIterable<Document>> findDocuments(String fieldIdentifier, Object valueIdentifier) {
-        return mongoWrapper.findDocuments(databaseName, playerUUID, fieldIdentifier, valueIdentifier);
+    public CompletableFuture<List<Document>> findDocuments(String fieldIdentifier, Object valueIdentifier) {
+        return inLane(() -> layout == StorageLayout.SINGLE_COLLECTION
+                ? mongoWrapper.findDocuments(databaseName, collectionName(), Filters.and(Filters.eq("_id", playerUUID), Filters.eq(fieldIdentifier, valueIdentifier)))
+                : mongoWrapper.findDocuments(databaseName, collectionName(), fieldIdentifier, valueIdentifier));
+    }
+
+    /**
+     * Runs an operation in the player's storage lane, after the operations submitted before it for the same player.
+     * Must not be nested, an operation waiting on another one in its own lane would never finish.
+     *
+     * @param operation starts the operation
+     * @return a CompletableFuture containing the result of the operation
+     */
+    private <T> CompletableFuture<T> inLane(Supplier<CompletableFuture<T>> operation) {
+        return lanes.submit(playerUUID, operation);
+    }
+
+    /**
+     * Queues a write of the {@link WriteCoalescer} in the player's storage lane, after the operations submitted before it
+     * for the same player are started, without waiting for them to be acknowledged.
+     *
+     * @param operation queues the write
+     * @return a CompletableFuture that completes when the write is acknowledged
+     */
+    private <T> CompletableFuture<T> handOffInLane(Supplier<CompletableFuture<T>> operation) {
+        return lanes.handOff(playerUUID, operation);
+    }
+
+    /**
+     * @return the collection holding the player's data
+     */
+    private String collectionName() {
+        return layout == StorageLayout.SINGLE_COLLECTION ? StorageLayout.PLAYERS_COLLECTION : playerUUID;
+    }
+
+    /**
+     * @return the field identifying the player's document within the collection
+     */
+    private String filterField() {
+        return layout == StorageLayout.SINGLE_COLLECTION ? "_id" : "type";
+    }
+
+    /**
+     * @param documentType the identifier of the document
+     * @return the value of {@link #filterField()} identifying the player's document
+     */
+    private Object filterValue(String documentType) {
+        return layout == StorageLayout.SINGLE_COLLECTION ? playerUUID : documentType;
     }
 
 }
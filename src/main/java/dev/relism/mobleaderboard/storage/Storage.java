@@ -1,8 +1,10 @@
 package dev.relism.mobleaderboard.storage;
 
-import com.mongodb.client.FindIterable;
 import org.bson.Document;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -10,6 +12,13 @@ import java.util.concurrent.CompletableFuture;
  */
 public interface Storage {
 
+    /**
+     * Checks if the player data document exists asynchronously.
+     *
+     * @return a CompletableFuture containing true if a document with type "playerdata" exists, false otherwise.
+     */
+    CompletableFuture<Boolean> playerDataExists();
+
     /**
      * Retrieves the value of a specific field from a document asynchronously.
      *
@@ -29,6 +38,115 @@ public interface Storage {
      */
     CompletableFuture<Void> setFieldValue(String documentType, String fieldToSet, Object newValue);
 
+    /**
+     * Atomically increments a numeric field in a document asynchronously.
+     *
+     * @param documentType     the identifier of the document
+     * @param fieldToIncrement the name of the numeric field to increment
+     * @param delta            the amount to add to the field
+     * @return a CompletableFuture that completes when the field is updated
+     */
+    CompletableFuture<Void> incrementFieldValue(String documentType, String fieldToIncrement, Number delta);
+
+    /**
+     * Increments a set of numeric fields and epoch buckets in a document asynchronously.
+     * The numeric fields are incremented and raised atomically together, the buckets may be updated on their own.
+     * Field names may use the dot notation to reach into sub-documents, which are created when missing.
+     *
+     * @param documentType     the identifier of the document
+     * @param increments       the amounts to add, by field name
+     * @param maxima           the values to raise fields to, by field name, a missing field being set to its value
+     * @param bucketIncrements the increments of the epoch buckets, applied in order
+     * @return a CompletableFuture that completes when the document is updated
+     */
+    CompletableFuture<Void> incrementFieldValues(String documentType, Map<String, Integer> increments, Map<String, Long> maxima, List<BucketIncrement> bucketIncrements);
+
+    /**
+     * Atomically increments a numeric field in a document and retrieves its new value, in a single round trip.
+     *
+     * @param documentType     the identifier of the document
+     * @param fieldToIncrement the name of the numeric field to increment, treated as 0 if missing
+     * @param delta            the amount to add to the field
+     * @return a CompletableFuture containing the value of the field after this increment, or null if the document doesn't exist
+     */
+    CompletableFuture<Number> incrementAndGet(String documentType, String fieldToIncrement, Number delta);
+
+    /**
+     * Atomically raises a numeric field in a document to a value, if the value is greater than the stored one.
+     *
+     * @param documentType the identifier of the document
+     * @param fieldToSet   the name of the numeric field, set to the value if missing
+     * @param value        the candidate value
+     * @return a CompletableFuture containing true if the field was raised, false if it was already as great or the document doesn't exist
+     */
+    CompletableFuture<Boolean> setIfGreater(String documentType, String fieldToSet, Number value);
+
+    /**
+     * Atomically sets a field in a document, if it still holds the expected value.
+     *
+     * @param documentType  the identifier of the document
+     * @param fieldToSet    the name of the field to update
+     * @param expectedValue the value the field must hold, null matching a missing field too
+     * @param newValue      the new value to set for the field
+     * @return a CompletableFuture containing true if the field held the expected value and was set, false otherwise
+     */
+    CompletableFuture<Boolean> compareAndSet(String documentType, String fieldToSet, Object expectedValue, Object newValue);
+
+    /**
+     * Atomically appends an element to an array field of a document, even if an equal element is in it already.
+     *
+     * @param documentType the identifier of the document
+     * @param arrayField   the name of the array field, created if missing
+     * @param element      the element to append
+     * @return a CompletableFuture that completes when the document is updated
+     */
+    CompletableFuture<Void> push(String documentType, String arrayField, Object element);
+
+    /**
+     * Sets fields of a document, creating the document first if it doesn't exist, in a single write.
+     * The "type" field of a created document is set to the document type.
+     *
+     * @param documentType the identifier of the document
+     * @param fields       the fields to set
+     * @return a CompletableFuture that completes when the document is written
+     */
+    CompletableFuture<Void> upsert(String documentType, Document fields);
+
+    /**
+     * Loads a document in a single round trip, creating it first if it doesn't exist.
+     * The "type" field of a created document is set to the document type.
+     *
+     * @param documentType    the identifier of the document
+     * @param setFields       the fields written whether or not the document exists
+     * @param defaultFields   the fields only written when the document is created
+     * @param projectedFields the fields to retrieve
+     * @return a CompletableFuture containing the document, restricted to the projected fields
+     */
+    CompletableFuture<Document> loadOrInsertDocument(String documentType, Document setFields, Document defaultFields, String... projectedFields);
+
+    /**
+     * Appends elements to an array field of a document asynchronously, in a single write.
+     * Elements whose ID is already in the array are skipped, so repeating the same push is harmless.
+     *
+     * @param documentType the identifier of the document
+     * @param arrayField   the name of the array field, created if missing
+     * @param idField      the name of the field identifying an element
+     * @param elements     the elements to append
+     * @return a CompletableFuture that completes when the document is updated
+     */
+    CompletableFuture<Void> pushUnique(String documentType, String arrayField, String idField, List<Document> elements);
+
+    /**
+     * Removes the elements with the given IDs from an array field of a document asynchronously, in a single write.
+     *
+     * @param documentType the identifier of the document
+     * @param arrayField   the name of the array field
+     * @param idField      the name of the field identifying an element
+     * @param ids          the IDs of the elements to remove
+     * @return a CompletableFuture that completes when the document is updated
+     */
+    CompletableFuture<Void> pullByIds(String documentType, String arrayField, String idField, Collection<String> ids);
+
     /**
      * Inserts a document asynchronously.
      *
@@ -42,7 +160,7 @@ public interface Storage {
      *
      * @param fieldIdentifier the name of the field to search
      * @param valueIdentifier the value to search for in the field
-     * @return a CompletableFuture containing a FindIterable of matching documents
+     * @return a CompletableFuture containing the matching documents, already read
      */
-    CompletableFuture<FindIterable<Document>> findDocuments(String fieldIdentifier, Object valueIdentifier);
+    CompletableFuture<List<Document>> findDocuments(String fieldIdentifier, Object valueIdentifier);
 }
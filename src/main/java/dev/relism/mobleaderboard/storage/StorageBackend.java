@@ -0,0 +1,27 @@
+package dev.relism.mobleaderboard.storage;
+
+/**
+ * The places player data can be stored in.
+ */
+public enum StorageBackend {
+
+    /**
+     * A MongoDB deployment reached through the configured URI, which can be shared by several servers.
+     */
+    MONGO,
+
+    /**
+     * An embedded record file in the plugin folder, for single-server deployments without a database.
+     */
+    LOCAL;
+
+    /**
+     * Parses the backend configured in the config.yml.
+     *
+     * @param value the configured value, either "mongo" or "local"
+     * @return the matching backend, {@link #MONGO} if the value is missing or unknown
+     */
+    public static StorageBackend fromConfig(String value) {
+        return "local".equalsIgnoreCase(value) ? LOCAL : MONGO;
+    }
+}
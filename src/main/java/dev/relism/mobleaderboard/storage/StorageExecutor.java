@@ -0,0 +1,87 @@
+package dev.relism.mobleaderboard.storage;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the executor running the blocking database operations, so that database stalls never
+ * starve the common fork-join pool or the Bukkit async scheduler.
+ * Both kinds of executor accept a bounded number of pending operations and apply a {@link RejectionPolicy} beyond it.
+ */
+public final class StorageExecutor {
+
+    private static final String THREAD_NAME_PREFIX = "mobleaderboard-storage-";
+
+    /**
+     * What happens to an operation submitted while the executor is saturated.
+     */
+    public enum RejectionPolicy {
+
+        /**
+         * The operation is rejected and its future completes exceptionally right away.
+         */
+        ABORT,
+
+        /**
+         * The operation runs on the thread that submitted it, which slows down the submitter.
+         * If the submitter is the server thread, the server stalls for the duration of the operation.
+         */
+        CALLER_RUNS;
+
+        /**
+         * Parses the policy configured in the config.yml.
+         *
+         * @param value the configured value, either "abort" or "caller-runs"
+         * @return the matching policy, {@link #ABORT} if the value is missing or unknown
+         */
+        public static RejectionPolicy fromConfig(String value) {
+            return "caller-runs".equalsIgnoreCase(value) ? CALLER_RUNS : ABORT;
+        }
+
+        private RejectedExecutionHandler handler() {
+            return this == CALLER_RUNS ? new ThreadPoolExecutor.CallerRunsPolicy() : new ThreadPoolExecutor.AbortPolicy();
+        }
+    }
+
+    private StorageExecutor() {
+    }
+
+    /**
+     * Creates a fixed pool of daemon threads in front of a bounded queue.
+     *
+     * @param poolSize  the number of threads
+     * @param queueSize the number of operations that can wait for a thread
+     * @param policy    what to do with operations submitted while the queue is full
+     * @return the executor
+     */
+    public static ExecutorService createPool(int poolSize, int queueSize, RejectionPolicy policy) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadFactory threadFactory = task -> {
+            Thread thread = new Thread(task, THREAD_NAME_PREFIX + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueSize)), threadFactory, policy.handler());
+    }
+
+    /**
+     * Creates an executor starting a virtual thread per operation, which requires Java 21 or later.
+     *
+     * @param maxConcurrency the maximum number of operations running at once
+     * @param policy         what to do with operations submitted while the maximum is reached
+     * @return the executor, or null if virtual threads aren't available on this Java version
+     */
+    public static ExecutorService createVirtual(int maxConcurrency, RejectionPolicy policy) {
+        ThreadFactory threadFactory = VirtualThreads.threadFactory(THREAD_NAME_PREFIX);
+        if (threadFactory == null) {
+            return null;
+        }
+        return new BoundedThreadPerTaskExecutor(threadFactory, Math.max(1, maxConcurrency), policy);
+    }
+}
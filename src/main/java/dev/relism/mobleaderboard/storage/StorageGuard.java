@@ -0,0 +1,327 @@
+package dev.relism.mobleaderboard.storage;
+
+import dev.relism.mobleaderboard.utils.msg;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Shields the server from a slow or failing database. Every operation of the {@link MongoWrapper} goes through it:
+ * <ul>
+ *     <li>Reads and writes have bulkheads of their own, a bounded number of operations of each kind may be in
+ *     flight at once, so a burst of reads can't hold up the kill writes and the other way around. Further ones wait
+ *     in a bounded queue, in submission order, and are only rejected once the queue is full or they waited too long,
+ *     so a burst such as a login storm is smoothed out rather than failed.</li>
+ *     <li>The batches of the {@link WriteCoalescer} have a bulkhead of their own, as large as the number of batches
+ *     it keeps in flight, so group commits and direct writes never take each other's slots.</li>
+ *     <li>Every operation has a deadline. A read that misses it fails with a TimeoutException right away. A write
+ *     that misses it counts as failed for the circuit breaker, but its future still waits for the outcome, since an
+ *     increment reported as failed and then retried while it was applied after all would count twice.
+ *     Either way, the operation keeps its bulkhead slot until the driver gives up on it, which the socket timeout
+ *     of the driver bounds.</li>
+ *     <li>A {@link CircuitBreaker} rejects every operation for a while once operations keep failing or missing their deadline.</li>
+ *     <li>Reads rejected by the circuit breaker or by a full bulkhead fall back to the last value read for the same
+ *     query, kept in a bounded cache, so the plugin degrades to stale data instead of failing while the database is
+ *     unavailable. Reads that were sent and failed, or missed their deadline, still fail, since the error is real.</li>
+ * </ul>
+ * Rejected operations fail with a {@link StorageUnavailableException}.
+ */
+public class StorageGuard {
+
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead reads;
+    private final Bulkhead writes;
+    private final Bulkhead batches;
+    private final int batchConcurrency;
+    private final long queueTimeoutMillis;
+    private final long readDeadlineMillis;
+    private final long writeDeadlineMillis;
+    private final long scanDeadlineMillis;
+    private final Map<String, Object> cache;
+    private final ScheduledExecutorService deadlines = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "mobleaderboard-storage-deadlines");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Constructs a new StorageGuard.
+     *
+     * @param circuitBreaker      The circuit breaker of the database.
+     * @param readConcurrency     The number of reads that may be in flight at once.
+     * @param writeConcurrency    The number of writes that may be in flight at once.
+     * @param batchConcurrency    The number of batches of group-committed writes that may be in flight at once.
+     * @param readQueueSize       The number of reads that may wait for a slot once the reads in flight are at their limit.
+     * @param writeQueueSize      The number of writes that may wait for a slot once the writes in flight are at their limit.
+     * @param queueTimeoutMillis  The time an operation may wait for a slot before it's rejected.
+     * @param readDeadlineMillis  The time a read may take before its future fails.
+     * @param writeDeadlineMillis The time a write may take before it counts as slow.
+     * @param scanDeadlineMillis  The time a read of every player may take before its future fails.
+     * @param cacheSize           The number of read results kept for the degraded mode.
+     */
+    public StorageGuard(CircuitBreaker circuitBreaker, int readConcurrency, int writeConcurrency, int batchConcurrency, int readQueueSize, int writeQueueSize,
+                        long queueTimeoutMillis, long readDeadlineMillis, long writeDeadlineMillis, long scanDeadlineMillis, int cacheSize) {
+        this.circuitBreaker = circuitBreaker;
+        this.reads = new Bulkhead("reads", Math.max(1, readConcurrency), Math.max(0, readQueueSize));
+        this.writes = new Bulkhead("writes", Math.max(1, writeConcurrency), Math.max(0, writeQueueSize));
+        this.batchConcurrency = Math.max(1, batchConcurrency);
+        // The coalescer never has more batches in flight, so none ever waits
+        this.batches = new Bulkhead("batches", this.batchConcurrency, 0);
+        this.queueTimeoutMillis = queueTimeoutMillis;
+        this.readDeadlineMillis = readDeadlineMillis;
+        this.writeDeadlineMillis = writeDeadlineMillis;
+        this.scanDeadlineMillis = scanDeadlineMillis;
+        this.cache = new LinkedHashMap<String, Object>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Runs a read. Its result is cached under the given key, and served from the cache if the read is rejected.
+     *
+     * @param queryType the name of the operation, for the error messages
+     * @param cacheKey  the key identifying the query, or null to not cache it
+     * @param operation starts the read
+     * @return a CompletableFuture containing the result of the read, or the cached result
+     */
+    public <T> CompletableFuture<T> read(String queryType, String cacheKey, Supplier<CompletableFuture<T>> operation) {
+        return cached(queryType, cacheKey, guard(queryType, reads, readDeadlineMillis, true, operation));
+    }
+
+    /**
+     * Runs a read of every player, which shares the bulkhead of the reads but has a longer deadline.
+     *
+     * @param queryType the name of the operation, for the error messages
+     * @param cacheKey  the key identifying the query, or null to not cache it
+     * @param operation starts the read
+     * @return a CompletableFuture containing the result of the read, or the cached result
+     */
+    public <T> CompletableFuture<T> scan(String queryType, String cacheKey, Supplier<CompletableFuture<T>> operation) {
+        return cached(queryType, cacheKey, guard(queryType, reads, scanDeadlineMillis, true, operation));
+    }
+
+    /**
+     * Runs a batch of group-committed writes, which has a bulkhead of its own but the deadline of the writes.
+     *
+     * @param queryType the name of the operation, for the error messages
+     * @param operation starts the batch
+     * @return a CompletableFuture containing the result of the batch
+     */
+    public <T> CompletableFuture<T> batch(String queryType, Supplier<CompletableFuture<T>> operation) {
+        return guard(queryType, batches, writeDeadlineMillis, false, operation);
+    }
+
+    /**
+     * Runs a write.
+     *
+     * @param queryType the name of the operation, for the error messages
+     * @param operation starts the write
+     * @return a CompletableFuture containing the result of the write
+     */
+    public <T> CompletableFuture<T> write(String queryType, Supplier<CompletableFuture<T>> operation) {
+        return guard(queryType, writes, writeDeadlineMillis, false, operation);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> cached(String queryType, String cacheKey, CompletableFuture<T> result) {
+        if (cacheKey == null) {
+            return result;
+        }
+        return result.handle((value, ex) -> {
+            if (ex == null) {
+                if (value != null) {
+                    synchronized (cache) {
+                        cache.put(cacheKey, value);
+                    }
+                }
+                return value;
+            }
+            Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+            Object cached = null;
+            // Only a rejected read falls back to the cache, a failure of the read itself is passed on
+            if (cause instanceof StorageUnavailableException) {
+                synchronized (cache) {
+                    cached = cache.get(cacheKey);
+                }
+            }
+            if (cached == null) {
+                throw ex instanceof CompletionException ? (CompletionException) ex : new CompletionException(ex);
+            }
+            msg.debug("Serving a cached result of " + queryType + ": " + ex.getMessage());
+            return (T) cached;
+        });
+    }
+
+    /**
+     * @return the circuit breaker of the database
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * @return the number of batches of group-committed writes that may be in flight at once
+     */
+    public int getBatchConcurrency() {
+        return batchConcurrency;
+    }
+
+    /**
+     * Stops the deadline timer. Pending deadlines no longer fire.
+     */
+    public void close() {
+        deadlines.shutdownNow();
+    }
+
+    private <T> CompletableFuture<T> guard(String queryType, Bulkhead bulkhead, long deadlineMillis, boolean failAtDeadline,
+                                           Supplier<CompletableFuture<T>> operation) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        bulkhead.acquire(queryType, () -> run(queryType, bulkhead, deadlineMillis, failAtDeadline, operation, result), result::completeExceptionally);
+        return result;
+    }
+
+    /**
+     * Runs an operation holding a slot of its bulkhead, and releases the slot once the operation is done.
+     */
+    private <T> void run(String queryType, Bulkhead bulkhead, long deadlineMillis, boolean failAtDeadline,
+                         Supplier<CompletableFuture<T>> operation, CompletableFuture<T> result) {
+        // Asked after the bulkhead, so a trial call of a half-open circuit is never rejected afterwards
+        if (!circuitBreaker.allowRequest()) {
+            bulkhead.release();
+            result.completeExceptionally(new StorageUnavailableException("The database circuit is open, rejected " + queryType));
+            return;
+        }
+
+        CompletableFuture<T> started;
+        try {
+            started = operation.get();
+        } catch (RuntimeException e) {
+            bulkhead.release();
+            circuitBreaker.onFailure();
+            result.completeExceptionally(e);
+            return;
+        }
+
+        AtomicBoolean reported = new AtomicBoolean();
+        ScheduledFuture<?> deadline = deadlines.schedule(() -> {
+            if (reported.compareAndSet(false, true)) {
+                circuitBreaker.onFailure();
+                if (failAtDeadline) {
+                    result.completeExceptionally(new TimeoutException(queryType + " missed its deadline of " + deadlineMillis + "ms"));
+                } else {
+                    msg.debug(queryType + " missed its deadline of " + deadlineMillis + "ms, still waiting for its outcome.");
+                }
+            }
+        }, deadlineMillis, TimeUnit.MILLISECONDS);
+        started.whenComplete((value, ex) -> {
+            deadline.cancel(false);
+            bulkhead.release();
+            if (reported.compareAndSet(false, true)) {
+                if (ex != null) {
+                    circuitBreaker.onFailure();
+                } else {
+                    circuitBreaker.onSuccess();
+                }
+            }
+            if (ex != null) {
+                result.completeExceptionally(ex);
+            } else {
+                result.complete(value);
+            }
+        });
+    }
+
+    /**
+     * A bounded number of slots, and a bounded queue of the operations waiting for one.
+     * A released slot is handed to the oldest waiting operation, which then starts on the releasing thread.
+     */
+    private final class Bulkhead {
+        private final String kind;
+        private final int queueSize;
+        private final ArrayDeque<Waiter> waiting = new ArrayDeque<>();
+        private int available;
+
+        Bulkhead(String kind, int slots, int queueSize) {
+            this.kind = kind;
+            this.available = slots;
+            this.queueSize = queueSize;
+        }
+
+        /**
+         * Takes a slot and starts an operation, right away or once a slot is released.
+         *
+         * @param queryType the name of the operation, for the error messages
+         * @param start     starts the operation, which must release its slot once done
+         * @param reject    receives the reason the operation was rejected instead
+         */
+        void acquire(String queryType, Runnable start, Consumer<Throwable> reject) {
+            Waiter waiter = new Waiter(start);
+            boolean acquired;
+            boolean queued = false;
+            synchronized (this) {
+                acquired = available > 0;
+                if (acquired) {
+                    available--;
+                } else if (waiting.size() < queueSize) {
+                    queued = waiting.add(waiter);
+                }
+            }
+            if (acquired) {
+                start.run();
+            } else if (!queued) {
+                reject.accept(new StorageUnavailableException("Too many " + kind + " waiting, rejected " + queryType));
+            } else {
+                waiter.timeout = deadlines.schedule(() -> {
+                    boolean expired;
+                    synchronized (this) {
+                        expired = waiting.remove(waiter);
+                    }
+                    if (expired) {
+                        reject.accept(new StorageUnavailableException("Waited over " + queueTimeoutMillis + "ms for one of the " + kind + " in flight, rejected " + queryType));
+                    }
+                }, queueTimeoutMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        /**
+         * Releases a slot, handing it to the oldest waiting operation if there is one.
+         */
+        void release() {
+            Waiter next;
+            synchronized (this) {
+                next = waiting.poll();
+                if (next == null) {
+                    available++;
+                    return;
+                }
+            }
+            if (next.timeout != null) {
+                next.timeout.cancel(false);
+            }
+            next.start.run();
+        }
+    }
+
+    private static final class Waiter {
+        final Runnable start;
+        volatile ScheduledFuture<?> timeout;
+
+        Waiter(Runnable start) {
+            this.start = start;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package dev.relism.mobleaderboard.storage;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * Runs the asynchronous operations of each player in the order they were submitted. Operations of different players
+ * don't wait for each other, and run in parallel on the storage executor. There are two kinds of operations:
+ * <ul>
+ *     <li>{@link #submit(Object, Supplier) Submitted} operations, the reads and the read-modify-writes, start once every
+ *     operation submitted before them is done, whether it succeeded or not, and hold up the ones after them until they are done.</li>
+ *     <li>{@link #handOff(Object, Supplier) Handed off} operations, the writes queued in the {@link WriteCoalescer},
+ *     only wait for the operations before them to be started, and only hold up the ones after them while they are queued.
+ *     The coalescer applies the writes of a collection in the order they were queued, so several of them may wait in the
+ *     same batch, merged when possible, instead of each one waiting for the acknowledgement of the previous one.</li>
+ * </ul>
+ * Players are spread over a fixed number of lanes by UUID, so a lane costs no thread and a single reference
+ * whether it's busy or not. Two players sharing a lane are ordered with each other too, which only delays them.
+ */
+public class StorageLanes {
+
+    private static final CompletableFuture<Void> IDLE = CompletableFuture.completedFuture(null);
+    private static final Tail IDLE_TAIL = new Tail(IDLE, IDLE);
+
+    private final AtomicReferenceArray<Tail> tails;
+
+    /**
+     * Constructs new StorageLanes.
+     *
+     * @param lanes The number of lanes the players are spread over.
+     */
+    public StorageLanes(int lanes) {
+        this.tails = new AtomicReferenceArray<>(Math.max(1, lanes));
+        for (int i = 0; i < tails.length(); i++) {
+            tails.set(i, IDLE_TAIL);
+        }
+    }
+
+    /**
+     * Runs an operation in the lane of a key, once the operations submitted before it in that lane are done.
+     * The operations submitted after it wait until it's done.
+     *
+     * @param key       identifies whose operation it is, usually the UUID of a player
+     * @param operation starts the operation
+     * @return a CompletableFuture containing the result of the operation
+     */
+    public <T> CompletableFuture<T> submit(Object key, Supplier<CompletableFuture<T>> operation) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        CompletableFuture<Void> done = result.handle((value, ex) -> null);
+        Tail previous = tails.getAndSet(lane(key), new Tail(done, done));
+        relay(previous.done.thenCompose(v -> operation.get()), result);
+        return result;
+    }
+
+    /**
+     * Runs an operation that queues a write in the lane of a key, once the operations submitted before it in that lane
+     * are started. The operations submitted after it only wait until it's started, except for the ones that wait for
+     * everything before them to be done, which wait for its outcome as well.
+     *
+     * @param key       identifies whose operation it is, usually the UUID of a player
+     * @param operation queues the write, the write is in order with the other ones once this returns
+     * @return a CompletableFuture containing the result of the write
+     */
+    public <T> CompletableFuture<T> handOff(Object key, Supplier<CompletableFuture<T>> operation) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        CompletableFuture<Void> started = new CompletableFuture<>();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        Tail previous = tails.getAndSet(lane(key), new Tail(started, done));
+        CompletableFuture<T> queued = previous.started.thenCompose(v -> {
+            try {
+                return operation.get();
+            } finally {
+                started.complete(null);
+            }
+        });
+        CompletableFuture.allOf(previous.done, queued.handle((value, ex) -> null)).whenComplete((v, ex) -> done.complete(null));
+        relay(queued, result);
+        return result;
+    }
+
+    private static <T> void relay(CompletableFuture<T> operation, CompletableFuture<T> result) {
+        operation.whenComplete((value, ex) -> {
+            if (ex != null) {
+                result.completeExceptionally(ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+            } else {
+                result.complete(value);
+            }
+        });
+    }
+
+    private int lane(Object key) {
+        int hash = key.hashCode();
+        // Spreads the high bits, UUIDs of the same version differ little in a few of them
+        hash ^= hash >>> 16;
+        return (hash & 0x7fffffff) % tails.length();
+    }
+
+    /**
+     * The last operation of a lane: when it was started, and when it and every operation before it were done.
+     */
+    private static final class Tail {
+        final CompletableFuture<Void> started;
+        final CompletableFuture<Void> done;
+
+        Tail(CompletableFuture<Void> started, CompletableFuture<Void> done) {
+            this.started = started;
+            this.done = done;
+        }
+    }
+}
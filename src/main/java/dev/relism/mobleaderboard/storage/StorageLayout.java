@@ -0,0 +1,68 @@
+package dev.relism.mobleaderboard.storage;
+
+/**
+ * The ways player data can be laid out in the database.
+ */
+public enum StorageLayout {
+
+    /**
+     * One collection per player, named after the player's UUID, holding a "playerdata" document.
+     * Every global operation has to list and query all the collections one at a time.
+     */
+    LEGACY,
+
+    /**
+     * A single "players" collection holding one document per player, keyed by UUID and indexed on kills.
+     * Global operations become single indexed queries.
+     */
+    SINGLE_COLLECTION;
+
+    /**
+     * The database holding the player data, in both layouts.
+     */
+    public static final String DATABASE_NAME = "mbl-players";
+
+    /**
+     * The collection holding every player document in the {@link #SINGLE_COLLECTION} layout.
+     */
+    public static final String PLAYERS_COLLECTION = "players";
+
+    /**
+     * The collection holding the progress of the layout migrations.
+     */
+    public static final String MIGRATIONS_COLLECTION = "migrations";
+
+    /**
+     * The collection holding the final standings of every past season.
+     */
+    public static final String SEASONS_COLLECTION = "seasons";
+
+    /**
+     * The capped collection carrying the messages of the {@code mongo} leaderboard sync bus.
+     */
+    public static final String SYNC_COLLECTION = "sync";
+
+    /**
+     * Parses the layout configured in the config.yml.
+     *
+     * @param value the configured value, either "legacy" or "single"
+     * @return the matching layout, {@link #LEGACY} if the value is missing or unknown
+     */
+    public static StorageLayout fromConfig(String value) {
+        return "single".equalsIgnoreCase(value) ? SINGLE_COLLECTION : LEGACY;
+    }
+
+    /**
+     * Checks if a collection of the player database belongs to a single player in the {@link #LEGACY} layout.
+     *
+     * @param collectionName the name of the collection
+     * @return true if the collection is a per-player collection, false for system and shared collections
+     */
+    public static boolean isLegacyPlayerCollection(String collectionName) {
+        return !collectionName.startsWith("system.")
+                && !collectionName.equals(PLAYERS_COLLECTION)
+                && !collectionName.equals(MIGRATIONS_COLLECTION)
+                && !collectionName.equals(SEASONS_COLLECTION)
+                && !collectionName.equals(SYNC_COLLECTION);
+    }
+}
@@ -0,0 +1,17 @@
+package dev.relism.mobleaderboard.storage;
+
+/**
+ * Thrown when a database operation is rejected without being sent, because the database circuit is open
+ * or too many operations of the same kind are in flight.
+ */
+public class StorageUnavailableException extends RuntimeException {
+
+    /**
+     * Constructs a new StorageUnavailableException.
+     *
+     * @param message the reason of the rejection
+     */
+    public StorageUnavailableException(String message) {
+        super(message);
+    }
+}
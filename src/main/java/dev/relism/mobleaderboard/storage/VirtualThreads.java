@@ -0,0 +1,21 @@
+package dev.relism.mobleaderboard.storage;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads, which only exist from Java 21 on.
+ * This is the Java 8 version, the multi-release jar replaces it with the one in src/main/java21 on Java 21 and later.
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @param namePrefix the prefix of the thread names
+     * @return a factory of virtual threads, or null if they aren't available on this Java version
+     */
+    static ThreadFactory threadFactory(String namePrefix) {
+        return null;
+    }
+}
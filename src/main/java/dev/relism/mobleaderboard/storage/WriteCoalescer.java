@@ -0,0 +1,412 @@
+package dev.relism.mobleaderboard.storage;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Group-commits the writes of the {@link MongoWrapper}. Writes to the same collection are collected for a short
+ * window, or until a batch is full, and sent together as a single ordered bulkWrite. While a batch of a collection
+ * is in flight the next one keeps filling up, so the batches grow with the load instead of the writes queueing
+ * behind the round trips, and the writes of a collection are applied in the order they were submitted.
+ * A bounded number of batches is in flight at once, across all collections, matching the batch bulkhead of the
+ * {@link StorageGuard}, the collections with writes pending beyond that wait in line for a free slot.
+ * <p>
+ * A $set/$inc/$max update of a document is merged into the pending update of the same document, unless a field
+ * would be changed by two different operators, so a burst of changes to one player costs one write.
+ * Each caller's future completes once the batch holding its write is acknowledged. If an ordered batch fails
+ * part way, the writes before the failing one were applied and complete normally, the others fail.
+ */
+public class WriteCoalescer {
+
+    /**
+     * Sends a batch of writes to a collection.
+     */
+    public interface Sender {
+        /**
+         * @param databaseName   the name of the database
+         * @param collectionName the name of the collection
+         * @param writes         the writes, to apply in order
+         * @return a CompletableFuture containing the result of the batch
+         */
+        CompletableFuture<BulkWriteResult> send(String databaseName, String collectionName, List<WriteModel<Document>> writes);
+    }
+
+    private static final Set<String> MERGEABLE_OPERATORS = new HashSet<>(Arrays.asList("$set", "$inc", "$max"));
+
+    private final Sender sender;
+    private final long windowMillis;
+    private final int maxBatchSize;
+    private final int maxBatchesInFlight;
+    private final Map<Target, Queue> queues = new HashMap<>();
+    private final ArrayDeque<Target> waiting = new ArrayDeque<>();
+    private int batchesInFlight;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "mobleaderboard-storage-group-commit");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Constructs a new WriteCoalescer.
+     *
+     * @param sender             Sends the batches.
+     * @param windowMillis       The time a write may wait for others before its batch is sent.
+     * @param maxBatchSize       The number of writes that fills a batch, which is then sent right away.
+     * @param maxBatchesInFlight The number of batches, across all collections, that may be in flight at once.
+     */
+    public WriteCoalescer(Sender sender, long windowMillis, int maxBatchSize, int maxBatchesInFlight) {
+        this.sender = sender;
+        this.windowMillis = Math.max(0, windowMillis);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxBatchesInFlight = Math.max(1, maxBatchesInFlight);
+    }
+
+    /**
+     * Queues a $set/$inc/$max update of a document, merging it into the pending update of the same document if possible.
+     *
+     * @param databaseName   the name of the database
+     * @param collectionName the name of the collection
+     * @param documentKey    identifies the document within the collection, such as the filter field and value
+     * @param filter         the query filter identifying the document
+     * @param update         the update, made of $set, $inc and $max operators only
+     * @return a CompletableFuture that completes when the batch holding the update is acknowledged
+     */
+    public CompletableFuture<Void> update(String databaseName, String collectionName, String documentKey, Bson filter, Document update) {
+        Target target = new Target(databaseName, collectionName);
+        synchronized (this) {
+            Queue queue = queues.computeIfAbsent(target, t -> new Queue());
+            Pending previous = queue.lastFor(documentKey);
+            if (previous != null && previous.update != null) {
+                Document merged = merge(previous.update, update);
+                if (merged != null) {
+                    previous.update = merged;
+                    return previous.future;
+                }
+            }
+            return enqueue(target, queue, new Pending(documentKey, filter, update, null));
+        }
+    }
+
+    /**
+     * Queues any other write.
+     *
+     * @param databaseName   the name of the database
+     * @param collectionName the name of the collection
+     * @param documentKey    identifies the document within the collection, or null if unknown,
+     *                       in which case no later update is merged across this write
+     * @param write          the write
+     * @return a CompletableFuture that completes when the batch holding the write is acknowledged
+     */
+    public CompletableFuture<Void> write(String databaseName, String collectionName, String documentKey, WriteModel<Document> write) {
+        Target target = new Target(databaseName, collectionName);
+        synchronized (this) {
+            return enqueue(target, queues.computeIfAbsent(target, t -> new Queue()), new Pending(documentKey, null, null, write));
+        }
+    }
+
+    /**
+     * Sends every pending write right away.
+     *
+     * @return a CompletableFuture that completes when every write queued so far is acknowledged or failed
+     */
+    public CompletableFuture<Void> drain() {
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        synchronized (this) {
+            for (Map.Entry<Target, Queue> entry : new ArrayList<>(queues.entrySet())) {
+                Queue queue = entry.getValue();
+                for (Pending pending : queue.pending) {
+                    writes.add(pending.future);
+                }
+                for (Pending pending : queue.inFlight) {
+                    writes.add(pending.future);
+                }
+                if (!queue.pending.isEmpty()) {
+                    ready(entry.getKey(), queue);
+                }
+            }
+        }
+        return CompletableFuture.allOf(writes.toArray(new CompletableFuture[0])).handle((v, ex) -> null);
+    }
+
+    /**
+     * Stops the window timer. Writes still pending are only sent by {@link #drain()} or when a batch fills up.
+     */
+    public void close() {
+        timer.shutdownNow();
+    }
+
+    private CompletableFuture<Void> enqueue(Target target, Queue queue, Pending pending) {
+        queue.pending.add(pending);
+        if (!queue.inFlight.isEmpty() || queue.waiting) {
+            // Sent once the batch in flight is acknowledged, or once a batch slot frees up
+            return pending.future;
+        }
+        if (queue.pending.size() >= maxBatchSize || windowMillis == 0) {
+            ready(target, queue);
+        } else if (!queue.scheduled) {
+            queue.scheduled = true;
+            timer.schedule(() -> {
+                synchronized (this) {
+                    queue.scheduled = false;
+                    if (!queue.pending.isEmpty()) {
+                        ready(target, queue);
+                    } else if (queue.inFlight.isEmpty() && !queue.waiting) {
+                        queues.remove(target, queue);
+                    }
+                }
+            }, windowMillis, TimeUnit.MILLISECONDS);
+        }
+        return pending.future;
+    }
+
+    /**
+     * Sends the next batch of a collection if a batch slot is free, or lines it up for the next free slot.
+     * Must be called holding the lock.
+     */
+    private void ready(Target target, Queue queue) {
+        if (!queue.inFlight.isEmpty() || queue.waiting) {
+            return;
+        }
+        if (batchesInFlight < maxBatchesInFlight) {
+            send(target, queue);
+        } else {
+            queue.waiting = true;
+            waiting.add(target);
+        }
+    }
+
+    /**
+     * Sends the next batch of a collection. Must be called holding the lock, with a free batch slot
+     * and no batch of the collection in flight.
+     */
+    private void send(Target target, Queue queue) {
+        int size = Math.min(queue.pending.size(), maxBatchSize);
+        List<Pending> batch = new ArrayList<>(queue.pending.subList(0, size));
+        queue.pending.subList(0, size).clear();
+        queue.inFlight = batch;
+        queue.waiting = false;
+        batchesInFlight++;
+
+        List<WriteModel<Document>> writes = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            writes.add(pending.write != null ? pending.write : new UpdateOneModel<Document>(pending.filter, pending.update));
+        }
+        CompletableFuture<BulkWriteResult> sent;
+        try {
+            sent = sender.send(target.databaseName, target.collectionName, writes);
+        } catch (RuntimeException e) {
+            sent = new CompletableFuture<>();
+            sent.completeExceptionally(e);
+        }
+        sent.whenComplete((result, ex) -> {
+            complete(batch, ex);
+            synchronized (this) {
+                batchesInFlight--;
+                queue.inFlight = Collections.emptyList();
+                // The collections lined up first get the free slots, this one goes to the back of the line
+                while (batchesInFlight < maxBatchesInFlight && !waiting.isEmpty()) {
+                    Target next = waiting.poll();
+                    send(next, queues.get(next));
+                }
+                if (!queue.pending.isEmpty()) {
+                    // These writes waited for a whole round trip already
+                    ready(target, queue);
+                } else if (!queue.scheduled) {
+                    queues.remove(target, queue);
+                }
+            }
+        });
+    }
+
+    private static void complete(List<Pending> batch, Throwable ex) {
+        if (ex == null) {
+            for (Pending pending : batch) {
+                pending.future.complete(null);
+            }
+            return;
+        }
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        // An ordered batch stops at its first error, the writes before it were applied
+        int applied = 0;
+        if (cause instanceof MongoBulkWriteException && !((MongoBulkWriteException) cause).getWriteErrors().isEmpty()) {
+            applied = ((MongoBulkWriteException) cause).getWriteErrors().get(0).getIndex();
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            if (i < applied) {
+                batch.get(i).future.complete(null);
+            } else {
+                batch.get(i).future.completeExceptionally(cause);
+            }
+        }
+    }
+
+    /**
+     * Merges two $set/$inc/$max updates of the same document into one with the same effect.
+     *
+     * @return the merged update, or null if they can't be merged
+     */
+    private static Document merge(Document first, Document second) {
+        if (!MERGEABLE_OPERATORS.containsAll(first.keySet()) || !MERGEABLE_OPERATORS.containsAll(second.keySet())) {
+            return null;
+        }
+        Document set = new Document(fields(first, "$set"));
+        Document inc = new Document(fields(first, "$inc"));
+        Document max = new Document(fields(first, "$max"));
+        // A field changed by two different operators depends on their order, which a single update doesn't keep
+        for (String operator : MERGEABLE_OPERATORS) {
+            for (String field : fields(second, operator).keySet()) {
+                if (!operator.equals("$set") && set.containsKey(field) || !operator.equals("$inc") && inc.containsKey(field)
+                        || !operator.equals("$max") && max.containsKey(field)) {
+                    return null;
+                }
+            }
+        }
+        set.putAll(fields(second, "$set"));
+        for (Map.Entry<String, Object> increment : fields(second, "$inc").entrySet()) {
+            if (!(increment.getValue() instanceof Number)) {
+                return null;
+            }
+            Object current = inc.get(increment.getKey());
+            if (current != null && !(current instanceof Number)) {
+                return null;
+            }
+            inc.put(increment.getKey(), add((Number) current, (Number) increment.getValue()));
+        }
+        for (Map.Entry<String, Object> maximum : fields(second, "$max").entrySet()) {
+            Object current = max.get(maximum.getKey());
+            if (!(maximum.getValue() instanceof Number) || current != null && !(current instanceof Number)) {
+                return null;
+            }
+            if (current == null || compare((Number) current, (Number) maximum.getValue()) < 0) {
+                max.put(maximum.getKey(), maximum.getValue());
+            }
+        }
+        Document merged = new Document();
+        if (!set.isEmpty()) {
+            merged.put("$set", set);
+        }
+        if (!inc.isEmpty()) {
+            merged.put("$inc", inc);
+        }
+        if (!max.isEmpty()) {
+            merged.put("$max", max);
+        }
+        return merged;
+    }
+
+    private static Document fields(Document update, String operator) {
+        Object fields = update.get(operator);
+        return fields instanceof Document ? (Document) fields : new Document();
+    }
+
+    private static int compare(Number a, Number b) {
+        if (a instanceof Double || b instanceof Double || a instanceof Float || b instanceof Float) {
+            return Double.compare(a.doubleValue(), b.doubleValue());
+        }
+        return Long.compare(a.longValue(), b.longValue());
+    }
+
+    private static Number add(Number current, Number delta) {
+        if (current == null) {
+            return delta;
+        }
+        if (current instanceof Double || delta instanceof Double) {
+            return current.doubleValue() + delta.doubleValue();
+        }
+        if (current instanceof Integer && delta instanceof Integer) {
+            return current.intValue() + delta.intValue();
+        }
+        return current.longValue() + delta.longValue();
+    }
+
+    /**
+     * A write waiting for its batch.
+     */
+    private static final class Pending {
+        final String documentKey;
+        final Bson filter;
+        Document update;
+        final WriteModel<Document> write;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Pending(String documentKey, Bson filter, Document update, WriteModel<Document> write) {
+            this.documentKey = documentKey;
+            this.filter = filter;
+            this.update = update;
+            this.write = write;
+        }
+    }
+
+    /**
+     * The writes of a collection, pending and in flight.
+     */
+    private static final class Queue {
+        final List<Pending> pending = new ArrayList<>();
+        List<Pending> inFlight = Collections.emptyList();
+        boolean scheduled;
+        boolean waiting;
+
+        /**
+         * @return the latest pending write of a document, or null if there is none after the last write of unknown document
+         */
+        Pending lastFor(String documentKey) {
+            for (int i = pending.size() - 1; i >= 0; i--) {
+                Pending candidate = pending.get(i);
+                if (candidate.documentKey == null) {
+                    return null;
+                }
+                if (candidate.documentKey.equals(documentKey)) {
+                    return candidate;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A collection of a database.
+     */
+    private static final class Target {
+        final String databaseName;
+        final String collectionName;
+
+        Target(String databaseName, String collectionName) {
+            this.databaseName = databaseName;
+            this.collectionName = collectionName;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Target)) {
+                return false;
+            }
+            Target other = (Target) o;
+            return databaseName.equals(other.databaseName) && collectionName.equals(other.collectionName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(databaseName, collectionName);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package dev.relism.mobleaderboard.sync;
+
+import org.bson.Document;
+
+import java.util.function.Consumer;
+
+/**
+ * A message bus connecting the servers that share the same player data, so that each of them can keep
+ * its in-memory leaderboards in sync with the kills made on the others without querying the database.
+ * Messages are plain documents, see {@link LeaderboardSync} for their content.
+ */
+public interface LeaderboardBus {
+
+    /**
+     * Sends a message to every server on the bus. This never blocks the calling thread.
+     *
+     * @param message the message to send
+     */
+    void publish(Document message);
+
+    /**
+     * Registers a listener receiving every message sent on the bus, including the ones sent by this server.
+     * Listeners may be called from any thread.
+     *
+     * @param listener the listener
+     */
+    void subscribe(Consumer<Document> listener);
+
+    /**
+     * Disconnects from the bus. No message is delivered once this returns.
+     */
+    void close();
+}
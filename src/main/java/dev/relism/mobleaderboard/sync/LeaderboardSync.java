@@ -0,0 +1,157 @@
+package dev.relism.mobleaderboard.sync;
+
+import dev.relism.mobleaderboard.leaderboard.LeaderboardIndex;
+import dev.relism.mobleaderboard.leaderboard.LeaderboardWindow;
+import dev.relism.mobleaderboard.leaderboard.MobLeaderboards;
+import dev.relism.mobleaderboard.leaderboard.WindowedLeaderboards;
+import dev.relism.mobleaderboard.profile.PlayerProfile;
+import dev.relism.mobleaderboard.profile.PlayerProfileCache;
+import dev.relism.mobleaderboard.utils.msg;
+import org.bson.Document;
+import org.bukkit.entity.EntityType;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the in-memory leaderboards of the servers sharing the same player data in sync over a {@link LeaderboardBus}.
+ * Every special kill publishes the new standings of the killer: their season total, the kills of their current
+ * time windows and of the killed mob type. Other servers move the player up to those standings, and never down,
+ * so messages received twice or out of order are harmless. A season rollover publishes the players it keeps,
+ * and the other servers reset their resident counters and leaderboards the same way.
+ * Each server reads the stored standings once on startup, everything afterwards comes from the bus.
+ */
+public class LeaderboardSync {
+
+    private static final String KILL = "kill";
+    private static final String RESET = "reset";
+
+    private final String nodeId;
+    private final LeaderboardBus bus;
+    private final PlayerProfileCache profileCache;
+    private final LeaderboardIndex leaderboardIndex;
+    private final WindowedLeaderboards windowedLeaderboards;
+    private final MobLeaderboards mobLeaderboards;
+    private final Set<String> appliedResets = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Constructs a new LeaderboardSync and starts listening to the bus.
+     *
+     * @param nodeId               The unique name of this server on the bus.
+     * @param bus                  The bus connecting the servers.
+     * @param profileCache         The resident profiles, reset along with the other servers.
+     * @param leaderboardIndex     The season leaderboard.
+     * @param windowedLeaderboards The leaderboards of the time windows.
+     * @param mobLeaderboards      The leaderboards of the mob types.
+     */
+    public LeaderboardSync(String nodeId, LeaderboardBus bus, PlayerProfileCache profileCache, LeaderboardIndex leaderboardIndex,
+                           WindowedLeaderboards windowedLeaderboards, MobLeaderboards mobLeaderboards) {
+        this.nodeId = nodeId;
+        this.bus = bus;
+        this.profileCache = profileCache;
+        this.leaderboardIndex = leaderboardIndex;
+        this.windowedLeaderboards = windowedLeaderboards;
+        this.mobLeaderboards = mobLeaderboards;
+        bus.subscribe(this::receive);
+    }
+
+    /**
+     * Publishes the standings of a player after a special kill registered on this server.
+     *
+     * @param playerUUID the UUID of the killer
+     * @param type       the type of the killed mob
+     */
+    public void publishKill(UUID playerUUID, EntityType type) {
+        PlayerProfile profile = profileCache.get(playerUUID);
+        if (profile == null) {
+            return;
+        }
+        Document windows = new Document();
+        for (LeaderboardWindow window : LeaderboardWindow.values()) {
+            long epoch = windowedLeaderboards.currentEpoch(window);
+            windows.append(window.getField(), new Document("epoch", epoch).append("kills", profile.getKills(window, epoch)));
+        }
+        bus.publish(new Document("kind", KILL)
+                .append("origin", nodeId)
+                .append("uuid", playerUUID.toString())
+                .append("name", profile.getPlayerName())
+                .append("kills", profile.getKills())
+                .append("mob", type.name())
+                .append("mobKills", profile.getKills(type))
+                .append("windows", windows));
+    }
+
+    /**
+     * Publishes a season rollover made on this server, once the resident counters here are reset.
+     *
+     * @param keep the UUIDs of the players whose kills were preserved
+     */
+    public void publishReset(Set<UUID> keep) {
+        String id = UUID.randomUUID().toString();
+        appliedResets.add(id);
+        List<String> kept = new ArrayList<>(keep.size());
+        for (UUID playerUUID : keep) {
+            kept.add(playerUUID.toString());
+        }
+        bus.publish(new Document("kind", RESET).append("origin", nodeId).append("id", id).append("keep", kept));
+    }
+
+    /**
+     * Disconnects from the bus.
+     */
+    public void close() {
+        bus.close();
+    }
+
+    private void receive(Document message) {
+        if (nodeId.equals(message.getString("origin"))) {
+            return;
+        }
+        try {
+            if (KILL.equals(message.getString("kind"))) {
+                applyKill(message);
+            } else if (RESET.equals(message.getString("kind"))) {
+                applyReset(message);
+            }
+        } catch (RuntimeException e) {
+            msg.log("&cIgnoring a malformed leaderboard sync message: " + e.getMessage());
+        }
+    }
+
+    private void applyKill(Document message) {
+        UUID playerUUID = UUID.fromString(message.getString("uuid"));
+        String playerName = message.getString("name");
+        leaderboardIndex.raise(playerUUID, playerName, ((Number) message.get("kills")).intValue());
+
+        EntityType type = MobLeaderboards.typeOf(message.getString("mob"));
+        if (type != null) {
+            mobLeaderboards.getIndex(type).raise(playerUUID, playerName, ((Number) message.get("mobKills")).intValue());
+        }
+
+        Document windows = message.get("windows", Document.class);
+        for (LeaderboardWindow window : LeaderboardWindow.values()) {
+            Document bucket = windows == null ? null : windows.get(window.getField(), Document.class);
+            if (bucket != null && bucket.get("epoch") instanceof Number && bucket.get("kills") instanceof Number) {
+                windowedLeaderboards.raise(window, ((Number) bucket.get("epoch")).longValue(), playerUUID, playerName,
+                        ((Number) bucket.get("kills")).intValue());
+            }
+        }
+    }
+
+    private void applyReset(Document message) {
+        if (!appliedResets.add(message.getString("id"))) {
+            return;
+        }
+        Set<UUID> keep = new HashSet<>();
+        for (Object playerUUID : message.get("keep", List.class)) {
+            keep.add(UUID.fromString((String) playerUUID));
+        }
+        // The stored kills were reset by the server that rolled the season over
+        profileCache.resetAllExcept(keep);
+        msg.log("&eSeason rolled over by " + message.getString("origin") + ", reset the local leaderboards.");
+    }
+}
@@ -0,0 +1,39 @@
+package dev.relism.mobleaderboard.sync;
+
+import org.bson.Document;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * An in-process bus delivering every message to the listeners right away, on the publishing thread.
+ * A single instance can be shared by several {@link LeaderboardSync} nodes to simulate a network in tests,
+ * and a single server can use it so that the sync path runs the same way as on a network.
+ */
+public class LoopbackBus implements LeaderboardBus {
+
+    private final List<Consumer<Document>> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean closed;
+
+    @Override
+    public void publish(Document message) {
+        if (closed) {
+            return;
+        }
+        for (Consumer<Document> listener : listeners) {
+            listener.accept(message);
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<Document> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        listeners.clear();
+    }
+}
@@ -0,0 +1,112 @@
+package dev.relism.mobleaderboard.sync;
+
+import com.mongodb.CursorType;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.CreateCollectionOptions;
+import com.mongodb.client.model.Filters;
+import dev.relism.mobleaderboard.storage.MongoWrapper;
+import dev.relism.mobleaderboard.storage.StorageLayout;
+import dev.relism.mobleaderboard.utils.msg;
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * A bus carried by a capped collection of the shared MongoDB, for servers that have no other link than their database.
+ * Messages are inserted through the {@link MongoWrapper} and every server follows the collection with a tailable
+ * cursor, which the server pushes new documents to as they are inserted, so nothing polls the player data.
+ * The capped collection drops the oldest messages by itself once it's full.
+ */
+public class MongoBus implements LeaderboardBus {
+
+    private static final long RECONNECT_DELAY_MILLIS = 1000;
+
+    private final MongoWrapper mongoWrapper;
+    private final MongoCollection<Document> collection;
+    private final List<Consumer<Document>> listeners = new CopyOnWriteArrayList<>();
+    private final Thread tailer;
+    private volatile boolean closed;
+    private Object lastId;
+
+    /**
+     * Connects to the bus, creating its collection if needed. Only messages sent from now on are received.
+     *
+     * @param mongoWrapper The wrapper of the shared database.
+     * @param sizeInBytes  The size of the capped collection, once it's reached the oldest messages are dropped.
+     */
+    public MongoBus(MongoWrapper mongoWrapper, long sizeInBytes) {
+        this.mongoWrapper = mongoWrapper;
+        MongoDatabase database = mongoWrapper.getMongoClient().getDatabase(StorageLayout.DATABASE_NAME);
+        if (!database.listCollectionNames().into(new ArrayList<>()).contains(StorageLayout.SYNC_COLLECTION)) {
+            database.createCollection(StorageLayout.SYNC_COLLECTION, new CreateCollectionOptions().capped(true).sizeInBytes(sizeInBytes));
+        }
+        this.collection = database.getCollection(StorageLayout.SYNC_COLLECTION);
+        Document last = collection.find().sort(new Document("$natural", -1)).first();
+        this.lastId = last == null ? null : last.get("_id");
+        this.tailer = new Thread(this::tail, "mobleaderboard-sync");
+        tailer.setDaemon(true);
+        tailer.start();
+    }
+
+    @Override
+    public void publish(Document message) {
+        if (!closed) {
+            mongoWrapper.insertDocument(StorageLayout.DATABASE_NAME, StorageLayout.SYNC_COLLECTION,
+                    new Document(message).append("sentAt", System.currentTimeMillis()));
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<Document> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        tailer.interrupt();
+    }
+
+    /**
+     * Follows the collection until the bus is closed. A tailable cursor dies when the collection is empty
+     * or the connection drops, in which case it's reopened from the last message received.
+     * The messages are read in the natural order of the capped collection, the order they were inserted in,
+     * so the position never depends on the clocks of the servers: the new cursor skips every message up to
+     * the last one received. If that one was dropped from the collection meanwhile, every message still in it
+     * is received again, which the sync tolerates.
+     */
+    private void tail() {
+        while (!closed) {
+            boolean caughtUp = lastId == null || collection.countDocuments(Filters.eq("_id", lastId)) == 0;
+            try (MongoCursor<Document> cursor = collection.find().sort(new Document("$natural", 1))
+                    .cursorType(CursorType.TailableAwait).noCursorTimeout(true).iterator()) {
+                while (!closed && cursor.hasNext()) {
+                    Document message = cursor.next();
+                    Object id = message.get("_id");
+                    if (!caughtUp) {
+                        caughtUp = id.equals(lastId);
+                        continue;
+                    }
+                    lastId = id;
+                    for (Consumer<Document> listener : listeners) {
+                        listener.accept(message);
+                    }
+                }
+            } catch (Exception e) {
+                if (!closed) {
+                    msg.debug("Leaderboard sync cursor closed: " + e.getMessage());
+                }
+            }
+            try {
+                Thread.sleep(RECONNECT_DELAY_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+}
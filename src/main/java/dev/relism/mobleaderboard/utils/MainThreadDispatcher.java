@@ -0,0 +1,94 @@
+package dev.relism.mobleaderboard.utils;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs callbacks on the server thread, for work that completes on storage or scheduler threads but has to touch the
+ * Bukkit API. Callbacks are queued from any thread and drained once per tick, in order, until the queue is empty
+ * or the time budget of the tick is spent, the rest waiting for the next tick. A burst of completions is spread over
+ * several ticks instead of causing a spike. At least one callback runs every tick, so the queue always makes progress.
+ *
+ * <p>As an {@link Executor}, it can be passed to the async methods of CompletableFuture, such as
+ * {@code future.thenAcceptAsync(callback, dispatcher)}.</p>
+ */
+public class MainThreadDispatcher implements Executor {
+
+    private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+    private final long budgetNanos;
+    private BukkitTask drainTask;
+
+    /**
+     * Constructs a new MainThreadDispatcher.
+     *
+     * @param budgetMicros The time callbacks may take per tick, in microseconds.
+     */
+    public MainThreadDispatcher(long budgetMicros) {
+        this.budgetNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(0, budgetMicros));
+    }
+
+    /**
+     * Starts draining the queue every tick.
+     *
+     * @param plugin the plugin owning the drain task
+     */
+    public void start(Plugin plugin) {
+        drainTask = Bukkit.getScheduler().runTaskTimer(plugin, this::drain, 1, 1);
+    }
+
+    /**
+     * Stops the drain task, then runs the callbacks that are still queued. Must be called from the server thread.
+     */
+    public void stop() {
+        if (drainTask != null) {
+            drainTask.cancel();
+            drainTask = null;
+        }
+        Runnable callback;
+        while ((callback = queue.poll()) != null) {
+            run(callback);
+        }
+    }
+
+    /**
+     * Queues a callback to run on the server thread during one of the next ticks.
+     *
+     * @param callback the callback
+     */
+    @Override
+    public void execute(Runnable callback) {
+        queue.add(callback);
+    }
+
+    /**
+     * @return the number of callbacks waiting for a tick
+     */
+    public int getBacklog() {
+        return queue.size();
+    }
+
+    private void drain() {
+        long deadline = System.nanoTime() + budgetNanos;
+        Runnable callback;
+        do {
+            callback = queue.poll();
+            if (callback != null) {
+                run(callback);
+            }
+        } while (callback != null && System.nanoTime() < deadline);
+    }
+
+    private static void run(Runnable callback) {
+        try {
+            callback.run();
+        } catch (Exception e) {
+            msg.log("&cError in a main thread callback: " + e.getMessage());
+        }
+    }
+}
@@ -38,21 +38,27 @@ public class msg {
 
     /**
      * Sends a color-translated debug message to the console if the debug configuration is enabled.
+     * Nothing is sent while the plugin isn't loaded, such as in unit tests.
      *
      * @param message The debug message to be sent.
      */
     public static void debug(String message){
-        if(main.getConfig().getBoolean("debug")){
+        if(main != null && main.getConfig().getBoolean("debug")){
             log(message);
         }
     }
 
     /**
      * Sends a color-translated message to the console.
+     * The message goes to the standard output while no server is running, such as in unit tests.
      *
      * @param message The message to be logged in the console.
      */
     public static void log(String message) {
+        if (Bukkit.getServer() == null) {
+            System.out.println(message);
+            return;
+        }
         Bukkit.getConsoleSender().sendMessage(translateColorCodes(message));
     }
 
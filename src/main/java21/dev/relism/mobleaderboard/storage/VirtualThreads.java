@@ -0,0 +1,21 @@
+package dev.relism.mobleaderboard.storage;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads, which only exist from Java 21 on.
+ * This is the Java 21 version, packaged under META-INF/versions/21 of the multi-release jar.
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @param namePrefix the prefix of the thread names
+     * @return a factory of virtual threads
+     */
+    static ThreadFactory threadFactory(String namePrefix) {
+        return Thread.ofVirtual().name(namePrefix, 1).factory();
+    }
+}
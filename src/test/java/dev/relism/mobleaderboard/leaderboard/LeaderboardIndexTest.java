@@ -0,0 +1,189 @@
+package dev.relism.mobleaderboard.leaderboard;
+
+import org.bson.Document;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LeaderboardIndexTest {
+
+    private static final UUID FIRST = new UUID(0, 1);
+    private static final UUID SECOND = new UUID(0, 2);
+    private static final UUID THIRD = new UUID(0, 3);
+
+    @Test
+    public void ordersByKillsThenByUUID() {
+        LeaderboardIndex index = new LeaderboardIndex();
+        index.update(THIRD, "third", 5);
+        index.update(FIRST, "first", 5);
+        index.update(SECOND, "second", 9);
+
+        assertEquals(Arrays.asList(SECOND, FIRST, THIRD), uuids(index.top(10)));
+        assertEquals(1, index.rankOf(SECOND));
+        assertEquals(2, index.rankOf(FIRST));
+        assertEquals(3, index.rankOf(THIRD));
+        assertEquals(-1, index.rankOf(new UUID(0, 4)));
+    }
+
+    @Test
+    public void rangeStartsAtOffsetAndStopsAtTheLastPlayer() {
+        LeaderboardIndex index = new LeaderboardIndex();
+        for (int i = 0; i < 10; i++) {
+            index.update(new UUID(0, i), "player" + i, i);
+        }
+
+        List<LeaderboardEntry> page = index.range(3, 4);
+        assertEquals(4, page.size());
+        assertEquals(6, page.get(0).getKills());
+        assertEquals(3, page.get(3).getKills());
+        assertEquals(2, index.range(8, 5).size());
+        assertTrue(index.range(10, 5).isEmpty());
+        assertTrue(index.range(-1, 5).isEmpty());
+    }
+
+    @Test
+    public void updateKeepsTheIndexedNameWhenNoneIsGiven() {
+        LeaderboardIndex index = new LeaderboardIndex();
+        index.update(FIRST, "first", 1);
+        index.update(FIRST, null, 2);
+
+        assertEquals("first", index.get(FIRST).getPlayerName());
+        assertEquals(2, index.get(FIRST).getKills());
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void unchangedUpdateKeepsTheVersion() {
+        LeaderboardIndex index = new LeaderboardIndex();
+        index.update(FIRST, "first", 1);
+        long version = index.getVersion();
+
+        index.update(FIRST, "first", 1);
+        assertEquals(version, index.getVersion());
+        index.update(FIRST, "first", 2);
+        assertTrue(index.getVersion() != version);
+    }
+
+    @Test
+    public void raiseNeverMovesAPlayerDown() {
+        LeaderboardIndex index = new LeaderboardIndex();
+        index.raise(FIRST, "first", 5);
+        index.raise(FIRST, "first", 3);
+        assertEquals(5, index.get(FIRST).getKills());
+
+        index.raise(FIRST, "first", 7);
+        assertEquals(7, index.get(FIRST).getKills());
+    }
+
+    @Test
+    public void retainAllAndResetAllExcept() {
+        LeaderboardIndex index = new LeaderboardIndex();
+        index.update(FIRST, "first", 1);
+        index.update(SECOND, "second", 2);
+        index.update(THIRD, "third", 3);
+
+        index.resetAllExcept(Collections.singleton(SECOND));
+        assertEquals(Arrays.asList(SECOND, FIRST, THIRD), uuids(index.top(10)));
+        assertEquals(0, index.get(THIRD).getKills());
+
+        index.retainAll(new HashSet<>(Arrays.asList(FIRST, THIRD)));
+        assertEquals(Arrays.asList(FIRST, THIRD), uuids(index.top(10)));
+        assertNull(index.get(SECOND));
+        assertEquals(-1, index.rankOf(SECOND));
+    }
+
+    @Test
+    public void loadReadsKillsOfAnyNumericTypeAndSkipsIndexedPlayers() {
+        LeaderboardIndex index = new LeaderboardIndex();
+        index.update(THIRD, "third", 1);
+        index.load(Arrays.asList(
+                new Document("uuid", FIRST.toString()).append("name", "first").append("kills", 4L),
+                new Document("uuid", SECOND.toString()).append("name", "second").append("kills", 6.0),
+                new Document("uuid", THIRD.toString()).append("name", "third").append("kills", 100),
+                new Document("uuid", new UUID(0, 4).toString()).append("name", "fourth")));
+
+        assertEquals(4, index.get(FIRST).getKills());
+        assertEquals(6, index.get(SECOND).getKills());
+        assertEquals(1, index.get(THIRD).getKills());
+        assertEquals(0, index.get(new UUID(0, 4)).getKills());
+    }
+
+    @Test
+    public void matchesASortedListUnderRandomOperations() {
+        Random random = new Random(42);
+        LeaderboardIndex index = new LeaderboardIndex();
+        Map<UUID, Integer> expected = new HashMap<>();
+        for (int step = 0; step < 5000; step++) {
+            UUID playerUUID = new UUID(0, random.nextInt(200));
+            int operation = random.nextInt(10);
+            if (operation < 6) {
+                int kills = random.nextInt(50);
+                index.update(playerUUID, "p", kills);
+                expected.put(playerUUID, kills);
+            } else if (operation < 8) {
+                int kills = random.nextInt(50);
+                index.raise(playerUUID, "p", kills);
+                Integer current = expected.get(playerUUID);
+                expected.put(playerUUID, current == null ? kills : Math.max(current, kills));
+            } else if (operation < 9) {
+                index.remove(playerUUID);
+                expected.remove(playerUUID);
+            } else if (random.nextInt(20) == 0) {
+                Set<UUID> keep = new HashSet<>();
+                for (UUID indexed : expected.keySet()) {
+                    if (random.nextBoolean()) {
+                        keep.add(indexed);
+                    }
+                }
+                index.retainAll(keep);
+                expected.keySet().retainAll(keep);
+            }
+            if (step % 250 == 0) {
+                assertMatches(expected, index, random);
+            }
+        }
+        assertMatches(expected, index, random);
+    }
+
+    private static void assertMatches(Map<UUID, Integer> expected, LeaderboardIndex index, Random random) {
+        List<Map.Entry<UUID, Integer>> sorted = new ArrayList<>(expected.entrySet());
+        sorted.sort((a, b) -> {
+            int byKills = Integer.compare(b.getValue(), a.getValue());
+            return byKills != 0 ? byKills : a.getKey().compareTo(b.getKey());
+        });
+        List<UUID> order = new ArrayList<>();
+        for (Map.Entry<UUID, Integer> entry : sorted) {
+            order.add(entry.getKey());
+        }
+
+        assertEquals(expected.size(), index.size());
+        assertEquals(order, uuids(index.top(Integer.MAX_VALUE)));
+        for (int i = 0; i < order.size(); i++) {
+            assertEquals(i + 1, index.rankOf(order.get(i)));
+        }
+        int offset = order.isEmpty() ? 0 : random.nextInt(order.size());
+        int size = 1 + random.nextInt(20);
+        assertEquals(order.subList(offset, Math.min(order.size(), offset + size)), uuids(index.range(offset, size)));
+    }
+
+    private static List<UUID> uuids(List<LeaderboardEntry> entries) {
+        List<UUID> uuids = new ArrayList<>(entries.size());
+        for (LeaderboardEntry entry : entries) {
+            uuids.add(entry.getPlayerUUID());
+        }
+        return uuids;
+    }
+}
@@ -0,0 +1,96 @@
+package dev.relism.mobleaderboard.leaderboard;
+
+import dev.relism.mobleaderboard.storage.LocalRecordStore;
+import dev.relism.mobleaderboard.storage.LocalStorage;
+import org.bson.Document;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class SeasonRolloverTest {
+
+    private static final UUID FIRST = new UUID(0, 1);
+    private static final UUID SECOND = new UUID(0, 2);
+    private static final UUID THIRD = new UUID(0, 3);
+
+    private File directory;
+    private LocalRecordStore store;
+
+    @Before
+    public void openStore() throws IOException {
+        directory = Files.createTempDirectory("record-store").toFile();
+        store = new LocalRecordStore(new File(directory, "records.dat"));
+    }
+
+    @After
+    public void deleteStore() throws IOException {
+        store.close();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File leftover : files) {
+                leftover.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void snapshotsTheStandingsInRankOrder() {
+        Document snapshot = SeasonRollover.createSnapshotDocument(4, Arrays.asList(
+                new LeaderboardEntry(FIRST, "first", 9), new LeaderboardEntry(SECOND, "second", 5)), 12);
+
+        assertEquals(Integer.valueOf(4), snapshot.getInteger("season"));
+        assertEquals(Integer.valueOf(12), snapshot.getInteger("players"));
+        List<?> standings = (List<?>) snapshot.get("standings");
+        assertEquals(2, standings.size());
+        Document second = (Document) standings.get(1);
+        assertEquals(Integer.valueOf(2), second.getInteger("rank"));
+        assertEquals(SECOND.toString(), second.getString("uuid"));
+        assertEquals(Integer.valueOf(5), second.getInteger("kills"));
+    }
+
+    @Test
+    public void numbersLocalSeasonsAfterTheSavedOnes() {
+        List<LeaderboardEntry> standings = Collections.singletonList(new LeaderboardEntry(FIRST, "first", 9));
+
+        assertEquals(1, SeasonRollover.saveLocalSnapshot(store, standings, 1));
+        assertEquals(2, SeasonRollover.saveLocalSnapshot(store, standings, 1));
+        assertNotNull(store.get("season:1"));
+        assertEquals(Integer.valueOf(2), store.get("season:2").getInteger("season"));
+    }
+
+    @Test
+    public void resetsTheLocalKillsOfThePlayersNotKept() {
+        putPlayerData(FIRST, 9);
+        putPlayerData(SECOND, 5);
+        putPlayerData(THIRD, 0);
+
+        assertEquals(1, SeasonRollover.resetLocalRecords(store, Collections.singleton(SECOND.toString())));
+
+        Document first = store.get(LocalStorage.key(FIRST.toString(), "playerdata"));
+        assertEquals(Integer.valueOf(0), first.getInteger("kills"));
+        assertNull(first.get(MobLeaderboards.FIELD));
+        Document second = store.get(LocalStorage.key(SECOND.toString(), "playerdata"));
+        assertEquals(Integer.valueOf(5), second.getInteger("kills"));
+        assertNotNull(second.get(MobLeaderboards.FIELD));
+    }
+
+    private void putPlayerData(UUID playerUUID, int kills) {
+        store.put(LocalStorage.key(playerUUID.toString(), "playerdata"), new Document("type", "playerdata")
+                .append("uuid", playerUUID.toString())
+                .append("kills", kills)
+                .append(MobLeaderboards.FIELD, new Document("ZOMBIE", kills)));
+    }
+}
@@ -0,0 +1,54 @@
+package dev.relism.mobleaderboard.leaderboard;
+
+import org.bson.Document;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TopKillsTest {
+
+    @Test
+    public void keepsTheBestPlayersSortedByKills() {
+        Random random = new Random(7);
+        List<Document> players = new ArrayList<>();
+        TopKills topKills = new TopKills(10);
+        for (int i = 0; i < 1000; i++) {
+            Document playerData = new Document("name", "player" + i).append("kills", random.nextInt(500));
+            players.add(playerData);
+            topKills.offer(playerData);
+        }
+        players.sort(Comparator.comparingInt(TopKills::killsOf).reversed());
+
+        List<Document> top = topKills.sorted();
+        assertEquals(10, top.size());
+        for (int i = 0; i < top.size(); i++) {
+            assertEquals(TopKills.killsOf(players.get(i)), TopKills.killsOf(top.get(i)));
+        }
+    }
+
+    @Test
+    public void keepsEveryPlayerWhenThereAreFewerThanRequested() {
+        TopKills topKills = new TopKills(10);
+        topKills.offer(new Document("kills", 3L));
+        topKills.offer(new Document("kills", 7.0));
+        topKills.offer(new Document("name", "no kills"));
+
+        List<Document> top = topKills.sorted();
+        assertEquals(3, top.size());
+        assertEquals(7, TopKills.killsOf(top.get(0)));
+        assertEquals(0, TopKills.killsOf(top.get(2)));
+    }
+
+    @Test
+    public void keepsNothingForAnEmptySelection() {
+        TopKills topKills = new TopKills(0);
+        topKills.offer(new Document("kills", 1));
+        assertTrue(topKills.sorted().isEmpty());
+    }
+}
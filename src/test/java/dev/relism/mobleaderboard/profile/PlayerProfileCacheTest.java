@@ -0,0 +1,179 @@
+package dev.relism.mobleaderboard.profile;
+
+import dev.relism.mobleaderboard.leaderboard.LeaderboardIndex;
+import dev.relism.mobleaderboard.leaderboard.MobLeaderboards;
+import dev.relism.mobleaderboard.leaderboard.WindowedLeaderboards;
+import dev.relism.mobleaderboard.storage.BatchStorage;
+import dev.relism.mobleaderboard.storage.KillJournal;
+import dev.relism.mobleaderboard.storage.Storage;
+import org.bson.Document;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PlayerProfileCacheTest {
+
+    private static final UUID FIRST = new UUID(0, 1);
+    private static final UUID SECOND = new UUID(0, 2);
+
+    private final Map<UUID, Map<String, Integer>> increments = new ConcurrentHashMap<>();
+    private final Map<UUID, Map<String, Long>> maxima = new ConcurrentHashMap<>();
+    private final Set<UUID> failing = new HashSet<>();
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("kill-journal").toFile();
+    }
+
+    @After
+    public void deleteDirectory() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void replaysOnlyTheKillsAboveTheWatermark() throws IOException {
+        KillJournal journal = new KillJournal(directory);
+        journal.appendKill(FIRST, "ZOMBIE", 1);
+        journal.appendKill(FIRST, "ZOMBIE", 2);
+        journal.appendKill(SECOND, "SPIDER", 3);
+        long last = journal.appendKill(FIRST, "SKELETON", 4);
+        String watermarkField = journal.getWatermarkField();
+        String id = watermarkField.substring(KillJournal.WATERMARK_FIELD.length() + 1);
+        journal.close();
+
+        // The first two kills of the first player were flushed right before the crash
+        Map<UUID, Document> stored = new HashMap<>();
+        stored.put(FIRST, new Document(KillJournal.WATERMARK_FIELD, new Document(id, 2L)));
+
+        KillJournal reopened = new KillJournal(directory);
+        assertEquals(2, cache(reopened).replayJournal(batchStorage(stored)));
+        reopened.close();
+
+        assertEquals(Integer.valueOf(1), increments.get(FIRST).get("kills"));
+        assertEquals(Integer.valueOf(1), increments.get(FIRST).get(MobLeaderboards.FIELD + ".SKELETON"));
+        assertNull(increments.get(FIRST).get(MobLeaderboards.FIELD + ".ZOMBIE"));
+        assertEquals(Long.valueOf(last), maxima.get(FIRST).get(watermarkField));
+        assertEquals(Integer.valueOf(1), increments.get(SECOND).get(MobLeaderboards.FIELD + ".SPIDER"));
+        assertEquals(Long.valueOf(3), maxima.get(SECOND).get(watermarkField));
+        assertTrue(replay(new KillJournal(directory)).isEmpty());
+    }
+
+    @Test
+    public void carriesTheKillsThatCouldNotBeWrittenOver() throws IOException {
+        KillJournal journal = new KillJournal(directory);
+        journal.appendKill(FIRST, "ZOMBIE", 1);
+        journal.appendKill(SECOND, "SPIDER", 2);
+        journal.close();
+        failing.add(SECOND);
+
+        KillJournal reopened = new KillJournal(directory);
+        assertEquals(1, cache(reopened).replayJournal(batchStorage(new HashMap<>())));
+        reopened.close();
+
+        List<KillJournal.Kill> kills = replay(new KillJournal(directory));
+        assertEquals(1, kills.size());
+        assertEquals(SECOND, kills.get(0).getPlayerUUID());
+        assertEquals(2, kills.get(0).getSequence());
+    }
+
+    @Test
+    public void keepsTheJournalWhenTheWatermarksCannotBeRead() throws IOException {
+        KillJournal journal = new KillJournal(directory);
+        journal.appendKill(FIRST, "ZOMBIE", 1);
+        journal.appendKill(SECOND, "SPIDER", 2);
+        journal.close();
+
+        KillJournal reopened = new KillJournal(directory);
+        BatchStorage unavailable = (playerUUIDs, documentType, onDocument, fieldsToGet) -> {
+            CompletableFuture<Integer> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IllegalStateException("down"));
+            return failed;
+        };
+        assertEquals(0, cache(reopened).replayJournal(unavailable));
+        reopened.close();
+
+        assertTrue(increments.isEmpty());
+        assertEquals(2, replay(new KillJournal(directory)).size());
+    }
+
+    private PlayerProfileCache cache(KillJournal journal) {
+        return new PlayerProfileCache(this::storage, new LeaderboardIndex(), new WindowedLeaderboards(ZoneOffset.UTC),
+                new MobLeaderboards(), journal);
+    }
+
+    private static BatchStorage batchStorage(Map<UUID, Document> stored) {
+        return (playerUUIDs, documentType, onDocument, fieldsToGet) -> {
+            int count = 0;
+            for (UUID playerUUID : playerUUIDs) {
+                if (stored.containsKey(playerUUID)) {
+                    onDocument.accept(playerUUID, stored.get(playerUUID));
+                    count++;
+                }
+            }
+            return CompletableFuture.completedFuture(count);
+        };
+    }
+
+    /**
+     * A storage of a player recording the increments written, or failing them if the player is failing.
+     */
+    @SuppressWarnings("unchecked")
+    private Storage storage(UUID playerUUID) {
+        return (Storage) Proxy.newProxyInstance(Storage.class.getClassLoader(), new Class<?>[]{Storage.class}, (proxy, method, args) -> {
+            if (!method.getName().equals("incrementFieldValues")) {
+                throw new UnsupportedOperationException(method.getName());
+            }
+            CompletableFuture<Void> write = new CompletableFuture<>();
+            if (failing.contains(playerUUID)) {
+                write.completeExceptionally(new IllegalStateException("down"));
+                return write;
+            }
+            increments.put(playerUUID, (Map<String, Integer>) args[1]);
+            maxima.put(playerUUID, (Map<String, Long>) args[2]);
+            write.complete(null);
+            return write;
+        });
+    }
+
+    private static List<KillJournal.Kill> replay(KillJournal journal) {
+        List<KillJournal.Kill> kills = new ArrayList<>();
+        journal.replay(new KillJournal.Visitor() {
+            @Override
+            public void onKill(KillJournal.Kill kill) {
+                kills.add(kill);
+            }
+
+            @Override
+            public void onReset(Set<UUID> keep) {
+            }
+        });
+        journal.close();
+        return kills;
+    }
+}
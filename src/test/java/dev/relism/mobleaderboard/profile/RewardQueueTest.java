@@ -0,0 +1,88 @@
+package dev.relism.mobleaderboard.profile;
+
+import dev.relism.mobleaderboard.storage.Storage;
+import org.bson.Document;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RewardQueueTest {
+
+    private static final UUID PLAYER = new UUID(0, 1);
+
+    @Test
+    public void readsTheLegacyRewardFirstAndSkipsInvalidElements() {
+        Document playerData = new Document(RewardQueue.LEGACY_FIELD, "DIAMOND")
+                .append(RewardQueue.FIELD, Arrays.asList(
+                        new Document("id", "a").append("material", "GOLD_INGOT").append("amount", 3L),
+                        new Document("material", "IRON_INGOT"),
+                        "not a reward",
+                        new Document("id", "b").append("material", "EMERALD")));
+
+        List<PendingReward> rewards = RewardQueue.read(playerData);
+
+        assertEquals(3, rewards.size());
+        assertEquals("DIAMOND", rewards.get(0).getMaterial());
+        assertEquals(1, rewards.get(0).getAmount());
+        assertEquals("a", rewards.get(1).getId());
+        assertEquals(3, rewards.get(1).getAmount());
+        assertEquals("b", rewards.get(2).getId());
+        assertEquals(1, rewards.get(2).getAmount());
+    }
+
+    @Test
+    public void readsNothingWithoutAQueue() {
+        assertTrue(RewardQueue.read(new Document(RewardQueue.LEGACY_FIELD, "")).isEmpty());
+    }
+
+    @Test
+    public void queuesEveryIdOnce() {
+        PlayerProfile profile = new PlayerProfile(PLAYER, null);
+        profile.addPendingRewards(Arrays.asList(new PendingReward("a", "DIAMOND", 1), new PendingReward("b", "EMERALD", 1)));
+        profile.addPendingRewards(Arrays.asList(new PendingReward("b", "EMERALD", 1), new PendingReward("c", "GOLD_INGOT", 2)));
+
+        List<String> ids = new ArrayList<>();
+        for (PendingReward reward : profile.getPendingRewards()) {
+            ids.add(reward.getId());
+        }
+        assertEquals(Arrays.asList("a", "b", "c"), ids);
+    }
+
+    @Test
+    public void acknowledgesDeliveredRewardsAndClearsOnlyTheLegacyRewardDelivered() {
+        List<Object> pulled = new ArrayList<>();
+        List<Object> cleared = new ArrayList<>();
+        Storage storage = (Storage) Proxy.newProxyInstance(Storage.class.getClassLoader(), new Class<?>[]{Storage.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "pullByIds":
+                    pulled.addAll((Collection<?>) args[3]);
+                    return CompletableFuture.completedFuture(null);
+                case "compareAndSet":
+                    cleared.add(args[2]);
+                    return CompletableFuture.completedFuture(true);
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+        PlayerProfile profile = new PlayerProfile(PLAYER, storage);
+        List<PendingReward> queued = RewardQueue.read(new Document(RewardQueue.LEGACY_FIELD, "DIAMOND")
+                .append(RewardQueue.FIELD, Collections.singletonList(new Document("id", "a").append("material", "EMERALD"))));
+        profile.addPendingRewards(queued);
+
+        new RewardQueue(null).acknowledge(profile, queued).join();
+
+        assertEquals(Arrays.asList(queued.get(0).getId(), "a"), pulled);
+        assertEquals(Collections.singletonList("DIAMOND"), cleared);
+        assertTrue(profile.getPendingRewards().isEmpty());
+    }
+}
@@ -0,0 +1,122 @@
+package dev.relism.mobleaderboard.storage;
+
+import org.bson.Document;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class KillJournalTest {
+
+    private static final UUID PLAYER = new UUID(0, 1);
+
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("kill-journal").toFile();
+    }
+
+    @After
+    public void deleteDirectory() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void numbersKillsAcrossRotationsAndRestarts() throws IOException {
+        KillJournal journal = new KillJournal(directory);
+        assertEquals(1, journal.appendKill(PLAYER, "ZOMBIE", 1));
+        journal.rotate();
+        assertEquals(2, journal.appendKill(PLAYER, "SKELETON", 2));
+        String watermarkField = journal.getWatermarkField();
+        journal.close();
+
+        KillJournal reopened = new KillJournal(directory);
+        List<KillJournal.Kill> kills = replay(reopened);
+        assertEquals(2, kills.size());
+        assertEquals(1, kills.get(0).getSequence());
+        assertEquals("SKELETON", kills.get(1).getType());
+        assertEquals(2, kills.get(1).getSequence());
+        assertEquals(watermarkField, reopened.getWatermarkField());
+        assertEquals(3, reopened.appendKill(PLAYER, "ZOMBIE", 3));
+        reopened.close();
+    }
+
+    @Test
+    public void keepsNumberingAfterTheRecoveredSegmentsAreDiscarded() throws IOException {
+        KillJournal journal = new KillJournal(directory);
+        journal.appendKill(PLAYER, "ZOMBIE", 1);
+        journal.appendKill(PLAYER, "ZOMBIE", 2);
+        journal.close();
+
+        KillJournal reopened = new KillJournal(directory);
+        reopened.discardRecovered();
+        reopened.close();
+
+        KillJournal again = new KillJournal(directory);
+        assertTrue(replay(again).isEmpty());
+        assertEquals(3, again.appendKill(PLAYER, "ZOMBIE", 3));
+        again.close();
+    }
+
+    @Test
+    public void carriesKillsOverWithTheirSequence() throws IOException {
+        KillJournal journal = new KillJournal(directory);
+        journal.appendKill(PLAYER, "ZOMBIE", 1);
+        journal.appendKill(PLAYER, "SPIDER", 2);
+        journal.close();
+
+        KillJournal reopened = new KillJournal(directory);
+        reopened.carryOver(Collections.singletonList(replay(reopened).get(1)));
+        reopened.close();
+
+        List<KillJournal.Kill> kills = replay(new KillJournal(directory));
+        assertEquals(1, kills.size());
+        assertEquals(2, kills.get(0).getSequence());
+        assertEquals("SPIDER", kills.get(0).getType());
+    }
+
+    @Test
+    public void readsTheWatermarkOfThisJournal() throws IOException {
+        KillJournal journal = new KillJournal(directory);
+        String id = journal.getWatermarkField().substring(KillJournal.WATERMARK_FIELD.length() + 1);
+
+        assertEquals(0, journal.watermarkOf(null));
+        assertEquals(0, journal.watermarkOf(new Document("other", 5L)));
+        assertEquals(7, journal.watermarkOf(new Document(id, 7L).append("other", 9L)));
+        assertEquals(7, journal.watermarkOf(new Document(id, 7)));
+        journal.close();
+    }
+
+    private static List<KillJournal.Kill> replay(KillJournal journal) {
+        List<KillJournal.Kill> kills = new ArrayList<>();
+        journal.replay(new KillJournal.Visitor() {
+            @Override
+            public void onKill(KillJournal.Kill kill) {
+                kills.add(kill);
+            }
+
+            @Override
+            public void onReset(Set<UUID> keep) {
+            }
+        });
+        return kills;
+    }
+}
@@ -0,0 +1,26 @@
+package dev.relism.mobleaderboard.storage;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class LegacyMigratorTest {
+
+    private static final List<String> COLLECTIONS = Arrays.asList("c", StorageLayout.PLAYERS_COLLECTION, "a",
+            StorageLayout.MIGRATIONS_COLLECTION, "system.indexes", "b", StorageLayout.SEASONS_COLLECTION, StorageLayout.SYNC_COLLECTION);
+
+    @Test
+    public void selectsEveryPlayerCollectionInNameOrderFromScratch() {
+        assertEquals(Arrays.asList("a", "b", "c"), LegacyMigrator.remainingCollections(COLLECTIONS, ""));
+    }
+
+    @Test
+    public void resumesAfterTheCheckpointedCollection() {
+        assertEquals(Collections.singletonList("c"), LegacyMigrator.remainingCollections(COLLECTIONS, "b"));
+        assertEquals(Collections.emptyList(), LegacyMigrator.remainingCollections(COLLECTIONS, "c"));
+    }
+}
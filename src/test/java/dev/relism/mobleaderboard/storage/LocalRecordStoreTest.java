@@ -0,0 +1,90 @@
+package dev.relism.mobleaderboard.storage;
+
+import org.bson.Document;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LocalRecordStoreTest {
+
+    private File directory;
+    private File file;
+
+    @Before
+    public void createFile() throws IOException {
+        directory = Files.createTempDirectory("record-store").toFile();
+        file = new File(directory, "records.dat");
+    }
+
+    @After
+    public void deleteFile() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File leftover : files) {
+                leftover.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void keepsTheNumericTypesOfAReopenedStore() throws IOException {
+        LocalRecordStore store = new LocalRecordStore(file);
+        store.put("a", new Document("epoch", 5L).append("kills", 3).append("name", "first"));
+        store.close();
+
+        LocalRecordStore reopened = new LocalRecordStore(file);
+        Document document = reopened.get("a");
+        assertEquals(Long.valueOf(5), document.get("epoch"));
+        assertEquals(Integer.valueOf(3), document.get("kills"));
+        assertEquals("first", document.get("name"));
+        reopened.close();
+    }
+
+    @Test
+    public void reopensTheLatestVersionOfEveryRecord() throws IOException {
+        LocalRecordStore store = new LocalRecordStore(file);
+        store.put("a", new Document("kills", 1));
+        store.put("b", new Document("kills", 2));
+        assertTrue(store.update("a", document -> document.put("kills", 4)));
+        store.remove("b");
+        store.close();
+
+        LocalRecordStore reopened = new LocalRecordStore(file);
+        assertEquals(1, reopened.size());
+        assertEquals(Integer.valueOf(4), reopened.get("a").get("kills"));
+        assertNull(reopened.get("b"));
+        reopened.close();
+    }
+
+    @Test
+    public void compactionKeepsOnlyTheLiveRecords() throws IOException {
+        LocalRecordStore store = new LocalRecordStore(file);
+        for (int i = 0; i < 100; i++) {
+            store.put("a", new Document("kills", i));
+            store.put("b" + i, new Document("kills", i));
+            store.remove("b" + i);
+        }
+        store.put("c", new Document("kills", 7L));
+        long before = file.length();
+        store.compact();
+        assertTrue(file.length() <= before);
+        store.put("d", new Document("kills", 1));
+        store.close();
+
+        LocalRecordStore reopened = new LocalRecordStore(file);
+        assertEquals(3, reopened.size());
+        assertEquals(Integer.valueOf(99), reopened.get("a").get("kills"));
+        assertEquals(Long.valueOf(7), reopened.get("c").get("kills"));
+        assertEquals(Integer.valueOf(1), reopened.get("d").get("kills"));
+        reopened.close();
+    }
+}
@@ -0,0 +1,108 @@
+package dev.relism.mobleaderboard.storage;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StorageGuardTest {
+
+    private final StorageGuard guard = new StorageGuard(new CircuitBreaker(100, 1000), 1, 1, 1, 1, 1, 200, 60000, 60000, 60000, 10);
+
+    @After
+    public void closeGuard() {
+        guard.close();
+    }
+
+    @Test
+    public void queuesWritesBeyondTheBulkheadAndStartsThemInOrder() throws Exception {
+        CompletableFuture<String> first = new CompletableFuture<>();
+        AtomicInteger started = new AtomicInteger();
+        CompletableFuture<String> firstResult = guard.write("first", () -> {
+            started.incrementAndGet();
+            return first;
+        });
+        CompletableFuture<String> secondResult = guard.write("second", () -> {
+            started.incrementAndGet();
+            return CompletableFuture.completedFuture("second");
+        });
+        assertEquals(1, started.get());
+        assertFalse(secondResult.isDone());
+
+        first.complete("first");
+        assertEquals("first", firstResult.get(1, TimeUnit.SECONDS));
+        assertEquals("second", secondResult.get(1, TimeUnit.SECONDS));
+        assertEquals(2, started.get());
+    }
+
+    @Test
+    public void rejectsWritesOnceTheQueueIsFull() throws Exception {
+        CompletableFuture<String> first = new CompletableFuture<>();
+        guard.write("first", () -> first);
+        CompletableFuture<String> queued = guard.write("queued", () -> CompletableFuture.completedFuture("queued"));
+        CompletableFuture<String> rejected = guard.write("rejected", () -> CompletableFuture.completedFuture("rejected"));
+
+        assertRejected(rejected);
+        first.complete("first");
+        assertEquals("queued", queued.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void rejectsWritesThatWaitTooLong() throws Exception {
+        CompletableFuture<String> first = new CompletableFuture<>();
+        AtomicInteger started = new AtomicInteger();
+        guard.write("first", () -> first);
+        CompletableFuture<String> waiting = guard.write("waiting", () -> {
+            started.incrementAndGet();
+            return CompletableFuture.completedFuture("waiting");
+        });
+
+        assertRejected(waiting);
+        first.complete("first");
+        assertEquals(0, started.get());
+        assertEquals("next", guard.write("next", () -> CompletableFuture.completedFuture("next")).get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void readsAndWritesHaveBulkheadsOfTheirOwn() throws Exception {
+        guard.write("write", CompletableFuture::new);
+        assertEquals("read", guard.read("read", null, () -> CompletableFuture.completedFuture("read")).get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void servesCachedReadsOnlyWhenRejected() throws Exception {
+        assertEquals("fresh", guard.read("read", "key", () -> CompletableFuture.completedFuture("fresh")).get(1, TimeUnit.SECONDS));
+
+        CompletableFuture<String> failing = new CompletableFuture<>();
+        failing.completeExceptionally(new IllegalStateException("bad query"));
+        try {
+            guard.read("read", "key", () -> failing).get(1, TimeUnit.SECONDS);
+            fail("expected a failure");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        CompletableFuture<String> first = new CompletableFuture<>();
+        guard.read("first", null, () -> first);
+        guard.read("queued", null, () -> CompletableFuture.completedFuture("queued"));
+        assertEquals("fresh", guard.read("read", "key", () -> CompletableFuture.completedFuture("rejected")).get(1, TimeUnit.SECONDS));
+        first.complete("first");
+    }
+
+    private static void assertRejected(CompletableFuture<?> result) throws Exception {
+        try {
+            result.get(1, TimeUnit.SECONDS);
+            fail("expected a rejection");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof StorageUnavailableException);
+        }
+    }
+}
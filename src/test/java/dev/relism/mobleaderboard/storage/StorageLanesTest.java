@@ -0,0 +1,84 @@
+package dev.relism.mobleaderboard.storage;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StorageLanesTest {
+
+    private static final String PLAYER = "player";
+
+    private final StorageLanes lanes = new StorageLanes(1);
+    private final List<String> started = new ArrayList<>();
+
+    private <T> Supplier<CompletableFuture<T>> operation(String name, CompletableFuture<T> result) {
+        return () -> {
+            started.add(name);
+            return result;
+        };
+    }
+
+    @Test
+    public void handsOffWritesWithoutWaitingForTheirAcknowledgement() {
+        CompletableFuture<Void> first = new CompletableFuture<>();
+        CompletableFuture<Void> second = new CompletableFuture<>();
+        lanes.handOff(PLAYER, operation("first", first));
+        lanes.handOff(PLAYER, operation("second", second));
+
+        assertEquals(Arrays.asList("first", "second"), started);
+    }
+
+    @Test
+    public void readsWaitForEveryWriteHandedOffBeforeThem() throws Exception {
+        CompletableFuture<Void> first = new CompletableFuture<>();
+        CompletableFuture<Void> second = new CompletableFuture<>();
+        lanes.handOff(PLAYER, operation("first", first));
+        lanes.handOff(PLAYER, operation("second", second));
+        CompletableFuture<String> read = lanes.submit(PLAYER, operation("read", CompletableFuture.completedFuture("value")));
+
+        second.complete(null);
+        assertEquals(Arrays.asList("first", "second"), started);
+        assertFalse(read.isDone());
+        first.completeExceptionally(new IllegalStateException("down"));
+        assertEquals("value", read.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void writesWaitForTheReadsBeforeThem() {
+        CompletableFuture<Integer> increment = new CompletableFuture<>();
+        lanes.submit(PLAYER, operation("increment", increment));
+        lanes.handOff(PLAYER, operation("write", new CompletableFuture<Void>()));
+        assertEquals(Arrays.asList("increment"), started);
+
+        increment.complete(1);
+        assertEquals(Arrays.asList("increment", "write"), started);
+    }
+
+    @Test
+    public void aFailedHandOffDoesNotBlockTheLane() throws Exception {
+        CompletableFuture<Void> failed = lanes.handOff(PLAYER, () -> {
+            throw new IllegalStateException("closed");
+        });
+        CompletableFuture<String> read = lanes.submit(PLAYER, () -> CompletableFuture.completedFuture("value"));
+
+        try {
+            failed.get(1, TimeUnit.SECONDS);
+            fail("expected a failure");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals("value", read.get(1, TimeUnit.SECONDS));
+        assertFalse(read.isCompletedExceptionally());
+    }
+}
@@ -0,0 +1,137 @@
+package dev.relism.mobleaderboard.storage;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WriteCoalescerTest {
+
+    private final List<List<WriteModel<Document>>> batches = Collections.synchronizedList(new ArrayList<>());
+    private final List<CompletableFuture<BulkWriteResult>> results = Collections.synchronizedList(new ArrayList<>());
+    // A long window, so that nothing is sent before drain() unless a batch fills up
+    private final WriteCoalescer coalescer = new WriteCoalescer(this::send, 60000, 3, 1);
+
+    @After
+    public void closeCoalescer() {
+        coalescer.close();
+    }
+
+    private CompletableFuture<BulkWriteResult> send(String databaseName, String collectionName, List<WriteModel<Document>> writes) {
+        CompletableFuture<BulkWriteResult> result = new CompletableFuture<>();
+        batches.add(writes);
+        results.add(result);
+        return result;
+    }
+
+    @Test
+    public void mergesTheUpdatesOfADocument() throws Exception {
+        CompletableFuture<Void> first = coalescer.update("db", "players", "a", Filters.eq("_id", "a"),
+                new Document("$inc", new Document("kills", 1)).append("$max", new Document("journal.x", 4L)));
+        CompletableFuture<Void> second = coalescer.update("db", "players", "a", Filters.eq("_id", "a"),
+                new Document("$inc", new Document("kills", 2).append("mobKills.ZOMBIE", 1)).append("$set", new Document("name", "b"))
+                        .append("$max", new Document("journal.x", 3L)));
+        assertSame(first, second);
+
+        CompletableFuture<Void> drained = coalescer.drain();
+        assertEquals(1, batches.size());
+        assertEquals(1, batches.get(0).size());
+        Document update = (Document) ((UpdateOneModel<Document>) batches.get(0).get(0)).getUpdate();
+        assertEquals(new Document("kills", 3).append("mobKills.ZOMBIE", 1), update.get("$inc"));
+        assertEquals(new Document("name", "b"), update.get("$set"));
+        assertEquals(new Document("journal.x", 4L), update.get("$max"));
+
+        results.get(0).complete(null);
+        drained.get(1, TimeUnit.SECONDS);
+        assertTrue(first.isDone());
+    }
+
+    @Test
+    public void keepsApartAFieldChangedByTwoOperatorsAndOtherDocuments() {
+        coalescer.update("db", "players", "a", Filters.eq("_id", "a"), new Document("$set", new Document("kills", 0)));
+        coalescer.update("db", "players", "a", Filters.eq("_id", "a"), new Document("$inc", new Document("kills", 1)));
+        coalescer.update("db", "players", "b", Filters.eq("_id", "b"), new Document("$inc", new Document("kills", 1)));
+
+        // The third write fills the batch, which is sent without waiting for the window
+        assertEquals(1, batches.size());
+        assertEquals(3, batches.get(0).size());
+    }
+
+    @Test
+    public void aFailedOrderedBatchOnlyFailsTheWritesFromTheFailingOne() throws Exception {
+        CompletableFuture<Void> applied = coalescer.write("db", "players", null, new InsertOneModel<>(new Document("n", 0)));
+        CompletableFuture<Void> failing = coalescer.write("db", "players", null, new InsertOneModel<>(new Document("n", 1)));
+        CompletableFuture<Void> skipped = coalescer.write("db", "players", null, new InsertOneModel<>(new Document("n", 2)));
+
+        results.get(0).completeExceptionally(new MongoBulkWriteException(BulkWriteResult.unacknowledged(),
+                Collections.singletonList(new BulkWriteError(11000, "duplicate key", new BsonDocument(), 1)), null, new ServerAddress()));
+
+        applied.get(1, TimeUnit.SECONDS);
+        assertFailed(failing);
+        assertFailed(skipped);
+    }
+
+    @Test
+    public void drainSendsThePendingWritesAndWaitsForEveryBatch() throws Exception {
+        CompletableFuture<Void> first = coalescer.write("db", "players", null, new InsertOneModel<>(new Document("n", 0)));
+        CompletableFuture<Void> other = coalescer.write("db", "sync", null, new InsertOneModel<>(new Document("n", 1)));
+        assertTrue(batches.isEmpty());
+
+        CompletableFuture<Void> drained = coalescer.drain();
+        // A single batch may be in flight, the other collection waits for its slot
+        assertEquals(1, batches.size());
+        assertFalse(drained.isDone());
+
+        results.get(0).complete(null);
+        assertEquals(2, batches.size());
+        assertFalse(drained.isDone());
+
+        results.get(1).completeExceptionally(new IllegalStateException("down"));
+        drained.get(1, TimeUnit.SECONDS);
+        assertTrue(first.isDone());
+        assertFailed(other);
+    }
+
+    @Test
+    public void sendsTheNextBatchOfACollectionOnceTheOneInFlightIsDone() {
+        for (int i = 0; i < 4; i++) {
+            coalescer.write("db", "players", null, new InsertOneModel<>(new Document("n", i)));
+        }
+        assertEquals(1, batches.size());
+        assertEquals(3, batches.get(0).size());
+
+        results.get(0).complete(null);
+        assertEquals(2, batches.size());
+        assertEquals(1, batches.get(1).size());
+    }
+
+    private static void assertFailed(CompletableFuture<?> future) throws Exception {
+        try {
+            future.get(1, TimeUnit.SECONDS);
+            fail("expected a failure");
+        } catch (ExecutionException e) {
+            // Expected
+        }
+    }
+}